@@ -0,0 +1,143 @@
+package com.indigoid.prestashop;
+
+import java.lang.reflect.Field;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.indigoid.utils.JSONWriter;
+
+/**
+ * Measures PrstshpLoader.data2JSON() for each supported SQL type, reading the
+ * column from a MockResultSet.
+ *
+ * @author Charlie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Data2JSONBenchmark {
+
+	/**
+	 * Name of the column written.
+	 */
+	private static final String COLUMN_NAME = "column";
+
+	/**
+	 * SQL type of the column (name of a java.sql.Types constant).
+	 */
+	@Param({ "BIT", "TINYINT", "INTEGER", "DECIMAL", "REAL", "CHAR", "VARCHAR", "TIMESTAMP", "DATE" })
+	public String sqlType;
+
+	/**
+	 * Value of sqlType as a java.sql.Types constant.
+	 */
+	private int colType;
+	/**
+	 * Result set with a value of the column type.
+	 */
+	private MockResultSet rs;
+	/**
+	 * Result set with a NULL value.
+	 */
+	private MockResultSet nullRs;
+	/**
+	 * Writer receiving the column (reused).
+	 */
+	private JSONWriter json;
+
+	/**
+	 * Prepares a value of the column type.
+	 *
+	 * @throws ReflectiveOperationException
+	 *             If sqlType is not a java.sql.Types constant.
+	 */
+	@Setup
+	public void setup() throws ReflectiveOperationException {
+		Field typeField = Types.class.getField(sqlType);
+		colType = typeField.getInt(null);
+
+		Object value;
+		switch (colType) {
+		case Types.BIT:
+		case Types.TINYINT:
+			value = 1;
+			break;
+		case Types.INTEGER:
+			value = 1234567;
+			break;
+		case Types.DECIMAL:
+			value = "1234.560000";
+			break;
+		case Types.REAL:
+			value = "0.125";
+			break;
+		case Types.CHAR:
+			value = "both";
+			break;
+		case Types.VARCHAR:
+			value = "Camiseta \"básica\" de algodón - Talla : M";
+			break;
+		case Types.TIMESTAMP:
+			value = Timestamp.valueOf("2018-09-10 10:15:30");
+			break;
+		case Types.DATE:
+			value = Date.valueOf("2018-09-10");
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported type " + sqlType);
+		}
+
+		rs = new MockResultSet(value);
+		nullRs = new MockResultSet(null);
+		json = new JSONWriter();
+	}
+
+	/**
+	 * Converts a column to JSON.
+	 *
+	 * @return Length of the JSON.
+	 * @throws SQLException
+	 *             Never (the result set is in memory).
+	 */
+	@Benchmark
+	public int convert() throws SQLException {
+		json.reset();
+		json.beginObject();
+		PrstshpLoader.data2JSON(rs, 1, COLUMN_NAME, colType, json);
+		return json.length();
+	}
+
+	/**
+	 * Converts a NULL column (nothing is written).
+	 *
+	 * @return Length of the JSON.
+	 * @throws SQLException
+	 *             Never (the result set is in memory).
+	 */
+	@Benchmark
+	public int convertNull() throws SQLException {
+		json.reset();
+		json.beginObject();
+		PrstshpLoader.data2JSON(nullRs, 1, COLUMN_NAME, colType, json);
+		return json.length();
+	}
+}
@@ -0,0 +1,85 @@
+package com.indigoid.prestashop;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * In-memory result set positioned on a row with a single column. It implements
+ * the getters used by PrstshpLoader.data2JSON() (and wasNull()), and it does
+ * nothing else, so the benchmarks measure the conversion and not the driver.
+ *
+ * @author Charlie
+ *
+ */
+public class MockResultSet extends UnsupportedResultSet {
+
+	/**
+	 * Value of the column (null for SQL NULL).
+	 */
+	private Object value;
+	/**
+	 * Tells if the last value read was NULL.
+	 */
+	private boolean wasNull = false;
+
+	/**
+	 * Creates a result set whose only column has the given value.
+	 *
+	 * @param value
+	 *            Value of the column: Integer, String (decimal numbers and text),
+	 *            Timestamp or Date; null for SQL NULL.
+	 */
+	public MockResultSet(Object value) {
+		this.value = value;
+	}
+
+	/**
+	 * Retrieves the value of the column and remembers if it was NULL.
+	 *
+	 * @param columnIndex
+	 *            Index of the column (there is only column 1)
+	 * @return The value of the column.
+	 * @throws SQLException
+	 *             If the index is not 1.
+	 */
+	private Object read(int columnIndex) throws SQLException {
+		if (columnIndex != 1) {
+			throw new SQLException("Invalid column index " + columnIndex);
+		}
+		wasNull = (value == null);
+		return value;
+	}
+
+	@Override
+	public int getInt(int columnIndex) throws SQLException {
+		Object intValue = read(columnIndex);
+		return intValue == null ? 0 : (Integer) intValue;
+	}
+
+	@Override
+	public String getString(int columnIndex) throws SQLException {
+		Object strValue = read(columnIndex);
+		return strValue == null ? null : strValue.toString();
+	}
+
+	@Override
+	public Timestamp getTimestamp(int columnIndex) throws SQLException {
+		return (Timestamp) read(columnIndex);
+	}
+
+	@Override
+	public Date getDate(int columnIndex) throws SQLException {
+		return (Date) read(columnIndex);
+	}
+
+	@Override
+	public boolean wasNull() throws SQLException {
+		return wasNull;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		// Nothing to release
+	}
+}
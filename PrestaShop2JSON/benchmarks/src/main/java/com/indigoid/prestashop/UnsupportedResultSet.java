@@ -0,0 +1,991 @@
+package com.indigoid.prestashop;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * A result set where every operation throws SQLFeatureNotSupportedException.
+ * Mock result sets extend this class and override only the operations they
+ * support, so no dynamic proxy sits between the benchmarks and the code being
+ * measured.
+ *
+ * @author Charlie
+ *
+ */
+public abstract class UnsupportedResultSet implements ResultSet {
+
+	@Override
+	public boolean absolute(int rows) throws SQLException {
+		throw new SQLFeatureNotSupportedException("absolute");
+	}
+
+	@Override
+	public void afterLast() throws SQLException {
+		throw new SQLFeatureNotSupportedException("afterLast");
+	}
+
+	@Override
+	public void beforeFirst() throws SQLException {
+		throw new SQLFeatureNotSupportedException("beforeFirst");
+	}
+
+	@Override
+	public void cancelRowUpdates() throws SQLException {
+		throw new SQLFeatureNotSupportedException("cancelRowUpdates");
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		throw new SQLFeatureNotSupportedException("clearWarnings");
+	}
+
+	@Override
+	public void close() throws SQLException {
+		throw new SQLFeatureNotSupportedException("close");
+	}
+
+	@Override
+	public void deleteRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("deleteRow");
+	}
+
+	@Override
+	public int findColumn(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("findColumn");
+	}
+
+	@Override
+	public boolean first() throws SQLException {
+		throw new SQLFeatureNotSupportedException("first");
+	}
+
+	@Override
+	public Array getArray(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getArray");
+	}
+
+	@Override
+	public Array getArray(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getArray");
+	}
+
+	@Override
+	public InputStream getAsciiStream(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getAsciiStream");
+	}
+
+	@Override
+	public InputStream getAsciiStream(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getAsciiStream");
+	}
+
+	@Override
+	public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBigDecimal");
+	}
+
+	@Override
+	public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBigDecimal");
+	}
+
+	@Override
+	public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBigDecimal");
+	}
+
+	@Override
+	public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBigDecimal");
+	}
+
+	@Override
+	public InputStream getBinaryStream(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBinaryStream");
+	}
+
+	@Override
+	public InputStream getBinaryStream(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBinaryStream");
+	}
+
+	@Override
+	public Blob getBlob(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBlob");
+	}
+
+	@Override
+	public Blob getBlob(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBlob");
+	}
+
+	@Override
+	public boolean getBoolean(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBoolean");
+	}
+
+	@Override
+	public boolean getBoolean(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBoolean");
+	}
+
+	@Override
+	public byte getByte(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getByte");
+	}
+
+	@Override
+	public byte getByte(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getByte");
+	}
+
+	@Override
+	public byte[] getBytes(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBytes");
+	}
+
+	@Override
+	public byte[] getBytes(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getBytes");
+	}
+
+	@Override
+	public Reader getCharacterStream(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getCharacterStream");
+	}
+
+	@Override
+	public Reader getCharacterStream(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getCharacterStream");
+	}
+
+	@Override
+	public Clob getClob(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getClob");
+	}
+
+	@Override
+	public Clob getClob(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getClob");
+	}
+
+	@Override
+	public int getConcurrency() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getConcurrency");
+	}
+
+	@Override
+	public String getCursorName() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getCursorName");
+	}
+
+	@Override
+	public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getDate");
+	}
+
+	@Override
+	public Date getDate(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getDate");
+	}
+
+	@Override
+	public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getDate");
+	}
+
+	@Override
+	public Date getDate(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getDate");
+	}
+
+	@Override
+	public double getDouble(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getDouble");
+	}
+
+	@Override
+	public double getDouble(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getDouble");
+	}
+
+	@Override
+	public int getFetchDirection() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getFetchDirection");
+	}
+
+	@Override
+	public int getFetchSize() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getFetchSize");
+	}
+
+	@Override
+	public float getFloat(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getFloat");
+	}
+
+	@Override
+	public float getFloat(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getFloat");
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getHoldability");
+	}
+
+	@Override
+	public int getInt(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getInt");
+	}
+
+	@Override
+	public int getInt(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getInt");
+	}
+
+	@Override
+	public long getLong(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getLong");
+	}
+
+	@Override
+	public long getLong(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getLong");
+	}
+
+	@Override
+	public ResultSetMetaData getMetaData() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getMetaData");
+	}
+
+	@Override
+	public Reader getNCharacterStream(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getNCharacterStream");
+	}
+
+	@Override
+	public Reader getNCharacterStream(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getNCharacterStream");
+	}
+
+	@Override
+	public NClob getNClob(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getNClob");
+	}
+
+	@Override
+	public NClob getNClob(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getNClob");
+	}
+
+	@Override
+	public String getNString(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getNString");
+	}
+
+	@Override
+	public String getNString(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getNString");
+	}
+
+	@Override
+	public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getObject");
+	}
+
+	@Override
+	public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getObject");
+	}
+
+	@Override
+	public Object getObject(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getObject");
+	}
+
+	@Override
+	public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getObject");
+	}
+
+	@Override
+	public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getObject");
+	}
+
+	@Override
+	public Object getObject(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getObject");
+	}
+
+	@Override
+	public Ref getRef(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getRef");
+	}
+
+	@Override
+	public Ref getRef(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getRef");
+	}
+
+	@Override
+	public int getRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getRow");
+	}
+
+	@Override
+	public RowId getRowId(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getRowId");
+	}
+
+	@Override
+	public RowId getRowId(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getRowId");
+	}
+
+	@Override
+	public SQLXML getSQLXML(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getSQLXML");
+	}
+
+	@Override
+	public SQLXML getSQLXML(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getSQLXML");
+	}
+
+	@Override
+	public short getShort(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getShort");
+	}
+
+	@Override
+	public short getShort(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getShort");
+	}
+
+	@Override
+	public Statement getStatement() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getStatement");
+	}
+
+	@Override
+	public String getString(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getString");
+	}
+
+	@Override
+	public String getString(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getString");
+	}
+
+	@Override
+	public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTime");
+	}
+
+	@Override
+	public Time getTime(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTime");
+	}
+
+	@Override
+	public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTime");
+	}
+
+	@Override
+	public Time getTime(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTime");
+	}
+
+	@Override
+	public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTimestamp");
+	}
+
+	@Override
+	public Timestamp getTimestamp(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTimestamp");
+	}
+
+	@Override
+	public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTimestamp");
+	}
+
+	@Override
+	public Timestamp getTimestamp(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getTimestamp");
+	}
+
+	@Override
+	public int getType() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getType");
+	}
+
+	@Override
+	public URL getURL(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getURL");
+	}
+
+	@Override
+	public URL getURL(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getURL");
+	}
+
+	@Override
+	public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getUnicodeStream");
+	}
+
+	@Override
+	public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getUnicodeStream");
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		throw new SQLFeatureNotSupportedException("getWarnings");
+	}
+
+	@Override
+	public void insertRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("insertRow");
+	}
+
+	@Override
+	public boolean isAfterLast() throws SQLException {
+		throw new SQLFeatureNotSupportedException("isAfterLast");
+	}
+
+	@Override
+	public boolean isBeforeFirst() throws SQLException {
+		throw new SQLFeatureNotSupportedException("isBeforeFirst");
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		throw new SQLFeatureNotSupportedException("isClosed");
+	}
+
+	@Override
+	public boolean isFirst() throws SQLException {
+		throw new SQLFeatureNotSupportedException("isFirst");
+	}
+
+	@Override
+	public boolean isLast() throws SQLException {
+		throw new SQLFeatureNotSupportedException("isLast");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		throw new SQLFeatureNotSupportedException("isWrapperFor");
+	}
+
+	@Override
+	public boolean last() throws SQLException {
+		throw new SQLFeatureNotSupportedException("last");
+	}
+
+	@Override
+	public void moveToCurrentRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("moveToCurrentRow");
+	}
+
+	@Override
+	public void moveToInsertRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("moveToInsertRow");
+	}
+
+	@Override
+	public boolean next() throws SQLException {
+		throw new SQLFeatureNotSupportedException("next");
+	}
+
+	@Override
+	public boolean previous() throws SQLException {
+		throw new SQLFeatureNotSupportedException("previous");
+	}
+
+	@Override
+	public void refreshRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("refreshRow");
+	}
+
+	@Override
+	public boolean relative(int rows) throws SQLException {
+		throw new SQLFeatureNotSupportedException("relative");
+	}
+
+	@Override
+	public boolean rowDeleted() throws SQLException {
+		throw new SQLFeatureNotSupportedException("rowDeleted");
+	}
+
+	@Override
+	public boolean rowInserted() throws SQLException {
+		throw new SQLFeatureNotSupportedException("rowInserted");
+	}
+
+	@Override
+	public boolean rowUpdated() throws SQLException {
+		throw new SQLFeatureNotSupportedException("rowUpdated");
+	}
+
+	@Override
+	public void setFetchDirection(int direction) throws SQLException {
+		throw new SQLFeatureNotSupportedException("setFetchDirection");
+	}
+
+	@Override
+	public void setFetchSize(int rows) throws SQLException {
+		throw new SQLFeatureNotSupportedException("setFetchSize");
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		throw new SQLFeatureNotSupportedException("unwrap");
+	}
+
+	@Override
+	public void updateArray(String columnLabel, Array x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateArray");
+	}
+
+	@Override
+	public void updateArray(int columnIndex, Array x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateArray");
+	}
+
+	@Override
+	public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateAsciiStream");
+	}
+
+	@Override
+	public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateAsciiStream");
+	}
+
+	@Override
+	public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateAsciiStream");
+	}
+
+	@Override
+	public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateAsciiStream");
+	}
+
+	@Override
+	public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateAsciiStream");
+	}
+
+	@Override
+	public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateAsciiStream");
+	}
+
+	@Override
+	public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBigDecimal");
+	}
+
+	@Override
+	public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBigDecimal");
+	}
+
+	@Override
+	public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBinaryStream");
+	}
+
+	@Override
+	public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBinaryStream");
+	}
+
+	@Override
+	public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBinaryStream");
+	}
+
+	@Override
+	public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBinaryStream");
+	}
+
+	@Override
+	public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBinaryStream");
+	}
+
+	@Override
+	public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBinaryStream");
+	}
+
+	@Override
+	public void updateBlob(String columnLabel, InputStream x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBlob");
+	}
+
+	@Override
+	public void updateBlob(String columnLabel, InputStream x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBlob");
+	}
+
+	@Override
+	public void updateBlob(String columnLabel, Blob x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBlob");
+	}
+
+	@Override
+	public void updateBlob(int columnIndex, InputStream x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBlob");
+	}
+
+	@Override
+	public void updateBlob(int columnIndex, InputStream x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBlob");
+	}
+
+	@Override
+	public void updateBlob(int columnIndex, Blob x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBlob");
+	}
+
+	@Override
+	public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBoolean");
+	}
+
+	@Override
+	public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBoolean");
+	}
+
+	@Override
+	public void updateByte(String columnLabel, byte x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateByte");
+	}
+
+	@Override
+	public void updateByte(int columnIndex, byte x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateByte");
+	}
+
+	@Override
+	public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBytes");
+	}
+
+	@Override
+	public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateBytes");
+	}
+
+	@Override
+	public void updateCharacterStream(String columnLabel, Reader x, int length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateCharacterStream");
+	}
+
+	@Override
+	public void updateCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateCharacterStream");
+	}
+
+	@Override
+	public void updateCharacterStream(String columnLabel, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateCharacterStream");
+	}
+
+	@Override
+	public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateCharacterStream");
+	}
+
+	@Override
+	public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateCharacterStream");
+	}
+
+	@Override
+	public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateCharacterStream");
+	}
+
+	@Override
+	public void updateClob(String columnLabel, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateClob");
+	}
+
+	@Override
+	public void updateClob(String columnLabel, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateClob");
+	}
+
+	@Override
+	public void updateClob(String columnLabel, Clob x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateClob");
+	}
+
+	@Override
+	public void updateClob(int columnIndex, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateClob");
+	}
+
+	@Override
+	public void updateClob(int columnIndex, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateClob");
+	}
+
+	@Override
+	public void updateClob(int columnIndex, Clob x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateClob");
+	}
+
+	@Override
+	public void updateDate(String columnLabel, Date x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateDate");
+	}
+
+	@Override
+	public void updateDate(int columnIndex, Date x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateDate");
+	}
+
+	@Override
+	public void updateDouble(String columnLabel, double x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateDouble");
+	}
+
+	@Override
+	public void updateDouble(int columnIndex, double x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateDouble");
+	}
+
+	@Override
+	public void updateFloat(String columnLabel, float x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateFloat");
+	}
+
+	@Override
+	public void updateFloat(int columnIndex, float x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateFloat");
+	}
+
+	@Override
+	public void updateInt(String columnLabel, int scaleOrLength) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateInt");
+	}
+
+	@Override
+	public void updateInt(int columnIndex, int scaleOrLength) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateInt");
+	}
+
+	@Override
+	public void updateLong(String columnLabel, long x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateLong");
+	}
+
+	@Override
+	public void updateLong(int columnIndex, long x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateLong");
+	}
+
+	@Override
+	public void updateNCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNCharacterStream");
+	}
+
+	@Override
+	public void updateNCharacterStream(String columnLabel, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNCharacterStream");
+	}
+
+	@Override
+	public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNCharacterStream");
+	}
+
+	@Override
+	public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNCharacterStream");
+	}
+
+	@Override
+	public void updateNClob(String columnLabel, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNClob");
+	}
+
+	@Override
+	public void updateNClob(String columnLabel, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNClob");
+	}
+
+	@Override
+	public void updateNClob(String columnLabel, NClob x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNClob");
+	}
+
+	@Override
+	public void updateNClob(int columnIndex, Reader x, long length) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNClob");
+	}
+
+	@Override
+	public void updateNClob(int columnIndex, Reader x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNClob");
+	}
+
+	@Override
+	public void updateNClob(int columnIndex, NClob x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNClob");
+	}
+
+	@Override
+	public void updateNString(String columnLabel, String x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNString");
+	}
+
+	@Override
+	public void updateNString(int columnIndex, String x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNString");
+	}
+
+	@Override
+	public void updateNull(String columnLabel) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNull");
+	}
+
+	@Override
+	public void updateNull(int columnIndex) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateNull");
+	}
+
+	@Override
+	public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateObject");
+	}
+
+	@Override
+	public void updateObject(String columnLabel, Object x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateObject");
+	}
+
+	@Override
+	public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateObject");
+	}
+
+	@Override
+	public void updateObject(int columnIndex, Object x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateObject");
+	}
+
+	@Override
+	public void updateRef(String columnLabel, Ref x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateRef");
+	}
+
+	@Override
+	public void updateRef(int columnIndex, Ref x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateRef");
+	}
+
+	@Override
+	public void updateRow() throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateRow");
+	}
+
+	@Override
+	public void updateRowId(String columnLabel, RowId x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateRowId");
+	}
+
+	@Override
+	public void updateRowId(int columnIndex, RowId x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateRowId");
+	}
+
+	@Override
+	public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateSQLXML");
+	}
+
+	@Override
+	public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateSQLXML");
+	}
+
+	@Override
+	public void updateShort(String columnLabel, short x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateShort");
+	}
+
+	@Override
+	public void updateShort(int columnIndex, short x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateShort");
+	}
+
+	@Override
+	public void updateString(String columnLabel, String x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateString");
+	}
+
+	@Override
+	public void updateString(int columnIndex, String x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateString");
+	}
+
+	@Override
+	public void updateTime(String columnLabel, Time x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateTime");
+	}
+
+	@Override
+	public void updateTime(int columnIndex, Time x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateTime");
+	}
+
+	@Override
+	public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateTimestamp");
+	}
+
+	@Override
+	public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+		throw new SQLFeatureNotSupportedException("updateTimestamp");
+	}
+
+	@Override
+	public boolean wasNull() throws SQLException {
+		throw new SQLFeatureNotSupportedException("wasNull");
+	}
+}
@@ -0,0 +1,121 @@
+package com.indigoid.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the assembly of a nested document (an order with its lines): with
+ * JSONBuilder.appendUnnamedJSON(), where each line is built at its own level,
+ * and with JSONWriter.appendObject(), where lines are built at level zero and
+ * indented while they are copied (this is what the loaders do).
+ *
+ * @author Charlie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblyBenchmark {
+
+	/**
+	 * Number of child elements (order lines) of the document.
+	 */
+	@Param({ "1", "10", "100" })
+	public int children;
+
+	/**
+	 * Lines built by JSONBuilder at level one.
+	 */
+	private String[] builderLines;
+	/**
+	 * Lines built by JSONWriter at level zero.
+	 */
+	private String[] writerLines;
+	/**
+	 * Writer used for the documents (reused).
+	 */
+	private JSONWriter writer;
+
+	/**
+	 * Builds the child elements.
+	 */
+	@Setup
+	public void setup() {
+		builderLines = new String[children];
+		writerLines = new String[children];
+		for (int index = 0; index < children; index++) {
+			JSONBuilder line = new JSONBuilder(1);
+			line.appendInt("id_order_detail", index + 1);
+			line.appendString("product_name", "Camiseta \"básica\" - Talla : M" + index);
+			line.appendInt("product_quantity", 2);
+			line.appendDecimal("unit_price_tax_incl", "12.100000");
+			line.appendDate("date_upd", "2018-09-10T10:00:00Z");
+			builderLines[index] = line.toString();
+
+			JSONWriter json = new JSONWriter();
+			json.beginObject();
+			json.appendInt("id_order_detail", index + 1);
+			json.appendString("product_name", "Camiseta \"básica\" - Talla : M" + index);
+			json.appendInt("product_quantity", 2);
+			json.appendDecimal("unit_price_tax_incl", "12.100000");
+			json.appendDate("date_upd", "2018-09-10T10:00:00Z");
+			json.endObject();
+			writerLines[index] = json.toString();
+		}
+		writer = new JSONWriter();
+	}
+
+	/**
+	 * Assembles the document with JSONBuilder.
+	 *
+	 * @return The document.
+	 */
+	@Benchmark
+	public String jsonBuilder() {
+		JSONBuilder json = new JSONBuilder(0);
+		json.appendInt("id_order", 1);
+		json.appendString("reference", "XKBKNABJK");
+		json.appendDecimal("total_paid", "61.800000");
+		json.openArray("order_detail");
+		for (String line : builderLines) {
+			json.appendUnnamedJSON(line);
+		}
+		json.closeArray();
+		return json.toString();
+	}
+
+	/**
+	 * Assembles the document with JSONWriter.
+	 *
+	 * @return The document.
+	 */
+	@Benchmark
+	public String jsonWriter() {
+		writer.reset();
+		writer.beginObject();
+		writer.appendInt("id_order", 1);
+		writer.appendString("reference", "XKBKNABJK");
+		writer.appendDecimal("total_paid", "61.800000");
+		writer.beginArray("order_detail");
+		for (String line : writerLines) {
+			writer.appendObject(line);
+		}
+		writer.endArray();
+		writer.endObject();
+		return writer.toString();
+	}
+}
@@ -0,0 +1,96 @@
+package com.indigoid.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures JSONBuilder.escapeCharacters() on product descriptions: HTML with
+ * line breaks, quotes, tabs and accented characters, like the descriptions
+ * found on a PrestaShop catalog.
+ *
+ * @author Charlie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EscapeBenchmark {
+
+	/**
+	 * Paragraphs repeated to build a description.
+	 */
+	private static final String[] PARAGRAPHS = {
+			"<p>Camiseta de algodón 100% orgánico con cuello redondo y manga corta.</p>\n",
+			"<p class=\"descripcion\">Tejido suave, transpirable y \"ligero\", ideal para el verano.</p>\n",
+			"<ul>\n\t<li>Talla: S, M, L, XL</li>\n\t<li>Lavado a máquina a 30º</li>\n</ul>\n",
+			"<p>Diseñada en España. <strong>Envío gratuito</strong> en pedidos superiores a 50 €.</p>\r\n",
+			"<table>\n<tr><td>Peso</td><td>180 g/m²</td></tr>\n</table>\n" };
+
+	/**
+	 * Size of the description (characters).
+	 */
+	@Param({ "200", "4000", "40000" })
+	public int descriptionSize;
+
+	/**
+	 * Description to be escaped.
+	 */
+	private String description;
+	/**
+	 * Buffer where the description is escaped (reused).
+	 */
+	private StringBuilder buffer;
+
+	/**
+	 * Builds the description.
+	 */
+	@Setup
+	public void setup() {
+		StringBuilder text = new StringBuilder(descriptionSize + 128);
+		for (int index = 0; text.length() < descriptionSize; index++) {
+			text.append(PARAGRAPHS[index % PARAGRAPHS.length]);
+		}
+		text.setLength(descriptionSize);
+		this.description = text.toString();
+		this.buffer = new StringBuilder(descriptionSize * 2);
+	}
+
+	/**
+	 * Escapes the description into a reused buffer.
+	 *
+	 * @return Length of the escaped description.
+	 */
+	@Benchmark
+	public int escapeDescription() {
+		buffer.setLength(0);
+		JSONBuilder.escapeCharacters(buffer, description);
+		return buffer.length();
+	}
+
+	/**
+	 * Escapes the description as a string field of a new JSON object, as
+	 * JSONBuilder.appendString() does.
+	 *
+	 * @return The JSON object.
+	 */
+	@Benchmark
+	public String appendDescription() {
+		JSONBuilder json = new JSONBuilder(0);
+		json.appendString("description", description);
+		return json.toString();
+	}
+}
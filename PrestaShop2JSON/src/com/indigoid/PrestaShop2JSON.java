@@ -2,16 +2,35 @@ package com.indigoid;
 
 import com.indigoid.utils.MessageLogger;
 import com.indigoid.utils.MessageLogger.MessageType;
-
+import com.indigoid.utils.BSONDocumentSink;
+import com.indigoid.utils.Checkpoint;
+import com.indigoid.utils.CheckpointingSink;
+import com.indigoid.utils.DocumentSink;
+import com.indigoid.utils.FileDocumentSink;
+import com.indigoid.utils.OutputCodec;
+import com.indigoid.utils.StateFile;
+
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import com.indigoid.dbutils.MariaDBConnectionManager;
 import com.indigoid.prestashop.CustomersLoader;
+import com.indigoid.prestashop.FragmentCache;
 import com.indigoid.prestashop.OrdersLoader;
 import com.indigoid.prestashop.ProductsLoader;
+import com.indigoid.prestashop.PrstshpLoader;
 
 // TODO Implement the application as a JSP page
 
@@ -46,11 +65,19 @@ public class PrestaShop2JSON {
 	/**
 	 * Command line arguments processed by this program
 	 */
-	private static final String COMMAD_LINE_ARGUMENTS = "<entity> <host> <port> <database> [<user> [<password>]]";
+	private static final String COMMAD_LINE_ARGUMENTS = "[--resume] <entity> <host> <port> <database> [<user> [<password>]]";
 	/**
 	 * Usage instructions for parameter entity
 	 */
 	private static final String ENTITY_USAGE_MESSAGE = "entity: Customers|Products|Orders|All ";
+	/**
+	 * Usage instructions for option --resume
+	 */
+	private static final String RESUME_USAGE_MESSAGE = "--resume: go on from the last checkpoint of an interrupted export";
+	/**
+	 * Option to resume an interrupted export
+	 */
+	private static final String RESUME_OPTION = "--resume";
 	//
 	// Error message strings
 	//
@@ -66,6 +93,31 @@ public class PrestaShop2JSON {
 	private static final String PRODUCTS_JSON_PROPERTY = "products_json";
 	private static final String CUSTOMERS_JSON_PROPERTY = "customers_json";
 	private static final String SHOP_NAME_PROPERTY = "shop_name";
+	private static final String BATCH_SIZE_PROPERTY = "batch_size";
+	private static final String STREAMING_OUTPUT_PROPERTY = "streaming_output";
+	private static final String THREADS_PROPERTY = "threads";
+	private static final String PARALLEL_ENTITIES_PROPERTY = "parallel_entities";
+	private static final String INCREMENTAL_PROPERTY = "incremental";
+	private static final String DIMENSION_CACHE_PROPERTY = "dimension_cache";
+	private static final String FRAGMENT_CACHE_SIZE_PROPERTY = "fragment_cache_size";
+	private static final String FETCH_SIZE_PROPERTY = "fetch_size";
+	private static final String PAGE_SIZE_PROPERTY = "page_size";
+	private static final String PAGE_PAUSE_PROPERTY = "page_pause";
+	private static final String PROGRESS_INTERVAL_PROPERTY = "progress_interval";
+	private static final String PIPELINE_THREADS_PROPERTY = "pipeline_threads";
+	private static final String PARALLEL_CHAINS_PROPERTY = "parallel_chains";
+	private static final String JOIN_SELECTORS_PROPERTY = "join_selectors";
+	private static final String MERGE_CHILDREN_PROPERTY = "merge_children";
+	private static final String SPILL_DIRECTORY_PROPERTY = "spill_directory";
+	private static final String MAX_CONNECTIONS_PROPERTY = "max_connections";
+	private static final String CONNECTION_TIMEOUT_PROPERTY = "connection_timeout";
+	private static final String CUSTOMERS_CODEC_PROPERTY = "customers_codec";
+	private static final String PRODUCTS_CODEC_PROPERTY = "products_codec";
+	private static final String ORDERS_CODEC_PROPERTY = "orders_codec";
+	private static final String CODEC_PROPERTY_SUFFIX = "_codec";
+	private static final String OUTPUT_FORMAT_PROPERTY = "output_format";
+	private static final String CHECKPOINT_INTERVAL_PROPERTY = "checkpoint_interval";
+	private static final String METRICS_FILE_PROPERTY = "metrics_file";
 	//
 	// Properties defaults
 	//
@@ -73,6 +125,46 @@ public class PrestaShop2JSON {
 	private static final String DEFAULT_PRODUCTS_JSON_FILE_NAME = "./products.json";
 	private static final String DEFAULT_ORDERS_JSON_FILE_NAME = "./orders.json";
 	private static final String DEFAULT_SHOP_NAME = "Prestashop";
+	private static final int DEFAULT_BATCH_SIZE = PrstshpLoader.DEFAULT_BATCH_SIZE;
+	private static final String DEFAULT_STREAMING_OUTPUT = "false";
+	private static final int DEFAULT_THREADS = 1;
+	private static final String DEFAULT_PARALLEL_ENTITIES = "true";
+	private static final String DEFAULT_INCREMENTAL = "false";
+	private static final String DEFAULT_DIMENSION_CACHE = "true";
+	private static final int DEFAULT_FRAGMENT_CACHE_SIZE = 10000;
+	private static final int DEFAULT_FETCH_SIZE = 0;
+	private static final int DEFAULT_PAGE_SIZE = 0;
+	private static final int DEFAULT_PAGE_PAUSE = 0;
+	private static final int DEFAULT_PROGRESS_INTERVAL = 30;
+	private static final int DEFAULT_PIPELINE_THREADS = 0;
+	private static final String DEFAULT_PARALLEL_CHAINS = "false";
+	private static final String DEFAULT_JOIN_SELECTORS = "false";
+	private static final String DEFAULT_MERGE_CHILDREN = "false";
+	private static final String DEFAULT_SPILL_DIRECTORY = "";
+	private static final int DEFAULT_MAX_CONNECTIONS = MariaDBConnectionManager.DEFAULT_MAX_CONNECTIONS;
+	private static final int DEFAULT_CONNECTION_TIMEOUT = (int) (MariaDBConnectionManager.DEFAULT_ACQUIRE_TIMEOUT / 1000);
+	private static final String DEFAULT_CODEC = "plain";
+	private static final String DEFAULT_OUTPUT_FORMAT = "json";
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+	private static final String DEFAULT_METRICS_FILE = "false";
+	//
+	// State file (incremental loads)
+	//
+	private static final String STATE_FILE_EXTENSION = ".state";
+	private static final String LAST_EXPORT_STATE_SUFFIX = ".last_export";
+	//
+	// Checkpoint file (resumed exports)
+	//
+	private static final String CHECKPOINT_FILE_EXTENSION = ".checkpoint";
+	//
+	// Output formats
+	//
+	private static final String JSON_FORMAT = "json";
+	private static final String NDJSON_FORMAT = "ndjson";
+	private static final String BSON_FORMAT = "bson";
+	private static final String JSON_FILE_EXTENSION = ".json";
+	private static final String BSON_FILE_EXTENSION = ".bson";
+	private static final String METRICS_FILE_EXTENSION = ".metrics.json";
 
 	private static final int EXIT_CODE_NORMAL = 0;
 	private static final int EXIT_CODE_ERROR = -1;
@@ -84,6 +176,24 @@ public class PrestaShop2JSON {
 	 * Properties for the program. They are set via a external .properties file
 	 */
 	private static Properties prop = new Properties();
+	/**
+	 * Values kept from one run to the next one (last export time of each entity)
+	 */
+	private static StateFile state = null;
+	/**
+	 * Rendered child elements shared by all the loaders (null if there is no
+	 * cache)
+	 */
+	private static FragmentCache fragmentCache = null;
+	/**
+	 * Progress of the exports, kept from one run to the next one (null if there
+	 * are no checkpoints)
+	 */
+	private static StateFile checkpoints = null;
+	/**
+	 * Set when interrupted exports go on from their last checkpoint (--resume)
+	 */
+	private static boolean resume = false;
 
 	/**
 	 * Main method for this program. Just parses command line arguments and calls to
@@ -91,12 +201,18 @@ public class PrestaShop2JSON {
 	 * 
 	 * @param args
 	 *            External arguments passed from the command line (some are
-	 *            required). Usage: host port database [user [password]]
+	 *            required). Usage: [--resume] entity host port database [user
+	 *            [password]]
 	 */
 	public static void main(String[] args) {
 
 		int argc = 0; // Counter, argument being consumed
 
+		// Options may go anywhere, the rest of the arguments go in order
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		resume = arguments.remove(RESUME_OPTION);
+		args = arguments.toArray(new String[arguments.size()]);
+
 		// Arguments check
 		if (args.length < MIN_CMD_LINE_ARGS) {
 			MessageLogger.logMessage(MessageType.ERROR, INCORRECT_NUMBER_OF_PARAMETERS_AT_PROGRAM_INVOCATION);
@@ -177,6 +293,7 @@ public class PrestaShop2JSON {
 
 		// Load properties from the external .properties file
 		loadProperties();
+		checkParallelChains(entity);
 
 		// Done with parameters parsing. Call the main process for this program.
 		int exitCode = MainProcess(entity, host, port, database, dbUser, dbPasswd);
@@ -212,6 +329,36 @@ public class PrestaShop2JSON {
 
 		MessageLogger.logMessage(MessageType.INFO, "About to start database processing");
 
+		// Incremental loads need the time of the last export of each entity
+		if (Boolean.parseBoolean(prop.getProperty(INCREMENTAL_PROPERTY).trim())) {
+			try {
+				state = new StateFile(MessageLogger.getInstance().getProgramName() + STATE_FILE_EXTENSION);
+			} catch (IOException e) {
+				MessageLogger.logUnmanagedException(e);
+				return EXIT_CODE_ERROR;
+			}
+		}
+
+		// Streaming exports save their progress, so they can be resumed
+		int checkpointInterval = getIntProperty(CHECKPOINT_INTERVAL_PROPERTY, DEFAULT_CHECKPOINT_INTERVAL);
+		if (checkpointInterval > 0 && Boolean.parseBoolean(prop.getProperty(STREAMING_OUTPUT_PROPERTY).trim())) {
+			try {
+				checkpoints = new StateFile(MessageLogger.getInstance().getProgramName() + CHECKPOINT_FILE_EXTENSION);
+			} catch (IOException e) {
+				MessageLogger.logUnmanagedException(e);
+				return EXIT_CODE_ERROR;
+			}
+		} else if (resume) {
+			MessageLogger.logMessage(MessageType.WARNING, "Exports cannot be resumed without " + STREAMING_OUTPUT_PROPERTY
+					+ " and " + CHECKPOINT_INTERVAL_PROPERTY + ". Loading all");
+		}
+
+		// Rendered sub-documents repeated on many documents are shared by all loaders
+		int fragmentCacheSize = getIntProperty(FRAGMENT_CACHE_SIZE_PROPERTY, DEFAULT_FRAGMENT_CACHE_SIZE);
+		if (fragmentCacheSize > 0) {
+			fragmentCache = new FragmentCache(fragmentCacheSize);
+		}
+
 		/*
 		 * This is the outer error control block. Any unhandled exception happening
 		 * inside the program will be caught here. Main purpose of this is to close
@@ -220,67 +367,357 @@ public class PrestaShop2JSON {
 		// Holds database connection and other resources opened against the DB manager
 		try (MariaDBConnectionManager dbc = new MariaDBConnectionManager(host, port, database, dbUser, dbPasswd)) {
 
-			//
-			// Extract customers data
-			//
-			if (entity == EntityToExtract.CUSTOMERS || entity == EntityToExtract.ALL) {
-				MessageLogger.logMessage(MessageType.INFO, "About to load Customers data");
-				CustomersLoader cl = new CustomersLoader();
+			// The same pool of connections is shared by all loaders and threads
+			dbc.setMaxConnections(getIntProperty(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+			dbc.setAcquireTimeout(getIntProperty(CONNECTION_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_TIMEOUT) * 1000L);
+
+			if (entity == EntityToExtract.ALL
+					&& Boolean.parseBoolean(prop.getProperty(PARALLEL_ENTITIES_PROPERTY).trim())) {
+				// All entities at the same time, each one on its own connection
+				exitCode = extractAllEntities(dbc);
+			} else {
+
+				//
+				// Extract customers data
+				//
+				if (entity == EntityToExtract.CUSTOMERS || entity == EntityToExtract.ALL) {
+					if (extractEntity(dbc, new CustomersLoader(), "customer",
+							prop.getProperty(CUSTOMERS_JSON_PROPERTY)) != EXIT_CODE_NORMAL) {
+						exitCode = EXIT_CODE_ERROR;
+					}
+				}
+
+				//
+				// Extract products data
+				//
+				if (entity == EntityToExtract.PRODUCTS || entity == EntityToExtract.ALL) {
+					if (extractEntity(dbc, new ProductsLoader(), "product",
+							prop.getProperty(PRODUCTS_JSON_PROPERTY)) != EXIT_CODE_NORMAL) {
+						exitCode = EXIT_CODE_ERROR;
+					}
+				}
+
+				//
+				// Extract orders data
+				//
+				if (entity == EntityToExtract.ORDERS || entity == EntityToExtract.ALL) {
+					if (extractEntity(dbc, new OrdersLoader(), "order",
+							prop.getProperty(ORDERS_JSON_PROPERTY)) != EXIT_CODE_NORMAL) {
+						exitCode = EXIT_CODE_ERROR;
+					}
+				}
+			}
 
-				int nCustomers = cl.load(dbc, prop.getProperty(SHOP_NAME_PROPERTY));
+		} catch (Exception e) {
+			MessageLogger.logUnmanagedException(e);
+			exitCode = EXIT_CODE_ERROR;
+		}
+
+		if (fragmentCache != null) {
+			MessageLogger.logMessage(MessageType.INFO, fragmentCache.toString());
+		}
 
-				MessageLogger.logMessage(MessageType.INFO, nCustomers + " customers has been loaded");
+		MessageLogger.logMessage(MessageType.INFO, "Process completed. Exit code: " + exitCode);
+		return exitCode;
+	}
 
-				// Write customers data to output file
-				cl.dumpData(prop.getProperty(CUSTOMERS_JSON_PROPERTY));
+	/**
+	 * Extracts customers, products and orders concurrently. Each entity is loaded
+	 * by its own thread, on its own database connection, and written to its own
+	 * output file. A failure on one entity does not stop the others, neither
+	 * does an entity loaded with errors.
+	 * 
+	 * @param dbc
+	 *            The database manager connection, shared by the entities (each
+	 *            thread takes its own connection from the pool)
+	 * @return Zero (EXIT_CODE_NORMAL) if all the entities have been extracted
+	 *         without errors. A negative number (EXIT_CODE_ERROR) otherwise.
+	 */
+	private static int extractAllEntities(MariaDBConnectionManager dbc) {
 
-				MessageLogger.logMessage(MessageType.INFO,
-						nCustomers + " customer documents written to " + prop.getProperty(CUSTOMERS_JSON_PROPERTY));
+		int exitCode = EXIT_CODE_NORMAL;
+		String[] entityNames = { "customer", "product", "order" };
+		String[] fileNames = { prop.getProperty(CUSTOMERS_JSON_PROPERTY), prop.getProperty(PRODUCTS_JSON_PROPERTY),
+				prop.getProperty(ORDERS_JSON_PROPERTY) };
+		List<Supplier<PrstshpLoader>> loaders = Arrays.asList(CustomersLoader::new, ProductsLoader::new,
+				OrdersLoader::new);
+
+		ExecutorService executor = Executors.newFixedThreadPool(entityNames.length);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < entityNames.length; i++) {
+			final int entityIndex = i;
+			results.add(executor.submit(() -> extractEntity(dbc, loaders.get(entityIndex).get(),
+					entityNames[entityIndex], fileNames[entityIndex])));
+		}
+		executor.shutdown();
+
+		// Wait for all the entities and report them together
+		StringBuilder summary = new StringBuilder();
+		for (int i = 0; i < entityNames.length; i++) {
+			summary.append((i > 0) ? ", " : "");
+			try {
+				if (results.get(i).get() == EXIT_CODE_NORMAL) {
+					summary.append(entityNames[i]).append("s done");
+				} else {
+					summary.append(entityNames[i]).append("s with errors");
+					exitCode = EXIT_CODE_ERROR;
+				}
+			} catch (ExecutionException e) {
+				MessageLogger.logMessage(MessageType.ERROR, "Extraction of " + entityNames[i] + "s failed");
+				MessageLogger.logUnmanagedException(
+						(e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+				summary.append(entityNames[i]).append("s failed");
+				exitCode = EXIT_CODE_ERROR;
+			} catch (InterruptedException e) {
+				MessageLogger.logUnmanagedException(e);
+				summary.append(entityNames[i]).append("s interrupted");
+				exitCode = EXIT_CODE_ERROR;
 			}
+		}
+		MessageLogger.logMessage(MessageType.INFO, "All entities extracted: " + summary);
 
-			//
-			// Extract products data
-			//
-			if (entity == EntityToExtract.PRODUCTS || entity == EntityToExtract.ALL) {
-				MessageLogger.logMessage(MessageType.INFO, "About to load Products data");
-				ProductsLoader pl = new ProductsLoader();
+		return exitCode;
+	}
 
-				int nProducts = pl.load(dbc, prop.getProperty(SHOP_NAME_PROPERTY));
+	/**
+	 * Loads all the documents of one entity and writes them to its output file.
+	 * On streaming mode documents are written while they are being loaded,
+	 * otherwise they are written once all of them are in memory.<br/>
+	 * <br/>
+	 * On streaming mode the progress of the export is saved every so many
+	 * documents. An export resumed (--resume) goes on after the last document
+	 * saved, on the same output file truncated to that point. Completed exports
+	 * are not done again.
+	 * 
+	 * @param dbc
+	 *            The database manager connection
+	 * @param loader
+	 *            Loader for the entity
+	 * @param entityName
+	 *            Name of the entity (singular, lower case) used on log messages
+	 * @param fileName
+	 *            Name of the output file
+	 * @return Zero (EXIT_CODE_NORMAL) if the entity has been loaded without
+	 *         errors. A negative number (EXIT_CODE_ERROR) if the loader found
+	 *         errors (the output file may be incomplete, and a checkpointed
+	 *         export has to be resumed).
+	 * @throws IOException
+	 *             When the output file (or the checkpoint) cannot be written
+	 * @throws SQLException
+	 *             When the database time cannot be read (incremental loads)
+	 */
+	private static int extractEntity(MariaDBConnectionManager dbc, PrstshpLoader loader, String entityName,
+			String fileName) throws IOException, SQLException {
+
+		int nDocuments, nWritten;
+		DocumentSink sink;
+		String plural = entityName + "s";
+		String exportStart = null;
+		String stateKey = plural + LAST_EXPORT_STATE_SUFFIX;
+
+		MessageLogger.logMessage(MessageType.INFO,
+				"About to load " + Character.toUpperCase(plural.charAt(0)) + plural.substring(1) + " data");
+		configureLoader(loader);
+
+		// Incremental loads start where the last successful one did
+		if (state != null) {
+			exportStart = dbc.getCurrentTimestamp();
+			String lastExport = state.get(stateKey);
+			if (lastExport != null) {
+				MessageLogger.logMessage(MessageType.INFO, "Loading " + plural + " changed since " + lastExport);
+				loader.setChangedSince(lastExport);
+			} else {
+				MessageLogger.logMessage(MessageType.INFO, "No previous export of " + plural + ". Loading all");
+			}
+		}
 
-				MessageLogger.logMessage(MessageType.INFO, nProducts + " products has been loaded");
+		// Output file may be BSON and/or compressed (extensions are added)
+		OutputCodec codec = getCodecProperty(plural + CODEC_PROPERTY_SUFFIX);
+		String format = getOutputFormat();
+		boolean bson = format.equals(BSON_FORMAT);
+		loader.setCompactJSON(!format.equals(JSON_FORMAT));
+		if (bson) {
+			fileName = (fileName.endsWith(JSON_FILE_EXTENSION)
+					? fileName.substring(0, fileName.length() - JSON_FILE_EXTENSION.length())
+					: fileName) + BSON_FILE_EXTENSION;
+		}
+		String outputName = codec.fileName(fileName);
+
+		// Exports go on from their last checkpoint, or start a new one
+		Checkpoint checkpoint = null;
+		long resumeOffset = 0;
+		if (checkpoints != null) {
+			checkpoint = new Checkpoint(checkpoints, plural);
+			if (resume && outputName.equals(checkpoint.getOutput())) {
+				if (checkpoint.isComplete()) {
+					MessageLogger.logMessage(MessageType.INFO,
+							"Export of " + plural + " to " + outputName + " was completed. Skipped");
+					return EXIT_CODE_NORMAL;
+				}
+				resumeOffset = checkpoint.getOffset();
+				loader.setResumeAfter(checkpoint.getLastId());
+				if (state != null && checkpoint.getExportStart() != null) {
+					exportStart = checkpoint.getExportStart();
+				}
+				MessageLogger.logMessage(MessageType.INFO, "Resuming " + plural + " after " + checkpoint.getDocuments()
+						+ " documents (last id " + checkpoint.getLastId() + ")");
+			} else {
+				if (resume) {
+					MessageLogger.logMessage(MessageType.WARNING,
+							"No checkpoint of " + plural + " for " + outputName + ". Loading all");
+				}
+				checkpoint.start(outputName, exportStart);
+			}
+		}
 
-				// Write customers data to output file
-				pl.dumpData(prop.getProperty(PRODUCTS_JSON_PROPERTY));
+		if (Boolean.parseBoolean(prop.getProperty(STREAMING_OUTPUT_PROPERTY).trim())) {
 
-				MessageLogger.logMessage(MessageType.INFO,
-						nProducts + " product documents written to " + prop.getProperty(PRODUCTS_JSON_PROPERTY));
+			// Documents are written as soon as they are loaded
+			sink = bson ? new BSONDocumentSink(outputName, codec, resumeOffset)
+					: new FileDocumentSink(outputName, codec, resumeOffset);
+			CheckpointingSink checkpointing = null;
+			if (checkpoint != null) {
+				checkpointing = new CheckpointingSink(sink, checkpoint,
+						getIntProperty(CHECKPOINT_INTERVAL_PROPERTY, DEFAULT_CHECKPOINT_INTERVAL), loader::hasErrors);
+				sink = checkpointing;
+			}
+			try {
+				loader.setDocumentSink(sink);
+				nDocuments = loader.load(dbc, prop.getProperty(SHOP_NAME_PROPERTY));
+				if (checkpointing != null) {
+					checkpointing.complete();
+				}
+			} finally {
+				sink.close();
 			}
 
-			//
-			// Extract orders data
-			//
-			if (entity == EntityToExtract.ORDERS || entity == EntityToExtract.ALL) {
-				MessageLogger.logMessage(MessageType.INFO, "About to load Orders data");
-				OrdersLoader ol = new OrdersLoader();
-
-				int nOrders = ol.load(dbc, prop.getProperty(SHOP_NAME_PROPERTY));
+			MessageLogger.logMessage(MessageType.INFO, nDocuments + " " + plural + " has been loaded");
+		} else {
+			nDocuments = loader.load(dbc, prop.getProperty(SHOP_NAME_PROPERTY));
 
-				MessageLogger.logMessage(MessageType.INFO, nOrders + " orders has been loaded");
+			MessageLogger.logMessage(MessageType.INFO, nDocuments + " " + plural + " has been loaded");
 
-				// Write orders data to output file
-				ol.dumpData(prop.getProperty(ORDERS_JSON_PROPERTY));
+			// Write data to output file
+			sink = bson ? new BSONDocumentSink(outputName, codec) : new FileDocumentSink(outputName, codec);
+			try {
+				loader.dumpData(sink);
+			} finally {
+				sink.close();
+			}
+		}
+		nWritten = sink.getDocumentCount();
+
+		MessageLogger.logMessage(MessageType.INFO,
+				nWritten + " " + entityName + " documents written to " + outputName);
+		MessageLogger.logMessage(MessageType.INFO, "Output of " + plural + ": " + sink.getStats());
+
+		// Where the time went, on the log and (optionally) next to the output
+		loader.getMetrics().getSummary().forEach(line -> MessageLogger.logMessage(MessageType.INFO, line));
+		if (Boolean.parseBoolean(prop.getProperty(METRICS_FILE_PROPERTY).trim())) {
+			String metricsName = outputName + METRICS_FILE_EXTENSION;
+			loader.getMetrics().writeJSON(metricsName);
+			MessageLogger.logMessage(MessageType.INFO, "Metrics of " + plural + " written to " + metricsName);
+		}
 
-				MessageLogger.logMessage(MessageType.INFO,
-						nOrders + " order documents written to " + prop.getProperty(ORDERS_JSON_PROPERTY));
+		// Next incremental load starts here, unless something went wrong
+		if (state != null) {
+			if (loader.hasErrors()) {
+				MessageLogger.logMessage(MessageType.WARNING,
+						"Errors loading " + plural + ". Last export time is not updated");
+			} else {
+				state.set(stateKey, exportStart);
 			}
+		}
 
-		} catch (Exception e) {
-			MessageLogger.logUnmanagedException(e);
-			exitCode = EXIT_CODE_ERROR;
+		// Scripts must not take an incomplete export as done
+		if (loader.hasErrors()) {
+			MessageLogger.logMessage(MessageType.ERROR, "Errors loading " + plural + ". Output may be incomplete"
+					+ ((checkpoint != null) ? ". Run again with " + RESUME_OPTION + " to go on from the last checkpoint"
+							: ""));
+			return EXIT_CODE_ERROR;
 		}
+		return EXIT_CODE_NORMAL;
+	}
 
-		MessageLogger.logMessage(MessageType.INFO, "Process completed. Exit code: " + exitCode);
-		return exitCode;
+	/**
+	 * Sets the loader options that are read from the properties file.
+	 * 
+	 * @param loader
+	 *            Loader to be configured
+	 */
+	private static void configureLoader(PrstshpLoader loader) {
+		loader.setBatchSize(getIntProperty(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+		loader.setThreads(getIntProperty(THREADS_PROPERTY, DEFAULT_THREADS));
+		loader.setDimensionCache(Boolean.parseBoolean(prop.getProperty(DIMENSION_CACHE_PROPERTY).trim()));
+		loader.setFragmentCache(fragmentCache);
+		loader.setFetchSize(getIntProperty(FETCH_SIZE_PROPERTY, DEFAULT_FETCH_SIZE));
+		loader.setPageSize(getIntProperty(PAGE_SIZE_PROPERTY, DEFAULT_PAGE_SIZE),
+				getIntProperty(PAGE_PAUSE_PROPERTY, DEFAULT_PAGE_PAUSE));
+		loader.setProgressInterval(getIntProperty(PROGRESS_INTERVAL_PROPERTY, DEFAULT_PROGRESS_INTERVAL));
+		loader.setPipelineThreads(getIntProperty(PIPELINE_THREADS_PROPERTY, DEFAULT_PIPELINE_THREADS));
+		loader.setParallelChains(Boolean.parseBoolean(prop.getProperty(PARALLEL_CHAINS_PROPERTY).trim()));
+		loader.setJoinSelectors(Boolean.parseBoolean(prop.getProperty(JOIN_SELECTORS_PROPERTY).trim()));
+		loader.setMergeChildren(Boolean.parseBoolean(prop.getProperty(MERGE_CHILDREN_PROPERTY).trim()));
+		String spillDirectory = prop.getProperty(SPILL_DIRECTORY_PROPERTY).trim();
+		loader.setSpillDirectory(spillDirectory.isEmpty() ? null : new File(spillDirectory));
+	}
+
+	/**
+	 * Retrieves the format of the output files: indented JSON text, compact
+	 * Extended JSON text (one document per line), both read by mongoimport, or
+	 * BSON (mongorestore). If the format is not known, a warning is logged and
+	 * indented JSON is written.
+	 * 
+	 * @return JSON_FORMAT, NDJSON_FORMAT or BSON_FORMAT.
+	 */
+	private static String getOutputFormat() {
+		String format = prop.getProperty(OUTPUT_FORMAT_PROPERTY).trim().toLowerCase();
+		if (format.equals(JSON_FORMAT) || format.equals(NDJSON_FORMAT) || format.equals(BSON_FORMAT)) {
+			return format;
+		}
+		MessageLogger.logMessage(MessageType.WARNING, "Invalid value for property " + OUTPUT_FORMAT_PROPERTY + ": "
+				+ format + ". Using " + DEFAULT_OUTPUT_FORMAT);
+		return DEFAULT_OUTPUT_FORMAT;
+	}
+
+	/**
+	 * Retrieves the encoding of an output file. If the value is not a known
+	 * encoding, a warning is logged and the file is written plain.
+	 * 
+	 * @param name
+	 *            Name of the property
+	 * @return The encoding of the file.
+	 */
+	private static OutputCodec getCodecProperty(String name) {
+		String value = prop.getProperty(name, DEFAULT_CODEC);
+		try {
+			return OutputCodec.fromName(value);
+		} catch (IllegalArgumentException e) {
+			MessageLogger.logMessage(MessageType.WARNING,
+					"Invalid value for property " + name + ": " + value + ". Using " + DEFAULT_CODEC);
+			return OutputCodec.PLAIN;
+		}
+	}
+
+	/**
+	 * Retrieves a numeric property. If the value is not a number, a warning is
+	 * logged and the default value is used instead.
+	 * 
+	 * @param name
+	 *            Name of the property
+	 * @param defaultValue
+	 *            Value used when the property is not valid
+	 * @return The value of the property.
+	 */
+	private static int getIntProperty(String name, int defaultValue) {
+		String value = prop.getProperty(name);
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException | NullPointerException e) {
+			MessageLogger.logMessage(MessageType.WARNING,
+					"Invalid value for property " + name + ": " + value + ". Using " + defaultValue);
+			return defaultValue;
+		}
 	}
 
 	/**
@@ -312,6 +749,111 @@ public class PrestaShop2JSON {
 		if (!prop.containsKey(SHOP_NAME_PROPERTY)) {
 			prop.setProperty(SHOP_NAME_PROPERTY, DEFAULT_SHOP_NAME);
 		}
+		if (!prop.containsKey(BATCH_SIZE_PROPERTY)) {
+			prop.setProperty(BATCH_SIZE_PROPERTY, Integer.toString(DEFAULT_BATCH_SIZE));
+		}
+		if (!prop.containsKey(STREAMING_OUTPUT_PROPERTY)) {
+			prop.setProperty(STREAMING_OUTPUT_PROPERTY, DEFAULT_STREAMING_OUTPUT);
+		}
+		if (!prop.containsKey(THREADS_PROPERTY)) {
+			prop.setProperty(THREADS_PROPERTY, Integer.toString(DEFAULT_THREADS));
+		}
+		if (!prop.containsKey(FRAGMENT_CACHE_SIZE_PROPERTY)) {
+			prop.setProperty(FRAGMENT_CACHE_SIZE_PROPERTY, Integer.toString(DEFAULT_FRAGMENT_CACHE_SIZE));
+		}
+		if (!prop.containsKey(PARALLEL_ENTITIES_PROPERTY)) {
+			prop.setProperty(PARALLEL_ENTITIES_PROPERTY, DEFAULT_PARALLEL_ENTITIES);
+		}
+		if (!prop.containsKey(INCREMENTAL_PROPERTY)) {
+			prop.setProperty(INCREMENTAL_PROPERTY, DEFAULT_INCREMENTAL);
+		}
+		if (!prop.containsKey(DIMENSION_CACHE_PROPERTY)) {
+			prop.setProperty(DIMENSION_CACHE_PROPERTY, DEFAULT_DIMENSION_CACHE);
+		}
+		if (!prop.containsKey(FETCH_SIZE_PROPERTY)) {
+			prop.setProperty(FETCH_SIZE_PROPERTY, Integer.toString(DEFAULT_FETCH_SIZE));
+		}
+		if (!prop.containsKey(PAGE_SIZE_PROPERTY)) {
+			prop.setProperty(PAGE_SIZE_PROPERTY, Integer.toString(DEFAULT_PAGE_SIZE));
+		}
+		if (!prop.containsKey(PAGE_PAUSE_PROPERTY)) {
+			prop.setProperty(PAGE_PAUSE_PROPERTY, Integer.toString(DEFAULT_PAGE_PAUSE));
+		}
+		if (!prop.containsKey(PROGRESS_INTERVAL_PROPERTY)) {
+			prop.setProperty(PROGRESS_INTERVAL_PROPERTY, Integer.toString(DEFAULT_PROGRESS_INTERVAL));
+		}
+		if (!prop.containsKey(PIPELINE_THREADS_PROPERTY)) {
+			prop.setProperty(PIPELINE_THREADS_PROPERTY, Integer.toString(DEFAULT_PIPELINE_THREADS));
+		}
+		if (!prop.containsKey(PARALLEL_CHAINS_PROPERTY)) {
+			prop.setProperty(PARALLEL_CHAINS_PROPERTY, DEFAULT_PARALLEL_CHAINS);
+		}
+		if (!prop.containsKey(JOIN_SELECTORS_PROPERTY)) {
+			prop.setProperty(JOIN_SELECTORS_PROPERTY, DEFAULT_JOIN_SELECTORS);
+		}
+		if (!prop.containsKey(MERGE_CHILDREN_PROPERTY)) {
+			prop.setProperty(MERGE_CHILDREN_PROPERTY, DEFAULT_MERGE_CHILDREN);
+		}
+		if (!prop.containsKey(SPILL_DIRECTORY_PROPERTY)) {
+			prop.setProperty(SPILL_DIRECTORY_PROPERTY, DEFAULT_SPILL_DIRECTORY);
+		}
+		if (!prop.containsKey(MAX_CONNECTIONS_PROPERTY)) {
+			prop.setProperty(MAX_CONNECTIONS_PROPERTY, Integer.toString(DEFAULT_MAX_CONNECTIONS));
+		}
+		if (!prop.containsKey(CONNECTION_TIMEOUT_PROPERTY)) {
+			prop.setProperty(CONNECTION_TIMEOUT_PROPERTY, Integer.toString(DEFAULT_CONNECTION_TIMEOUT));
+		}
+		if (!prop.containsKey(OUTPUT_FORMAT_PROPERTY)) {
+			prop.setProperty(OUTPUT_FORMAT_PROPERTY, DEFAULT_OUTPUT_FORMAT);
+		}
+		if (!prop.containsKey(CHECKPOINT_INTERVAL_PROPERTY)) {
+			prop.setProperty(CHECKPOINT_INTERVAL_PROPERTY, Integer.toString(DEFAULT_CHECKPOINT_INTERVAL));
+		}
+		if (!prop.containsKey(METRICS_FILE_PROPERTY)) {
+			prop.setProperty(METRICS_FILE_PROPERTY, DEFAULT_METRICS_FILE);
+		}
+		if (!prop.containsKey(CUSTOMERS_CODEC_PROPERTY)) {
+			prop.setProperty(CUSTOMERS_CODEC_PROPERTY, DEFAULT_CODEC);
+		}
+		if (!prop.containsKey(PRODUCTS_CODEC_PROPERTY)) {
+			prop.setProperty(PRODUCTS_CODEC_PROPERTY, DEFAULT_CODEC);
+		}
+		if (!prop.containsKey(ORDERS_CODEC_PROPERTY)) {
+			prop.setProperty(ORDERS_CODEC_PROPERTY, DEFAULT_CODEC);
+		}
+	}
+
+	/**
+	 * Turns the parallel chains mode off when the pool of connections is too
+	 * small for it. Every thread loading documents (partition workers, or the
+	 * reader and the assemblers of a pipeline, of each entity extracted at the
+	 * same time) keeps its connection while it waits for its chains, and each
+	 * chain needs one more connection. If the threads can take all the
+	 * connections, the chains would only wait for a connection until they time
+	 * out.
+	 * 
+	 * @param entity
+	 *            Type of entity to download
+	 */
+	private static void checkParallelChains(EntityToExtract entity) {
+		if (!Boolean.parseBoolean(prop.getProperty(PARALLEL_CHAINS_PROPERTY).trim())) {
+			return;
+		}
+
+		int threads = Math.max(1, getIntProperty(THREADS_PROPERTY, DEFAULT_THREADS));
+		int pipelineThreads = getIntProperty(PIPELINE_THREADS_PROPERTY, DEFAULT_PIPELINE_THREADS);
+		int loaders = (threads == 1 && pipelineThreads > 0) ? pipelineThreads + 1 : threads;
+		int entities = (entity == EntityToExtract.ALL
+				&& Boolean.parseBoolean(prop.getProperty(PARALLEL_ENTITIES_PROPERTY).trim())) ? 3 : 1;
+		int maxConnections = getIntProperty(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS);
+
+		if (maxConnections <= loaders * entities) {
+			MessageLogger.logMessage(MessageType.WARNING,
+					PARALLEL_CHAINS_PROPERTY + " needs " + MAX_CONNECTIONS_PROPERTY + " above " + (loaders * entities)
+							+ " (" + loaders + " loading threads x " + entities + " entities), but it is "
+							+ maxConnections + ". Child chains are loaded one after the other");
+			prop.setProperty(PARALLEL_CHAINS_PROPERTY, "false");
+		}
 	}
 
 	/**
@@ -323,6 +865,8 @@ public class PrestaShop2JSON {
 				MessageLogger.getInstance().getProgramName() + " " + COMMAD_LINE_ARGUMENTS);
 		MessageLogger.logMessage(MessageType.USAGE,
 				MessageLogger.getInstance().getProgramName() + " " + ENTITY_USAGE_MESSAGE);
+		MessageLogger.logMessage(MessageType.USAGE,
+				MessageLogger.getInstance().getProgramName() + " " + RESUME_USAGE_MESSAGE);
 
 		// Other usage directions used by the ErrorManager
 		MessageLogger.logUsageMessage();
@@ -2,16 +2,32 @@ package com.indigoid.dbutils;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.indigoid.utils.MessageLogger;
+import com.indigoid.utils.MessageLogger.MessageType;
 
 /**
  * This is a utility class used to hold all the resources created against the
- * database manager. It holds the connection, as well as the statements as well
+ * database manager. It holds the connections, as well as the statements as well
  * as the result sets. The close method must be called upon program completion
- * in order to free all resources.
+ * in order to free all resources.<br/>
+ * <br/>
+ * The manager is a pool of connections that can be shared by several threads.
+ * A thread takes a connection from the pool when it acquires its first
+ * statement and keeps it (with its own pools of statements) until it has
+ * released all of them, so statements must be released by the same thread
+ * that acquired them. The pool has a maximum size: when all the connections are
+ * in use, threads wait for one to be released (up to a timeout). Connections
+ * idle for a while are validated before being used again.
  * 
  * @author Charlie
  */
@@ -23,25 +39,114 @@ public class MariaDBConnectionManager implements AutoCloseable {
 	private static final String MARIADB_DRIVER = "mariadb";
 	private static final String JDBC_PROTOCOL = "jdbc";
 	/**
-	 * Initial number of statements on the pool.
+	 * Initial number of statements on the pool of each connection.
 	 */
 	private static final int INITIAL_STATEMENTS = 5;
+	/**
+	 * Maximum number of idle prepared statements of the same query.
+	 */
+	private static final int MAX_IDLE_STATEMENTS_PER_QUERY = 4;
+	/**
+	 * Maximum number of idle prepared statements of all the queries.
+	 */
+	private static final int MAX_IDLE_STATEMENTS = 64;
+	/**
+	 * Default maximum number of connections on the pool.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 16;
+	/**
+	 * Default time to wait for a connection when all of them are in use
+	 * (milliseconds).
+	 */
+	public static final long DEFAULT_ACQUIRE_TIMEOUT = 60000;
+	/**
+	 * Connections idle for longer than this are validated before being used
+	 * (nanoseconds).
+	 */
+	private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+	/**
+	 * Time to wait for the server when validating a connection (seconds).
+	 */
+	private static final int VALIDATION_TIMEOUT = 5;
+	/**
+	 * Query returning the current time on the database server.
+	 */
+	private static final String CURRENT_TIMESTAMP_QUERY = "SELECT DATE_FORMAT(NOW(), '%Y-%m-%d %H:%i:%s')";
 
 	/**
-	 * Connection to PrestaShop database
+	 * Connection string of PrestaShop database
+	 */
+	private String dbURL;
+	/**
+	 * Connection parameters, kept to open new connections to the same database
+	 */
+	private String host, database, dbUser, dbPwd;
+	private int port;
+	/**
+	 * Maximum number of connections on the pool
+	 */
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	/**
+	 * Time to wait for a connection when all of them are in use (milliseconds)
+	 */
+	private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+	/**
+	 * Second connection manager to the same database, used for the queries run
+	 * while a result set is being streamed on this one (null until it is needed).
+	 */
+	private MariaDBConnectionManager sibling = null;
+	/**
+	 * Guards the pool (and the metrics)
+	 */
+	private ReentrantLock lock = new ReentrantLock();
+	/**
+	 * Signaled when a connection returns to the pool
+	 */
+	private Condition connectionReleased = lock.newCondition();
+	/**
+	 * All the connections opened
+	 */
+	private ArrayList<PooledConnection> connections = new ArrayList<>();
+	/**
+	 * Connections not used by any thread (the most recently used is the last)
+	 */
+	private ArrayDeque<PooledConnection> idleConnections = new ArrayDeque<>();
+	/**
+	 * Connections being opened without the lock (they count as part of the pool)
+	 */
+	private int pendingConnections = 0;
+	/**
+	 * Connection of each dedicated statement (see acquireDedicatedStreamingStatement())
+	 */
+	private HashMap<MyStatement, PooledConnection> dedicatedConnections = new HashMap<>();
+	/**
+	 * Connection used by each thread (while it holds statements)
+	 */
+	private ThreadLocal<PooledConnection> threadConnection = new ThreadLocal<>();
+	/**
+	 * Set once the manager has been closed
 	 */
-	private Connection psDBConnection = null;
+	private boolean closed = false;
 	/**
-	 * SQL Statements pool
+	 * Metrics: connections taken from the pool, and how many of them had to wait
 	 */
-	private ArrayList<MyStatement> statementsPool = new ArrayList<>();
+	private long acquisitions = 0, waits = 0;
 	/**
-	 * SQL Prepared Statements pool
+	 * Metrics: total and longest time waiting for a connection (nanoseconds)
 	 */
-	private ArrayList<MyPreparedStatement> preparedStatementsPool = new ArrayList<>();
+	private long totalWaitTime = 0, maxWaitTime = 0;
+	/**
+	 * Metrics: connections in use now, and the most used at the same time
+	 */
+	private int inUse = 0, peakInUse = 0;
+	/**
+	 * Metrics: connections discarded because they were not valid, and threads
+	 * that gave up waiting for a connection
+	 */
+	private long invalidConnections = 0, timeouts = 0;
 
 	/**
-	 * Initializes resources and creates (opens) the database connection.
+	 * Initializes resources and creates (opens) the first database connection.
 	 * 
 	 * @param host
 	 *            Database server host name
@@ -58,15 +163,330 @@ public class MariaDBConnectionManager implements AutoCloseable {
 	 */
 	public MariaDBConnectionManager(String host, int port, String database, String dbUser, String dbPwd) throws SQLException {
 
+		this.host = host;
+		this.port = port;
+		this.database = database;
+		this.dbUser = dbUser;
+		this.dbPwd = dbPwd;
+
 		// Build the connection string
-		String dbURL = JDBC_PROTOCOL + ":" + MARIADB_DRIVER + "://" + host + ":" + port + "/" + database;
+		this.dbURL = JDBC_PROTOCOL + ":" + MARIADB_DRIVER + "://" + host + ":" + port + "/" + database;
+
+		// Connect to the database manager (so wrong parameters are found now)
+		PooledConnection first = openConnection();
+		connections.add(first);
+		idleConnections.add(first);
+	}
+
+	/**
+	 * Sets the maximum number of connections on the pool.
+	 * 
+	 * @param maxConnections
+	 *            Maximum number of connections (at least one)
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = Math.max(1, maxConnections);
+	}
+
+	/**
+	 * Sets the time to wait for a connection when all of them are in use.
+	 * 
+	 * @param acquireTimeout
+	 *            Timeout in milliseconds
+	 */
+	public void setAcquireTimeout(long acquireTimeout) {
+		this.acquireTimeout = acquireTimeout;
+	}
+
+	/**
+	 * Opens a new connection to the database with its initial pool of
+	 * statements.
+	 * 
+	 * @return The new connection
+	 * @throws SQLException
+	 *             When the connection cannot be opened
+	 */
+	private PooledConnection openConnection() throws SQLException {
+		Connection con = DriverManager.getConnection(dbURL, dbUser, dbPwd);
+		return new PooledConnection(con, INITIAL_STATEMENTS, MAX_IDLE_STATEMENTS_PER_QUERY, MAX_IDLE_STATEMENTS);
+	}
+
+	/**
+	 * Returns the connection of the current thread. If the thread has none, a
+	 * connection is taken from the pool: an idle one (validated if it has been
+	 * idle for a while), or a new one if the pool is not full. Otherwise the
+	 * thread waits for a connection to be released.<br/>
+	 * <br/>
+	 * The lock of the pool is only held to reserve the connection (or the room
+	 * for a new one). Connections are opened and validated without it, so other
+	 * threads are not blocked by the server meanwhile.
+	 * 
+	 * @return The connection of the current thread
+	 * @throws SQLException
+	 *             When the connection cannot be opened, or none has been released
+	 *             before the timeout.
+	 */
+	private PooledConnection bindConnection() throws SQLException {
+
+		PooledConnection pc = threadConnection.get();
+		if (pc != null) {
+			return pc;
+		}
+
+		pc = takeConnection(TimeUnit.MILLISECONDS.toNanos(acquireTimeout), 0);
+		threadConnection.set(pc);
+		return pc;
+	}
+
+	/**
+	 * Takes a connection from the pool (see bindConnection()).
+	 * 
+	 * @param timeout
+	 *            Time to wait for a connection to be released (nanoseconds)
+	 * @param keepFree
+	 *            Number of connections that must be left for other consumers (they
+	 *            are not waited for)
+	 * @return The connection
+	 * @throws SQLException
+	 *             When the connection cannot be opened, there are not enough free
+	 *             connections, or none has been released before the timeout.
+	 */
+	private PooledConnection takeConnection(long timeout, int keepFree) throws SQLException {
+
+		PooledConnection pc;
+		long start = System.nanoTime();
+		long remaining = timeout;
+		boolean waited = false;
+
+		lock.lock();
+		try {
+			while (true) {
+				if (closed) {
+					throw new SQLException("Connection manager is closed");
+				}
+				if (keepFree > 0 && idleConnections.size() + maxConnections - connections.size()
+						- pendingConnections <= keepFree) {
+					throw new SQLTimeoutException("No database connection free (" + maxConnections
+							+ " connections, " + keepFree + " kept for other consumers)");
+				}
+
+				// Idle connections first (the warmest one). It is out of the idle
+				// list, so it is reserved while it is validated.
+				pc = idleConnections.pollLast();
+				if (pc != null) {
+					if (System.nanoTime() - pc.getIdleSince() > VALIDATION_INTERVAL && !validate(pc)) {
+						continue;
+					}
+					break;
+				}
+
+				// Then a new connection, if there is room for it
+				if (connections.size() + pendingConnections < maxConnections) {
+					pc = open();
+					break;
+				}
+
+				// Otherwise, wait for one to be released
+				if (remaining <= 0) {
+					timeouts++;
+					throw new SQLTimeoutException("No database connection available after " + acquireTimeout
+							+ " ms (" + maxConnections + " connections in use)");
+				}
+				waited = true;
+				try {
+					remaining = connectionReleased.awaitNanos(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a database connection", e);
+				}
+			}
+
+			// Metrics
+			long waitTime = System.nanoTime() - start;
+			acquisitions++;
+			if (waited) {
+				waits++;
+			}
+			totalWaitTime += waitTime;
+			maxWaitTime = Math.max(maxWaitTime, waitTime);
+			inUse++;
+			peakInUse = Math.max(peakInUse, inUse);
+		} finally {
+			lock.unlock();
+		}
+
+		return pc;
+	}
+
+	/**
+	 * Validates a connection reserved from the idle ones. Must be called holding
+	 * the lock, which is released while the server answers. Invalid connections
+	 * are closed and removed from the pool, making room for a new one.
+	 * 
+	 * @param pc
+	 *            Connection taken from the idle ones
+	 * @return true if the connection can be used.
+	 * @throws SQLException
+	 *             When the manager has been closed meanwhile
+	 */
+	private boolean validate(PooledConnection pc) throws SQLException {
+
+		boolean valid;
+		lock.unlock();
+		try {
+			valid = pc.isValid(VALIDATION_TIMEOUT);
+		} finally {
+			lock.lock();
+		}
+
+		if (closed) {
+			throw new SQLException("Connection manager is closed");
+		}
+		if (!valid) {
+			connections.remove(pc);
+			invalidConnections++;
+			connectionReleased.signal();
+			lock.unlock();
+			try {
+				pc.close();
+			} finally {
+				lock.lock();
+			}
+		}
+		return valid;
+	}
 
-		// Connect to the database manager
-		psDBConnection = DriverManager.getConnection(dbURL, dbUser, dbPwd);
+	/**
+	 * Opens a new connection on the room reserved for it in the pool. Must be
+	 * called holding the lock, which is released while the connection is opened.
+	 * 
+	 * @return The new connection, already added to the pool
+	 * @throws SQLException
+	 *             When the connection cannot be opened, or the manager has been
+	 *             closed meanwhile
+	 */
+	private PooledConnection open() throws SQLException {
+
+		PooledConnection pc = null;
+		pendingConnections++;
+		lock.unlock();
+		try {
+			pc = openConnection();
+		} finally {
+			lock.lock();
+			pendingConnections--;
+			if (pc == null) {
+				// The room is free again for another thread
+				connectionReleased.signal();
+			}
+		}
+
+		if (closed) {
+			pc.close();
+			throw new SQLException("Connection manager is closed");
+		}
+		connections.add(pc);
+		return pc;
+	}
+
+	/**
+	 * Returns the connection of the current thread to the pool if the thread
+	 * holds no statement of it anymore.
+	 * 
+	 * @param pc
+	 *            Connection of the current thread
+	 */
+	private void unbindConnectionIfIdle(PooledConnection pc) {
+
+		if (!pc.isIdle()) {
+			return;
+		}
+
+		threadConnection.remove();
+		returnConnection(pc);
+	}
+
+	/**
+	 * Returns a connection to the pool. Connections still holding statements are
+	 * closed instead, making room for a new one.
+	 * 
+	 * @param pc
+	 *            Connection taken from the pool
+	 */
+	private void returnConnection(PooledConnection pc) {
+		boolean discard = !pc.isIdle();
+		lock.lock();
+		try {
+			inUse--;
+			if (discard) {
+				connections.remove(pc);
+			} else if (!closed) {
+				pc.setIdle();
+				idleConnections.addLast(pc);
+			}
+			connectionReleased.signal();
+		} finally {
+			lock.unlock();
+		}
+		if (discard) {
+			pc.close();
+		}
+	}
+
+	/**
+	 * Opens a new connection manager to the same database, with its own pool of
+	 * connections (and the same settings). Concurrent consumers can share this
+	 * manager, since each thread uses its own connection; a new manager is only
+	 * needed to keep some connections apart. The caller must close the new
+	 * manager.
+	 * 
+	 * @return A new connection manager
+	 * @throws SQLException
+	 *             When the connection cannot be opened
+	 */
+	public MariaDBConnectionManager newConnection() throws SQLException {
+		MariaDBConnectionManager other = new MariaDBConnectionManager(host, port, database, dbUser, dbPwd);
+		other.setMaxConnections(maxConnections);
+		other.setAcquireTimeout(acquireTimeout);
+		return other;
+	}
 
-		// Create the initial pool of statements
-		for (int i = 0; i < INITIAL_STATEMENTS; i++) {
-			statementsPool.add(new MyStatement(this.psDBConnection));
+	/**
+	 * Returns a second connection to the same database, opened the first time it
+	 * is requested. While a result set is being streamed (see
+	 * acquireStreamingStatement()), the connection of the thread is busy, so its
+	 * other queries must run on the sibling connection (which is a pool as well).
+	 * The sibling is closed together with this manager.
+	 * 
+	 * @return The sibling connection manager
+	 * @throws SQLException
+	 *             When the connection cannot be opened
+	 */
+	public MariaDBConnectionManager getSiblingConnection() throws SQLException {
+		lock.lock();
+		try {
+			if (sibling == null) {
+				sibling = newConnection();
+			}
+			return sibling;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Current date and time on the database server (yyyy-mm-dd hh:mm:ss)
+	 * @throws SQLException
+	 *             When the query fails
+	 */
+	public String getCurrentTimestamp() throws SQLException {
+		MyStatement stmt = acquireStatement();
+		try {
+			ResultSet rs = stmt.executeQuery(CURRENT_TIMESTAMP_QUERY);
+			rs.next();
+			return rs.getString(1);
+		} finally {
+			relaseStatement(stmt);
 		}
 	}
 
@@ -77,69 +497,147 @@ public class MariaDBConnectionManager implements AutoCloseable {
 	 * @return A statement that can be used to execute database calls. Its status is
 	 *         <i>BUSY</i>
 	 * @throws SQLException
-	 *             When an error occurs creating a new statement.
+	 *             When an error occurs creating a new statement, or there is no
+	 *             connection available.
 	 */
 	public MyStatement acquireStatement() throws SQLException {
 
-		int nStatements = statementsPool.size();
-		MyStatement stmt = null;
+		PooledConnection pc = bindConnection();
+		try {
+			return pc.acquireStatement();
+		} catch (SQLException e) {
+			unbindConnectionIfIdle(pc);
+			throw e;
+		}
+	}
 
-		// Try to find an usable statement already allocated in the pool
-		for (int index = 0; index < nStatements; index++) {
-			stmt = statementsPool.get(index);
-			if (stmt.isUsable()) {
-				stmt.setStatus(ResourceStatus.BUSY);
-				return stmt; // This can be used
-			}
+	/**
+	 * Acquires one streaming statement from the pool in order to be used by a
+	 * consumer. Rows of its result sets are fetched from the server while they are
+	 * read, so the client memory does not depend on the size of the result set
+	 * (see MyStatement). While the result set is open, this thread must not
+	 * execute other queries on this manager: use a sibling connection (see
+	 * getSiblingConnection()) for them. If there is no usable statement with the
+	 * same fetch size on the pool, a new statement is created. Release it with
+	 * relaseStatement().
+	 * 
+	 * @param fetchSize
+	 *            Number of rows fetched at a time (must be greater than zero)
+	 * @return A statement that can be used to execute database calls. Its status is
+	 *         <i>BUSY</i>
+	 * @throws SQLException
+	 *             When an error occurs creating a new statement, or there is no
+	 *             connection available.
+	 */
+	public MyStatement acquireStreamingStatement(int fetchSize) throws SQLException {
+
+		PooledConnection pc = bindConnection();
+		try {
+			return pc.acquireStreamingStatement(fetchSize);
+		} catch (SQLException e) {
+			unbindConnectionIfIdle(pc);
+			throw e;
+		}
+	}
+
+	/**
+	 * Acquires one streaming statement (see acquireStreamingStatement()) on a
+	 * connection of the pool taken only for it, for a long scan that is read
+	 * along with other queries. The connection is not bound to the current
+	 * thread, and it counts against the maximum size of the pool until the
+	 * statement is released with relaseDedicatedStatement(). The pool is not
+	 * waited for: if taking the connection would leave no free connection for
+	 * the other consumers, an exception is thrown at once.
+	 * 
+	 * @param fetchSize
+	 *            Number of rows fetched at a time (must be greater than zero)
+	 * @return A statement that can be used to execute database calls. Its status is
+	 *         <i>BUSY</i>
+	 * @throws SQLException
+	 *             When an error occurs creating a new statement, or there is no
+	 *             connection free.
+	 */
+	public MyStatement acquireDedicatedStreamingStatement(int fetchSize) throws SQLException {
+
+		PooledConnection pc = takeConnection(0, 1);
+		MyStatement stmt;
+		try {
+			stmt = pc.acquireStreamingStatement(fetchSize);
+		} catch (SQLException e) {
+			returnConnection(pc);
+			throw e;
 		}
 
-		// If no one is available, create a new statement, add it to the pool
-		stmt = new MyStatement(this.psDBConnection);
-		statementsPool.add(stmt);
+		lock.lock();
+		try {
+			dedicatedConnections.put(stmt, pc);
+		} finally {
+			lock.unlock();
+		}
+		return stmt;
+	}
+
+	/**
+	 * Releases a statement acquired with acquireDedicatedStreamingStatement() and
+	 * returns its connection to the pool. Statements not acquired that way are
+	 * ignored.
+	 * 
+	 * @param stmt
+	 *            Statement to be released.
+	 * @throws SQLException
+	 *             When an error occurs closing the statement.
+	 */
+	public void relaseDedicatedStatement(MyStatement stmt) throws SQLException {
+
+		PooledConnection pc;
+		lock.lock();
+		try {
+			pc = dedicatedConnections.remove(stmt);
+		} finally {
+			lock.unlock();
+		}
+		if (pc == null) {
+			return;
+		}
 
-		stmt.setStatus(ResourceStatus.BUSY);
-		return stmt; // Brand new statement ready to be used.
+		try {
+			pc.relaseStatement(stmt);
+		} finally {
+			returnConnection(pc);
+		}
 	}
 
 	/**
 	 * Acquires one prepared statement from the pool in order to be used by a
-	 * consumer. If all of the statement on the pool are in use, a new statement is
-	 * created. If an existing prepared statement is reused, it must be associated
-	 * with the exact same query.
+	 * consumer. Idle statements are kept by query, so a statement prepared for
+	 * the exact same query is found at once; if there is none, a new statement is
+	 * created.
 	 * 
 	 * @param query
 	 *            Parameterized query associated to this statement
 	 * @return A statement that can be used to execute database calls. Its status is
 	 *         <i>BUSY</i>
 	 * @throws SQLException
-	 *             When an error occurs creating a new statement.
+	 *             When an error occurs creating a new statement, or there is no
+	 *             connection available.
 	 */
 	public MyPreparedStatement acquirePreparedStatement(String query) throws SQLException {
 
-		int nStatements = preparedStatementsPool.size();
-		MyPreparedStatement stmt = null;
-
-		// Try to find an re-usable statement already allocated in the pool
-		for (int index = 0; index < nStatements; index++) {
-			stmt = preparedStatementsPool.get(index);
-			if (stmt.isReusable(query)) {
-				stmt.setStatus(ResourceStatus.BUSY);
-				return stmt; // This can be used
-			}
+		PooledConnection pc = bindConnection();
+		try {
+			return pc.acquirePreparedStatement(query);
+		} catch (SQLException e) {
+			unbindConnectionIfIdle(pc);
+			throw e;
 		}
-
-		// If no one is available, create a new statement, add it to the pool
-		stmt = new MyPreparedStatement(this.psDBConnection, query);
-		preparedStatementsPool.add(stmt);
-
-		stmt.setStatus(ResourceStatus.BUSY);
-		return stmt; // Brand new statement ready to be used.
 	}
 
 	/**
 	 * Call this method when you are done with a statement in order to return it to
 	 * the pool. If the statement is <i>BUSY</i>, it will be closed. After calling
-	 * this method the statement can be recycled.
+	 * this method the statement can be recycled. Statements must be released by
+	 * the thread that acquired them; once a thread has released all of them, its
+	 * connection returns to the pool.
 	 * 
 	 * @param stmt
 	 *            Statement to be released.
@@ -151,17 +649,24 @@ public class MariaDBConnectionManager implements AutoCloseable {
 		if (stmt == null)
 			throw new IllegalArgumentException("statement is null");
 
-		if (stmt.getStatus() == ResourceStatus.BUSY) {
-			stmt.close();
+		// Statements already released (or not acquired by this thread) are ignored
+		PooledConnection pc = threadConnection.get();
+		if (pc == null) {
+			return;
 		}
 
-		stmt.setStatus(ResourceStatus.RECYCLABLE);
+		try {
+			pc.relaseStatement(stmt);
+		} finally {
+			unbindConnectionIfIdle(pc);
+		}
 	}
 
 	/**
 	 * Call this method when you are done with a prepared statement in order to return it to
 	 * the pool. If the statement is <i>BUSY</i>, it will be closed. After calling
-	 * this method the statement can be recycled (for the same query).
+	 * this method the statement can be recycled (for the same query), unless the
+	 * pool already holds too many idle statements and it is closed.
 	 * 
 	 * @param stmt
 	 *            Statement to be released.
@@ -173,11 +678,41 @@ public class MariaDBConnectionManager implements AutoCloseable {
 		if (stmt == null)
 			throw new IllegalArgumentException("prepared statement is null");
 
-		if (stmt.getStatus() == ResourceStatus.BUSY) {
-			stmt.close();
+		relaseStatement(stmt);
+	}
+
+	/**
+	 * @return Usage of the prepared statements pools of all the connections.
+	 */
+	public String getPreparedStatementsStats() {
+		lock.lock();
+		try {
+			StringBuilder stats = new StringBuilder();
+			for (PooledConnection pc : connections) {
+				stats.append((stats.length() > 0) ? "; " : "").append(pc.getPreparedStatementsStats());
+			}
+			return stats.toString();
+		} finally {
+			lock.unlock();
 		}
+	}
 
-		stmt.setStatus(ResourceStatus.RECYCLABLE);
+	/**
+	 * @return Usage of the pool of connections (size, utilization and time spent
+	 *         waiting for a connection).
+	 */
+	public String getPoolStats() {
+		lock.lock();
+		try {
+			return "Connection pool: " + connections.size() + " open (max " + maxConnections + "), " + inUse
+					+ " in use, peak " + peakInUse + " in use, " + acquisitions + " acquisitions, " + waits
+					+ " waited (avg " + String.format("%.3f", (acquisitions > 0) ? totalWaitTime / 1e6 / acquisitions : 0.0)
+					+ " ms, max " + String.format("%.3f", maxWaitTime / 1e6) + " ms), " + timeouts + " timeouts, "
+					+ invalidConnections + " discarded by validation, " + dedicatedConnections.size()
+					+ " dedicated to a statement";
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -185,33 +720,34 @@ public class MariaDBConnectionManager implements AutoCloseable {
 	 */
 	public void close() {
 
-		// Close statements
-		statementsPool.forEach(s -> {
-			try {
-				s.doClose();
-			} catch (SQLException e) {
-				/* Ignore errors */}
-			s.setStatus(ResourceStatus.UNUSED);
-		});
-
-		// Close prepared statements 
-		preparedStatementsPool.forEach(s -> {
-			try {
-				s.doClose();
-			} catch (SQLException e) {
-				/* Ignore errors */}
-			s.setStatus(ResourceStatus.PRESET);
-		});
-
-		// Close database connection
-		if (psDBConnection != null) {
-			try {
-				psDBConnection.close();
-			} catch (SQLException e) {
-				MessageLogger.logUnmanagedException(e);
-			} finally {
-				psDBConnection = null;
-			}
+		// Close the sibling connection
+		MariaDBConnectionManager siblingToClose;
+		lock.lock();
+		try {
+			siblingToClose = sibling;
+			sibling = null;
+		} finally {
+			lock.unlock();
+		}
+		if (siblingToClose != null) {
+			siblingToClose.close();
+		}
+
+		MessageLogger.logMessage(MessageType.INFO, getPoolStats());
+		MessageLogger.logMessage(MessageType.INFO, getPreparedStatementsStats());
+
+		// Close all connections (and their statements). Threads waiting for a
+		// connection are woken up.
+		lock.lock();
+		try {
+			closed = true;
+			connections.forEach(PooledConnection::close);
+			connections.clear();
+			idleConnections.clear();
+			dedicatedConnections.clear();
+			connectionReleased.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
-}
\ No newline at end of file
+}
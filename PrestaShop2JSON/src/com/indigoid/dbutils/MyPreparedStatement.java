@@ -53,6 +53,13 @@ public class MyPreparedStatement extends MyStatement implements PreparedStatemen
 		this.setStatus(ResourceStatus.PRESET);
 	}
 
+	/**
+	 * @return Parameterized query of this statement.
+	 */
+	public String getQuery() {
+		return this.query;
+	}
+
 	/**
 	 * Indicates if a prepared statement can be reused to execute a parameterized
 	 * query. In order to do that, the statement object must be on a non-BUSY state
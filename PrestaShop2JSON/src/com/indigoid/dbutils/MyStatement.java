@@ -35,9 +35,16 @@ public class MyStatement implements Statement {
 	 */
 	private Statement stmt;
 	/**
-	 * Status of the resource wrapped (statement).
+	 * Status of the resource wrapped (statement). Statements are handed over from
+	 * one thread to another by the connection pool, so changes must be visible
+	 * to all of them.
 	 */
-	private ResourceStatus status;
+	private volatile ResourceStatus status;
+	/**
+	 * Number of rows fetched at a time by a streaming statement (0 if the whole
+	 * result set is read at once).
+	 */
+	private int streamingFetchSize = 0;
 
 	/**
 	 * Default constructor
@@ -59,6 +66,30 @@ public class MyStatement implements Statement {
 		this.status = ResourceStatus.UNUSED;
 	}
 
+	/**
+	 * Creates a new streaming statement and set its status to <i>UNUSED</i>. Its
+	 * result sets are forward-only and read-only, and rows are fetched from the
+	 * server a few at a time while they are read, instead of being read all at
+	 * once when the query is executed. While a result set is being streamed, the
+	 * connection cannot be used to execute other queries.
+	 * 
+	 * @param con
+	 *            Database manager connection
+	 * @param fetchSize
+	 *            Number of rows fetched at a time (must be greater than zero)
+	 * @throws SQLException
+	 *             When thrown by the createStatement() method.
+	 */
+	public MyStatement(Connection con, int fetchSize) throws SQLException {
+		if (fetchSize <= 0)
+			throw new IllegalArgumentException("fetch size must be greater than zero");
+
+		this.stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		this.stmt.setFetchSize(fetchSize);
+		this.streamingFetchSize = fetchSize;
+		this.status = ResourceStatus.UNUSED;
+	}
+
 	/**
 	 * @return Current statement status.
 	 */
@@ -89,6 +120,14 @@ public class MyStatement implements Statement {
 		this.stmt = stmt;
 	}
 
+	/**
+	 * @return Number of rows fetched at a time if this is a streaming statement,
+	 *         or 0 otherwise.
+	 */
+	public int getStreamingFetchSize() {
+		return streamingFetchSize;
+	}
+
 	/**
 	 * @return <strong>true</strong> if this instance can be reused.
 	 */
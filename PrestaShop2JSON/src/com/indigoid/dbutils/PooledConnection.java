@@ -0,0 +1,266 @@
+package com.indigoid.dbutils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import com.indigoid.utils.MessageLogger;
+
+/**
+ * One connection of the pool of MariaDBConnectionManager, together with its own
+ * pools of statements. A pooled connection is used by one thread at a time, so
+ * nothing here is synchronized: the manager hands it over from one thread to
+ * another.
+ *
+ * @author Charlie
+ *
+ */
+class PooledConnection {
+
+	/**
+	 * Connection to PrestaShop database
+	 */
+	private Connection connection;
+	/**
+	 * SQL Statements pool
+	 */
+	private ArrayList<MyStatement> statementsPool = new ArrayList<>();
+	/**
+	 * SQL Statements pool for streaming queries
+	 */
+	private ArrayList<MyStatement> streamingStatementsPool = new ArrayList<>();
+	/**
+	 * SQL Prepared Statements pool, keyed by query
+	 */
+	private PreparedStatementCache preparedStatementsPool;
+	/**
+	 * Statements (of any kind) acquired and not yet released. The connection
+	 * returns to the pool when there are none.
+	 */
+	private Set<MyStatement> borrowed = Collections.newSetFromMap(new IdentityHashMap<>());
+	/**
+	 * Time when the connection was returned to the pool (System.nanoTime())
+	 */
+	private long idleSince;
+
+	/**
+	 * Wraps a connection and creates its initial pool of statements.
+	 *
+	 * @param connection
+	 *            Connection to the database
+	 * @param initialStatements
+	 *            Number of statements created up front
+	 * @param maxIdlePerQuery
+	 *            Maximum number of idle prepared statements of the same query
+	 * @param maxIdle
+	 *            Maximum number of idle prepared statements of all the queries
+	 * @throws SQLException
+	 *             When a statement cannot be created
+	 */
+	PooledConnection(Connection connection, int initialStatements, int maxIdlePerQuery, int maxIdle)
+			throws SQLException {
+		this.connection = connection;
+		for (int i = 0; i < initialStatements; i++) {
+			statementsPool.add(new MyStatement(connection));
+		}
+		this.preparedStatementsPool = new PreparedStatementCache(connection, maxIdlePerQuery, maxIdle);
+		this.idleSince = System.nanoTime();
+	}
+
+	/**
+	 * @return The wrapped connection
+	 */
+	Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * @return Time when the connection was returned to the pool
+	 *         (System.nanoTime())
+	 */
+	long getIdleSince() {
+		return idleSince;
+	}
+
+	/**
+	 * Marks the connection as returned to the pool.
+	 */
+	void setIdle() {
+		this.idleSince = System.nanoTime();
+	}
+
+	/**
+	 * @return true if no statement of this connection is in use.
+	 */
+	boolean isIdle() {
+		return borrowed.isEmpty();
+	}
+
+	/**
+	 * Acquires a statement (see MariaDBConnectionManager.acquireStatement()).
+	 *
+	 * @return A statement on <i>BUSY</i> status
+	 * @throws SQLException
+	 *             When an error occurs creating a new statement.
+	 */
+	MyStatement acquireStatement() throws SQLException {
+
+		MyStatement stmt = null;
+
+		// Try to find an usable statement already allocated in the pool
+		for (MyStatement candidate : statementsPool) {
+			if (candidate.isUsable()) {
+				stmt = candidate;
+				break;
+			}
+		}
+
+		// If no one is available, create a new statement, add it to the pool
+		if (stmt == null) {
+			stmt = new MyStatement(this.connection);
+			statementsPool.add(stmt);
+		}
+
+		stmt.setStatus(ResourceStatus.BUSY);
+		borrowed.add(stmt);
+		return stmt;
+	}
+
+	/**
+	 * Acquires a streaming statement (see
+	 * MariaDBConnectionManager.acquireStreamingStatement()).
+	 *
+	 * @param fetchSize
+	 *            Number of rows fetched at a time (must be greater than zero)
+	 * @return A statement on <i>BUSY</i> status
+	 * @throws SQLException
+	 *             When an error occurs creating a new statement.
+	 */
+	MyStatement acquireStreamingStatement(int fetchSize) throws SQLException {
+
+		MyStatement stmt = null;
+
+		// Try to find an usable statement already allocated in the pool
+		for (MyStatement candidate : streamingStatementsPool) {
+			if (candidate.isUsable() && candidate.getStreamingFetchSize() == fetchSize) {
+				stmt = candidate;
+				break;
+			}
+		}
+
+		// If no one is available, create a new statement, add it to the pool
+		if (stmt == null) {
+			stmt = new MyStatement(this.connection, fetchSize);
+			streamingStatementsPool.add(stmt);
+		}
+
+		stmt.setStatus(ResourceStatus.BUSY);
+		borrowed.add(stmt);
+		return stmt;
+	}
+
+	/**
+	 * Acquires a prepared statement (see
+	 * MariaDBConnectionManager.acquirePreparedStatement()).
+	 *
+	 * @param query
+	 *            Parameterized query associated to this statement
+	 * @return A statement on <i>BUSY</i> status
+	 * @throws SQLException
+	 *             When an error occurs creating a new statement.
+	 */
+	MyPreparedStatement acquirePreparedStatement(String query) throws SQLException {
+
+		MyPreparedStatement stmt = preparedStatementsPool.acquire(query);
+
+		stmt.setStatus(ResourceStatus.BUSY);
+		borrowed.add(stmt);
+		return stmt;
+	}
+
+	/**
+	 * Releases a statement (see MariaDBConnectionManager.relaseStatement()).
+	 *
+	 * @param stmt
+	 *            Statement to be released
+	 * @return true if the statement belonged to this connection.
+	 * @throws SQLException
+	 *             When an error occurs closing the statement.
+	 */
+	boolean relaseStatement(MyStatement stmt) throws SQLException {
+
+		if (!borrowed.remove(stmt)) {
+			return false;
+		}
+
+		if (stmt.getStatus() == ResourceStatus.BUSY) {
+			stmt.close();
+		}
+
+		stmt.setStatus(ResourceStatus.RECYCLABLE);
+		if (stmt instanceof MyPreparedStatement) {
+			preparedStatementsPool.release((MyPreparedStatement) stmt);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the connection with the server.
+	 *
+	 * @param timeout
+	 *            Seconds to wait for the server
+	 * @return true if the connection is still usable.
+	 */
+	boolean isValid(int timeout) {
+		try {
+			return connection.isValid(timeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return Usage of the prepared statements pool
+	 */
+	String getPreparedStatementsStats() {
+		return preparedStatementsPool.toString();
+	}
+
+	/**
+	 * Close all resources opened against the database.
+	 */
+	void close() {
+
+		// Close statements
+		statementsPool.forEach(s -> {
+			try {
+				s.doClose();
+			} catch (SQLException e) {
+				/* Ignore errors */}
+			s.setStatus(ResourceStatus.UNUSED);
+		});
+
+		// Close streaming statements
+		streamingStatementsPool.forEach(s -> {
+			try {
+				s.doClose();
+			} catch (SQLException e) {
+				/* Ignore errors */}
+			s.setStatus(ResourceStatus.UNUSED);
+		});
+
+		// Close prepared statements
+		preparedStatementsPool.close();
+		borrowed.clear();
+
+		// Close database connection
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			MessageLogger.logUnmanagedException(e);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.indigoid.dbutils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Cache of the prepared statements of a connection, keyed by their query. Each
+ * query has a small free list of idle statements, so finding a statement for a
+ * query costs a hash lookup no matter how many queries are cached. Queries are
+ * kept in LRU order: when there are too many idle statements, those of the
+ * least recently used query are closed.<br/>
+ * <br/>
+ * Statements are taken with acquire() and given back with release(). Keys are
+ * the query strings, whose hash code is computed once per string (queries are
+ * constants of the loaders), so lookups do not compare long SQL texts but in
+ * the rare case of a hash collision.
+ *
+ * @author Charlie
+ *
+ */
+public class PreparedStatementCache {
+
+	/**
+	 * Connection on which the statements are prepared.
+	 */
+	private Connection con;
+	/**
+	 * Maximum number of idle statements of the same query.
+	 */
+	private int maxPerQuery;
+	/**
+	 * Maximum number of idle statements of all the queries.
+	 */
+	private int maxIdle;
+	/**
+	 * Idle statements of each query, from the least to the most recently used
+	 * query.
+	 */
+	private LinkedHashMap<String, ArrayDeque<MyPreparedStatement>> idle = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Statements acquired and not yet released.
+	 */
+	private Set<MyPreparedStatement> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+	/**
+	 * Number of idle statements of all the queries.
+	 */
+	private int nIdle = 0;
+	/**
+	 * Number of statements found idle on the cache
+	 */
+	private long hits = 0;
+	/**
+	 * Number of statements not found idle on the cache
+	 */
+	private long misses = 0;
+	/**
+	 * Number of statements prepared
+	 */
+	private long creations = 0;
+	/**
+	 * Number of statements closed to keep the cache within its limits
+	 */
+	private long evictions = 0;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param con
+	 *            Connection on which the statements are prepared
+	 * @param maxPerQuery
+	 *            Maximum number of idle statements of the same query
+	 * @param maxIdle
+	 *            Maximum number of idle statements of all the queries
+	 */
+	public PreparedStatementCache(Connection con, int maxPerQuery, int maxIdle) {
+		this.con = con;
+		this.maxPerQuery = maxPerQuery;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Takes an idle statement of a query, or prepares a new one if there is none.
+	 *
+	 * @param query
+	 *            Parameterized query of the statement
+	 * @return A statement of the query. It must be given back with release().
+	 * @throws SQLException
+	 *             When the statement cannot be prepared.
+	 */
+	public MyPreparedStatement acquire(String query) throws SQLException {
+
+		MyPreparedStatement stmt = null;
+		ArrayDeque<MyPreparedStatement> free = idle.get(query);
+		if (free != null) {
+			stmt = free.pollLast();
+		}
+
+		if (stmt != null) {
+			hits++;
+			nIdle--;
+		} else {
+			misses++;
+			creations++;
+			stmt = new MyPreparedStatement(con, query);
+		}
+
+		inUse.add(stmt);
+		return stmt;
+	}
+
+	/**
+	 * Gives back a statement taken with acquire(). If the free list of its query
+	 * is full the statement is closed; otherwise it is kept, and the statements of
+	 * the least recently used queries are closed if there are too many idle
+	 * statements. Statements not acquired from this cache (or already released)
+	 * are ignored.
+	 *
+	 * @param stmt
+	 *            Statement to be given back.
+	 */
+	public void release(MyPreparedStatement stmt) {
+
+		if (!inUse.remove(stmt)) {
+			return;
+		}
+
+		ArrayDeque<MyPreparedStatement> free = idle.computeIfAbsent(stmt.getQuery(), q -> new ArrayDeque<>());
+		if (free.size() >= maxPerQuery) {
+			evict(stmt);
+			return;
+		}
+		free.addLast(stmt);
+		nIdle++;
+
+		// Least recently used queries go first (the one just used is the last)
+		Iterator<ArrayDeque<MyPreparedStatement>> lru = idle.values().iterator();
+		while (nIdle > maxIdle && lru.hasNext()) {
+			ArrayDeque<MyPreparedStatement> oldest = lru.next();
+			while (nIdle > maxIdle && !oldest.isEmpty()) {
+				evict(oldest.pollFirst());
+				nIdle--;
+			}
+			if (oldest.isEmpty()) {
+				lru.remove();
+			}
+		}
+	}
+
+	/**
+	 * Closes a statement that is not kept on the cache.
+	 *
+	 * @param stmt
+	 *            Statement to be closed.
+	 */
+	private void evict(MyPreparedStatement stmt) {
+		evictions++;
+		try {
+			stmt.doClose();
+		} catch (SQLException e) {
+			/* Ignore errors */ }
+		stmt.setStatus(ResourceStatus.UNUSED);
+	}
+
+	/**
+	 * Closes all the statements, idle or in use.
+	 */
+	public void close() {
+		idle.values().forEach(free -> free.forEach(s -> {
+			try {
+				s.doClose();
+			} catch (SQLException e) {
+				/* Ignore errors */ }
+			s.setStatus(ResourceStatus.PRESET);
+		}));
+		inUse.forEach(s -> {
+			try {
+				s.doClose();
+			} catch (SQLException e) {
+				/* Ignore errors */ }
+			s.setStatus(ResourceStatus.PRESET);
+		});
+		idle.clear();
+		inUse.clear();
+		nIdle = 0;
+	}
+
+	/**
+	 * @return Number of statements found idle on the cache
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return Number of statements not found idle on the cache
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return Number of statements prepared
+	 */
+	public long getCreations() {
+		return creations;
+	}
+
+	/**
+	 * @return Number of statements closed to keep the cache within its limits
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "Prepared statements: " + idle.size() + " queries, " + nIdle + " idle, " + inUse.size() + " in use, "
+				+ hits + " hits, " + misses + " misses, " + creations + " created, " + evictions + " evicted";
+	}
+}
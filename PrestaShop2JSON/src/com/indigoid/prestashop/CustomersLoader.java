@@ -47,7 +47,7 @@ public class CustomersLoader extends PrstshpLoader {
 	private static final String GET_CUSTOMER_ADDRESSES_QUERY = "SELECT id_address, id_country, id_state, id_customer, "
 			+ "id_manufacturer, id_supplier, id_warehouse, alias, company, lastname, firstname, address1, "
 			+ "address2, postcode, city, other, phone, phone_mobile, vat_number, dni, date_add, date_upd, "
-			+ "active, deleted " + "FROM prstshp_address WHERE id_customer = ?";
+			+ "active, deleted " + "FROM prstshp_address WHERE id_customer = ? " + "ORDER BY id_address";
 	/**
 	 * Statement used to retrieve the group names assigned to a user (in all
 	 * languages)
@@ -58,6 +58,21 @@ public class CustomersLoader extends PrstshpLoader {
 			+ "INNER JOIN prstshp_lang AS t3 ON t2.id_lang = t3.id_lang " 
 			+ "WHERE t1.id_customer = ? AND t2.id_lang = (SELECT t4.id_default_group FROM prstshp_customer AS t4 WHERE t4.id_customer = t1.id_customer) " 
 			+ "ORDER BY t1.id_group";
+	/**
+	 * Block versions of the child selector queries (see batchQuery()).
+	 */
+	private static final String GET_CUSTOMER_ADDRESSES_BATCH_QUERY = batchQuery(GET_CUSTOMER_ADDRESSES_QUERY,
+			"id_customer");
+	private static final String GET_CUSTOMERS_GROUPS_BATCH_QUERY = batchQuery(GET_CUSTOMERS_GROUPS_QUERY,
+			"t1.id_customer");
+
+	/**
+	 * Condition for the customers changed since a given time (incremental loads).
+	 * Changes on the customer addresses are also taken into account.
+	 */
+	private static final String CHANGED_CUSTOMERS_CONDITION = "t1.date_upd >= " + CHANGED_SINCE_PLACEHOLDER + " "
+			+ "OR t1.id_customer IN (SELECT id_customer FROM prstshp_address WHERE date_upd >= " + CHANGED_SINCE_PLACEHOLDER + ")";
+
 	/**
 	 * Creates a loader for all customers.
 	 */
@@ -87,10 +102,15 @@ public class CustomersLoader extends PrstshpLoader {
 	public int load(com.indigoid.dbutils.MariaDBConnectionManager con, String shopName) {
 		// These are the selectors for child elements
 		DataSelector[][] childSelectors = {	
-				{new DataSelector(CUSTOMERS_KEY_COLUMN, ADDRESSES_PROPERTY, GET_CUSTOMER_ADDRESSES_QUERY, true)},
-				{new DataSelector(CUSTOMERS_KEY_COLUMN, GROUPS_PROPERTY, GET_CUSTOMERS_GROUPS_QUERY, true)}
+				{new DataSelector(CUSTOMERS_KEY_COLUMN, ADDRESSES_PROPERTY, GET_CUSTOMER_ADDRESSES_QUERY, true, GET_CUSTOMER_ADDRESSES_BATCH_QUERY)},
+				{new DataSelector(CUSTOMERS_KEY_COLUMN, GROUPS_PROPERTY, GET_CUSTOMERS_GROUPS_QUERY, true, GET_CUSTOMERS_GROUPS_BATCH_QUERY)}
 		};
 		 
 		return loadMainLevel(con, shopName, new DataSelector(CUSTOMERS_KEY_COLUMN, CUSTOMERS_DOC_TYPE, GET_CUSTOMERS_QUERY, false), childSelectors);
 	}
+
+	@Override
+	protected String getChangedCondition() {
+		return CHANGED_CUSTOMERS_CONDITION;
+	}
 }
\ No newline at end of file
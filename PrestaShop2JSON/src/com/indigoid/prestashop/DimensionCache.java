@@ -0,0 +1,152 @@
+package com.indigoid.prestashop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+/**
+ * Read-through cache for the elements of a small and stable table (a
+ * dimension, like employees) that are embedded on many documents. The whole
+ * table is preloaded once and the elements are then taken from memory instead
+ * of being queried again for each document. Elements not found (i.e. added
+ * after the preload) are retrieved by a loader function and kept.<br/>
+ * <br/>
+ * Elements are kept as JSON at indentation level zero, like any other child
+ * element (JSONWriter.appendObject() indents them when they are embedded).
+ * Instances can be shared by several threads.
+ *
+ * @author Charlie
+ *
+ */
+public class DimensionCache {
+
+	/**
+	 * Name of the dimension (used on log messages)
+	 */
+	private String name;
+	/**
+	 * Query without parameters returning the key of each element (first column)
+	 * and then the columns of the element.
+	 */
+	private String preloadQuery;
+	/**
+	 * JSON representation of the elements of each key (level zero).
+	 */
+	private ConcurrentHashMap<Integer, List<String>> elements = new ConcurrentHashMap<>();
+	/**
+	 * Number of lookups solved from memory
+	 */
+	private AtomicLong hits = new AtomicLong(0);
+	/**
+	 * Number of lookups that needed a query
+	 */
+	private AtomicLong misses = new AtomicLong(0);
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param name
+	 *            Name of the dimension
+	 * @param preloadQuery
+	 *            Query retrieving the whole dimension (see
+	 *            PrstshpLoader.dimensionQuery())
+	 */
+	public DimensionCache(String name, String preloadQuery) {
+		this.name = name;
+		this.preloadQuery = preloadQuery;
+	}
+
+	/**
+	 * @return Name of the dimension
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return Query retrieving the whole dimension
+	 */
+	public String getPreloadQuery() {
+		return this.preloadQuery;
+	}
+
+	/**
+	 * Adds one element of a key while preloading the dimension.
+	 *
+	 * @param id
+	 *            Key of the element
+	 * @param json
+	 *            JSON representation of the element (level zero)
+	 */
+	public void add(int id, String json) {
+		elements.computeIfAbsent(id, k -> new ArrayList<>()).add(json);
+	}
+
+	/**
+	 * Discards all the elements (i.e. when the preload fails half way and some
+	 * keys might be incomplete).
+	 */
+	public void clear() {
+		elements.clear();
+	}
+
+	/**
+	 * Retrieves the elements of a key. If they are not in memory, they are
+	 * loaded and kept, unless the load has failed.
+	 *
+	 * @param id
+	 *            Key of the elements
+	 * @param loader
+	 *            Function loading the elements of a key (level zero) when they
+	 *            are not in memory
+	 * @param loaded
+	 *            Tells, once the loader function has returned, if the elements
+	 *            are complete and can be kept
+	 * @return The JSON representation of the elements (might be empty). The list
+	 *         is shared and must not be modified.
+	 */
+	public List<String> get(int id, IntFunction<List<String>> loader, BooleanSupplier loaded) {
+
+		List<String> cached = elements.get(id);
+		if (cached != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			cached = loader.apply(id);
+			if (loaded.getAsBoolean()) {
+				elements.putIfAbsent(id, cached);
+			}
+		}
+
+		return cached;
+	}
+
+	/**
+	 * @return Number of keys in memory
+	 */
+	public int size() {
+		return elements.size();
+	}
+
+	/**
+	 * @return Number of lookups solved from memory
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Number of lookups that needed a query
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return name + " cache: " + size() + " keys, " + getHits() + " hits, " + getMisses() + " misses";
+	}
+}
@@ -0,0 +1,135 @@
+package com.indigoid.prestashop;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of rendered JSON fragments: the child elements retrieved by a
+ * selector for a given id. Sub-trees that appear on many documents (like the
+ * customer of an order, or the attributes of a product combination) are then
+ * serialized once and copied afterwards. When the cache is full, the least
+ * recently used fragments are evicted.<br/>
+ * <br/>
+ * Fragments are kept at indentation level zero (see JSONWriter.appendObject()).
+ * The same cache can be shared by several loaders and threads.
+ *
+ * @author Charlie
+ *
+ */
+public class FragmentCache {
+
+	/**
+	 * Maximum number of fragments kept.
+	 */
+	private int maxSize;
+	/**
+	 * Each query has its own number, used as the high part of the keys.
+	 */
+	private HashMap<String, Integer> queries = new HashMap<>();
+	/**
+	 * Fragments in access order (least recently used first).
+	 */
+	private LinkedHashMap<Long, List<String>> fragments;
+	/**
+	 * Number of fragments found in the cache
+	 */
+	private long hits = 0;
+	/**
+	 * Number of fragments not found in the cache
+	 */
+	private long misses = 0;
+	/**
+	 * Number of fragments evicted to make room for new ones
+	 */
+	private long evictions = 0;
+	/**
+	 * Number of characters of the fragments found in the cache
+	 */
+	private long savedChars = 0;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param maxSize
+	 *            Maximum number of fragments kept
+	 */
+	public FragmentCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.fragments = new LinkedHashMap<Long, List<String>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, List<String>> eldest) {
+				if (size() > FragmentCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Builds the key of a fragment.
+	 *
+	 * @param query
+	 *            Query of the selector retrieving the fragment
+	 * @param id
+	 *            Parent id used to run the query
+	 * @return The key of the fragment.
+	 */
+	private long key(String query, int id) {
+		Integer queryNumber = queries.get(query);
+		if (queryNumber == null) {
+			queryNumber = queries.size();
+			queries.put(query, queryNumber);
+		}
+		return ((long) queryNumber << 32) | (id & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Looks for a fragment.
+	 *
+	 * @param query
+	 *            Query of the selector retrieving the fragment
+	 * @param id
+	 *            Parent id used to run the query
+	 * @return The elements of the fragment (level zero), or null if it is not in
+	 *         the cache.
+	 */
+	public synchronized List<String> get(String query, int id) {
+		List<String> fragment = fragments.get(key(query, id));
+		if (fragment != null) {
+			hits++;
+			for (String json : fragment) {
+				savedChars += json.length();
+			}
+		} else {
+			misses++;
+		}
+		return fragment;
+	}
+
+	/**
+	 * Adds a fragment. The least recently used fragment is evicted if the cache
+	 * is full.
+	 *
+	 * @param query
+	 *            Query of the selector retrieving the fragment
+	 * @param id
+	 *            Parent id used to run the query
+	 * @param fragment
+	 *            The elements of the fragment (level zero)
+	 */
+	public synchronized void put(String query, int id, List<String> fragment) {
+		fragments.put(key(query, id), fragment);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Fragment cache: " + fragments.size() + " fragments, " + hits + " hits, " + misses + " misses, "
+				+ evictions + " evictions, " + savedChars + " characters not rendered again";
+	}
+}
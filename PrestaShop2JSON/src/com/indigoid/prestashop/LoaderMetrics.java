@@ -0,0 +1,590 @@
+package com.indigoid.prestashop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.indigoid.utils.DocumentSink;
+import com.indigoid.utils.JSONWriter;
+import com.indigoid.utils.LatencyHistogram;
+
+/**
+ * Where the time of a load goes. Each selector keeps the number of queries it
+ * has run, the time they took (until their result sets were ready) on a
+ * latency histogram, the rows they returned and the size of the JSON rendered
+ * from them (including their sub-levels). The load as a whole keeps the number
+ * of documents, their size and the elapsed time, to get its rates. Pipelined
+ * loads add the metrics of each stage, whose queue depths and waits show the
+ * bottleneck.<br/>
+ * <br/>
+ * Selectors are identified by their query, as the caches do, and named by
+ * their path from the main level ("order.details.taxes"). Sizes are measured
+ * in characters of JSON text. Metrics can be updated by several threads.
+ *
+ * @author Charlie
+ *
+ */
+public class LoaderMetrics {
+
+	/**
+	 * Characters on a megabyte (for the rates).
+	 */
+	private static final double MB = 1024.0 * 1024.0;
+	/**
+	 * Nanoseconds on a millisecond.
+	 */
+	private static final double NANOS_PER_MILLI = 1e6;
+	/**
+	 * Percentiles of the latencies on the summary and the metrics file.
+	 */
+	private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+	/**
+	 * Names of the percentiles on the metrics file.
+	 */
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+	/**
+	 * Layout of the lines of the summary table.
+	 */
+	private static final String TABLE_FORMAT = "%-40s %8s %10s %9s %9s %9s %9s %9s %9s";
+
+	/**
+	 * Metrics of the queries of one selector.
+	 */
+	public static class SelectorMetrics {
+
+		/**
+		 * Path of the selector from the main level.
+		 */
+		private String name;
+		/**
+		 * Position of the selector on the summary.
+		 */
+		private int order;
+		/**
+		 * Time taken by each query (nanoseconds).
+		 */
+		private LatencyHistogram latency = new LatencyHistogram();
+		/**
+		 * Number of rows returned.
+		 */
+		private LongAdder rows = new LongAdder();
+		/**
+		 * Characters of JSON rendered.
+		 */
+		private LongAdder chars = new LongAdder();
+
+		/**
+		 * @param name
+		 *            Path of the selector from the main level
+		 * @param order
+		 *            Position of the selector on the summary
+		 */
+		private SelectorMetrics(String name, int order) {
+			this.name = name;
+			this.order = order;
+		}
+
+		/**
+		 * Counts one query.
+		 *
+		 * @param nanos
+		 *            Time taken until the result set was ready
+		 */
+		public void addQuery(long nanos) {
+			latency.record(nanos);
+		}
+
+		/**
+		 * Counts the rows of a query and the JSON rendered from them.
+		 *
+		 * @param nRows
+		 *            Number of rows
+		 * @param nChars
+		 *            Characters of JSON
+		 */
+		public void addRows(long nRows, long nChars) {
+			rows.add(nRows);
+			chars.add(nChars);
+		}
+
+		/**
+		 * @return Path of the selector from the main level.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Number of queries.
+		 */
+		public long getQueries() {
+			return latency.getCount();
+		}
+
+		/**
+		 * @return Time taken by all the queries (nanoseconds).
+		 */
+		public long getDatabaseNanos() {
+			return latency.getSum();
+		}
+
+		/**
+		 * @return Time taken by each query (nanoseconds).
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return Number of rows returned.
+		 */
+		public long getRows() {
+			return rows.sum();
+		}
+
+		/**
+		 * @return Characters of JSON rendered.
+		 */
+		public long getChars() {
+			return chars.sum();
+		}
+	}
+
+	/**
+	 * Metrics of one stage of a pipeline: the items it has processed, the time it
+	 * has been busy and waiting on its queues, and how full its input queue was
+	 * each time an item was added.
+	 */
+	public static class StageMetrics {
+
+		/**
+		 * Name of the stage.
+		 */
+		private String name;
+		/**
+		 * Capacity of the input queue (zero if there is none).
+		 */
+		private int capacity;
+		/**
+		 * Number of items processed.
+		 */
+		private LongAdder items = new LongAdder();
+		/**
+		 * Time spent processing items (nanoseconds).
+		 */
+		private LongAdder busyNanos = new LongAdder();
+		/**
+		 * Time spent waiting on the queues (nanoseconds).
+		 */
+		private LongAdder waitNanos = new LongAdder();
+		/**
+		 * Number of samples of the depth of the input queue.
+		 */
+		private LongAdder depthSamples = new LongAdder();
+		/**
+		 * Sum of the samples of the depth of the input queue.
+		 */
+		private LongAdder depthSum = new LongAdder();
+		/**
+		 * Highest depth of the input queue.
+		 */
+		private AtomicInteger maxDepth = new AtomicInteger(0);
+
+		/**
+		 * @param name
+		 *            Name of the stage
+		 * @param capacity
+		 *            Capacity of the input queue (zero if there is none)
+		 */
+		private StageMetrics(String name, int capacity) {
+			this.name = name;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Counts one item processed.
+		 *
+		 * @param nanos
+		 *            Time spent processing it
+		 */
+		public void addItem(long nanos) {
+			items.increment();
+			busyNanos.add(nanos);
+		}
+
+		/**
+		 * Counts the time spent waiting on a queue.
+		 *
+		 * @param nanos
+		 *            Time spent waiting
+		 */
+		public void addWait(long nanos) {
+			waitNanos.add(nanos);
+		}
+
+		/**
+		 * Samples the depth of the input queue.
+		 *
+		 * @param depth
+		 *            Number of items on the queue
+		 */
+		public void sampleDepth(int depth) {
+			depthSamples.increment();
+			depthSum.add(depth);
+			maxDepth.accumulateAndGet(depth, Math::max);
+		}
+
+		/**
+		 * @return Name of the stage.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Number of items processed.
+		 */
+		public long getItems() {
+			return items.sum();
+		}
+
+		/**
+		 * @return Time spent processing items (nanoseconds).
+		 */
+		public long getBusyNanos() {
+			return busyNanos.sum();
+		}
+
+		/**
+		 * @return Time spent waiting on the queues (nanoseconds).
+		 */
+		public long getWaitNanos() {
+			return waitNanos.sum();
+		}
+
+		/**
+		 * @return Average depth of the input queue.
+		 */
+		public double getAverageDepth() {
+			long n = depthSamples.sum();
+			return (n == 0) ? 0.0 : (double) depthSum.sum() / n;
+		}
+
+		/**
+		 * @return Highest depth of the input queue.
+		 */
+		public int getMaxDepth() {
+			return maxDepth.get();
+		}
+
+		/**
+		 * @return Capacity of the input queue (zero if there is none).
+		 */
+		public int getCapacity() {
+			return capacity;
+		}
+	}
+
+	/**
+	 * Metrics of each selector, by query.
+	 */
+	private ConcurrentHashMap<String, SelectorMetrics> selectors = new ConcurrentHashMap<>();
+	/**
+	 * Position of the next selector on the summary.
+	 */
+	private AtomicInteger nextOrder = new AtomicInteger(0);
+	/**
+	 * Metrics of the stages of the pipeline, in order (empty if the load is not
+	 * pipelined).
+	 */
+	private List<StageMetrics> stages = new ArrayList<>();
+	/**
+	 * Name of the documents (attribute of the main selector).
+	 */
+	private String entity = "";
+	/**
+	 * Number of documents stored.
+	 */
+	private LongAdder documents = new LongAdder();
+	/**
+	 * Characters of the documents stored.
+	 */
+	private LongAdder documentChars = new LongAdder();
+	/**
+	 * Time when the load started (System.nanoTime()).
+	 */
+	private long startNanos = 0;
+	/**
+	 * Time when the load ended (System.nanoTime()).
+	 */
+	private long endNanos = 0;
+	/**
+	 * Set while the load is being measured.
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * Starts measuring a load.
+	 *
+	 * @param entity
+	 *            Name of the documents
+	 */
+	public void start(String entity) {
+		this.entity = entity;
+		this.startNanos = System.nanoTime();
+		this.endNanos = startNanos;
+		this.running = true;
+	}
+
+	/**
+	 * Stops measuring the load.
+	 */
+	public void stop() {
+		this.endNanos = System.nanoTime();
+		this.running = false;
+	}
+
+	/**
+	 * Names a selector. Selectors are named before the load, so they appear on the
+	 * summary in the order of the levels. A selector already named keeps its
+	 * name.
+	 *
+	 * @param query
+	 *            Query of the selector
+	 * @param name
+	 *            Path of the selector from the main level
+	 * @return The metrics of the selector.
+	 */
+	public SelectorMetrics register(String query, String name) {
+		return selectors.computeIfAbsent(query, q -> new SelectorMetrics(name, nextOrder.getAndIncrement()));
+	}
+
+	/**
+	 * @param query
+	 *            Query of the selector
+	 * @return The metrics of the selector (named by its query if it was not
+	 *         named before).
+	 */
+	public SelectorMetrics get(String query) {
+		SelectorMetrics metrics = selectors.get(query);
+		return (metrics != null) ? metrics : register(query, query);
+	}
+
+	/**
+	 * Adds a stage of the pipeline of the load.
+	 *
+	 * @param name
+	 *            Name of the stage
+	 * @param capacity
+	 *            Capacity of its input queue (zero if there is none)
+	 * @return The metrics of the stage.
+	 */
+	public synchronized StageMetrics addStage(String name, int capacity) {
+		StageMetrics stage = new StageMetrics(name, capacity);
+		stages.add(stage);
+		return stage;
+	}
+
+	/**
+	 * @return Metrics of the stages of the pipeline, in order.
+	 */
+	public synchronized List<StageMetrics> getStages() {
+		return new ArrayList<>(stages);
+	}
+
+	/**
+	 * Wraps the sink of a load, so the documents stored are counted as documents
+	 * of the load and as JSON of the main selector.
+	 *
+	 * @param target
+	 *            Where the documents are stored
+	 * @param main
+	 *            Metrics of the main selector
+	 * @return The sink counting the documents.
+	 */
+	DocumentSink meter(DocumentSink target, SelectorMetrics main) {
+		return new DocumentSink() {
+			@Override
+			public void write(int id, String document) throws IOException {
+				target.write(id, document);
+				documents.increment();
+				documentChars.add(document.length());
+				main.addRows(0, document.length());
+			}
+
+			@Override
+			public int getDocumentCount() {
+				return target.getDocumentCount();
+			}
+
+			@Override
+			public void close() throws IOException {
+				target.close();
+			}
+		};
+	}
+
+	/**
+	 * @return Number of documents stored.
+	 */
+	public long getDocuments() {
+		return documents.sum();
+	}
+
+	/**
+	 * @return Characters of the documents stored.
+	 */
+	public long getDocumentChars() {
+		return documentChars.sum();
+	}
+
+	/**
+	 * @return Time taken by the load (nanoseconds), so far if it is still
+	 *         running.
+	 */
+	public long getElapsedNanos() {
+		return (running ? System.nanoTime() : endNanos) - startNanos;
+	}
+
+	/**
+	 * @return Documents stored per second.
+	 */
+	public double getDocumentsPerSecond() {
+		return getDocuments() / getElapsedSeconds();
+	}
+
+	/**
+	 * @return Megabytes (characters) of JSON stored per second.
+	 */
+	public double getMBPerSecond() {
+		return getDocumentChars() / MB / getElapsedSeconds();
+	}
+
+	/**
+	 * @return Time taken by the load (seconds, never zero).
+	 */
+	private double getElapsedSeconds() {
+		return Math.max(getElapsedNanos(), 1) / 1e9;
+	}
+
+	/**
+	 * @return Metrics of the selectors, in the order they were named.
+	 */
+	public List<SelectorMetrics> getSelectors() {
+		List<SelectorMetrics> sorted = new ArrayList<>(selectors.values());
+		sorted.sort(Comparator.comparingInt(m -> m.order));
+		return sorted;
+	}
+
+	/**
+	 * Builds the summary of the load: the rates of the load, and then a table with
+	 * a line per selector (times in milliseconds).
+	 *
+	 * @return The lines of the summary.
+	 */
+	public List<String> getSummary() {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("Metrics of %s: %d documents in %.1f s (%.1f documents/s, %.2f MB/s of JSON)", entity,
+				getDocuments(), getElapsedSeconds(), getDocumentsPerSecond(), getMBPerSecond()));
+		lines.add(String.format(TABLE_FORMAT, "Selector", "Queries", "DB ms", "Rows", "JSON MB", "p50 ms", "p90 ms",
+				"p99 ms", "Max ms"));
+		for (SelectorMetrics selector : getSelectors()) {
+			LatencyHistogram latency = selector.getLatency();
+			lines.add(String.format(TABLE_FORMAT, selector.getName(), selector.getQueries(),
+					millis(selector.getDatabaseNanos()), selector.getRows(),
+					String.format("%.2f", selector.getChars() / MB), millis(latency.getValueAtPercentile(50.0)),
+					millis(latency.getValueAtPercentile(90.0)), millis(latency.getValueAtPercentile(99.0)),
+					millis(latency.getMax())));
+		}
+
+		// A stage always waiting for its input follows the bottleneck; one whose
+		// queue is always full is the bottleneck
+		for (StageMetrics stage : getStages()) {
+			lines.add(String.format("Stage %s: %d blocks, busy %.1f s, waiting %.1f s", stage.getName(),
+					stage.getItems(), stage.getBusyNanos() / 1e9, stage.getWaitNanos() / 1e9)
+					+ ((stage.getCapacity() == 0) ? ""
+							: String.format(", queue depth %.1f average, %d max (of %d)", stage.getAverageDepth(),
+									stage.getMaxDepth(), stage.getCapacity())));
+		}
+		return lines;
+	}
+
+	/**
+	 * Formats a time in milliseconds.
+	 *
+	 * @param nanos
+	 *            Time in nanoseconds
+	 * @return The time in milliseconds, with two decimals (decimal point, as
+	 *         JSON numbers).
+	 */
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.2f", nanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Writes the metrics as a JSON object, for tools reading them. Times are in
+	 * milliseconds and sizes in characters.
+	 *
+	 * @param fileName
+	 *            Name of the file
+	 * @throws IOException
+	 *             When the file cannot be written
+	 */
+	public void writeJSON(String fileName) throws IOException {
+		JSONWriter json = new JSONWriter();
+		json.beginObject();
+		json.appendString("entity", entity);
+		json.appendLong("documents", getDocuments());
+		json.appendLong("json_chars", getDocumentChars());
+		json.appendDecimal("elapsed_ms", millis(getElapsedNanos()));
+		json.appendDecimal("documents_per_second", String.format(Locale.ROOT, "%.3f", getDocumentsPerSecond()));
+		json.appendDecimal("mb_per_second", String.format(Locale.ROOT, "%.3f", getMBPerSecond()));
+		json.beginArray("selectors");
+		for (SelectorMetrics selector : getSelectors()) {
+			LatencyHistogram latency = selector.getLatency();
+			json.beginObject();
+			json.appendString("selector", selector.getName());
+			json.appendLong("queries", selector.getQueries());
+			json.appendDecimal("db_ms", millis(selector.getDatabaseNanos()));
+			json.appendLong("rows", selector.getRows());
+			json.appendLong("json_chars", selector.getChars());
+			json.name("latency_ms");
+			json.beginObject();
+			json.appendDecimal("mean", millis((long) latency.getMean()));
+			for (int i = 0; i < PERCENTILES.length; i++) {
+				json.appendDecimal(PERCENTILE_NAMES[i], millis(latency.getValueAtPercentile(PERCENTILES[i])));
+			}
+			json.appendDecimal("max", millis(latency.getMax()));
+			json.endObject();
+			json.endObject();
+		}
+		json.endArray();
+		List<StageMetrics> pipeline = getStages();
+		if (!pipeline.isEmpty()) {
+			json.beginArray("stages");
+			for (StageMetrics stage : pipeline) {
+				json.beginObject();
+				json.appendString("stage", stage.getName());
+				json.appendLong("blocks", stage.getItems());
+				json.appendDecimal("busy_ms", millis(stage.getBusyNanos()));
+				json.appendDecimal("wait_ms", millis(stage.getWaitNanos()));
+				json.appendInt("queue_capacity", stage.getCapacity());
+				json.appendDecimal("queue_depth_average",
+						String.format(Locale.ROOT, "%.3f", stage.getAverageDepth()));
+				json.appendInt("queue_depth_max", stage.getMaxDepth());
+				json.endObject();
+			}
+			json.endArray();
+		}
+		json.endObject();
+		Files.write(Paths.get(fileName), (json.toString() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -93,6 +93,10 @@ public class OrdersLoader extends PrstshpLoader {
 	 * Key column for the orders table
 	 */
 	private static final String ORDERS_KEY_COLUMN = "id_order";
+	/**
+	 * Key column for the customers table
+	 */
+	private static final String CUSTOMERS_KEY_COLUMN = "id_customer";
 	/**
 	 * Key column for the employees table
 	 */
@@ -113,6 +117,15 @@ public class OrdersLoader extends PrstshpLoader {
 	 * Key column for the order returns table
 	 */
 	private static final String ORDER_RETURN_KEY_COLUMN = "id_order_return";
+	/**
+	 * Column of the orders query holding the order id (to join the selectors of
+	 * single objects into it)
+	 */
+	private static final String ORDERS_JOIN_COLUMN = "t1.id_order";
+	/**
+	 * Column of the orders query holding the customer id
+	 */
+	private static final String CUSTOMERS_JOIN_COLUMN = "t1.id_customer";
 	/**
 	 * This is a special type of tax that may apply at the invoice level.
 	 * Cardinality 0:1
@@ -127,7 +140,8 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "t1.shipping_number, t1.total_discounts, t1.total_discounts_tax_incl, t1.total_discounts_tax_excl, t1.total_paid, t1.total_paid_tax_incl, "
 			+ "t1.total_paid_tax_excl, t1.total_paid_real, t1.total_products, t1.total_products_wt, t1.total_shipping, t1.total_shipping_tax_incl, "
 			+ "t1.total_shipping_tax_excl, t1.carrier_tax_rate, t1.total_wrapping, t1.total_wrapping_tax_incl, t1.total_wrapping_tax_excl, "
-			+ "t1.round_mode, t1.round_type, t1.invoice_number, t1.delivery_number, t1.invoice_date, t1.delivery_date, t1.valid, t1.date_add, t1.date_upd "
+			+ "t1.round_mode, t1.round_type, t1.invoice_number, t1.delivery_number, t1.invoice_date, t1.delivery_date, t1.valid, t1.date_add, t1.date_upd, "
+			+ "t1.id_customer AS " + LINK_COLUMN_PREFIX + CUSTOMERS_KEY_COLUMN + " "
 			+ "FROM prstshp_orders AS t1 " + "JOIN prstshp_currency AS t2 ON t1.id_currency = t2.id_currency "
 			+ "JOIN prstshp_lang AS t3 ON t1.id_lang = t3.id_lang "
 			+ "JOIN prstshp_order_state_lang AS t4 ON t1.current_state = t4.id_order_state AND t1.id_lang = t4.id_lang ";
@@ -157,7 +171,7 @@ public class OrdersLoader extends PrstshpLoader {
 	private static final String GET_CARRIER_QUERY = "SELECT t1.id_carrier, t2.name, t1.id_order_invoice, t1.weight, "
 			+ "t1.shipping_cost_tax_excl, t1.shipping_cost_tax_incl, t1.tracking_number, t1.date_add "
 			+ "FROM prstshp_order_carrier AS t1 " + "JOIN prstshp_carrier AS t2 ON t1.id_carrier = t2.id_carrier "
-			+ "WHERE id_order = ?";
+			+ "WHERE id_order = ? " + "ORDER BY t1.id_order_carrier";
 	/**
 	 * Select statement to retrieve the discounts applied to a particular order
 	 */
@@ -170,9 +184,12 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "t2.gift_product_attribute, t2.highlight, t2.active, t2.date_add, t2.date_upd "
 			+ "FROM prstshp_order_cart_rule AS t1 "
 			+ "JOIN prstshp_cart_rule AS t2 ON t1.id_cart_rule = t2.id_cart_rule "
-			+ "JOIN prstshp_currency AS t3 ON t2.reduction_currency = t3.id_currency " + "WHERE id_order = ?";
+			+ "JOIN prstshp_currency AS t3 ON t2.reduction_currency = t3.id_currency " + "WHERE id_order = ? "
+			+ "ORDER BY t1.id_order_cart_rule";
 	/**
-	 * Select statement to retrieve the basic customer information
+	 * Select statement to retrieve the basic customer information. Customers are
+	 * linked to orders through link_id_customer on the orders query, so the same
+	 * customer is rendered once for all of their orders.
 	 */
 	private static final String GET_CUSTOMER_QUERY = "SELECT t1.id_customer, t1.id_gender, t2.name as gender, t1.id_default_group, "
 			+ "t4.name as default_group, t1.id_lang, t3.name as lang, t1.firstname, t1.lastname, t1.email "
@@ -180,7 +197,7 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "LEFT OUTER JOIN prstshp_gender_lang AS t2 ON t1.id_gender = t2.id_gender AND t1.id_lang = t2.id_lang "
 			+ "INNER JOIN prstshp_lang AS t3 ON t1.id_lang = t3.id_lang "
 			+ "INNER JOIN prstshp_group_lang AS t4 ON t1.id_default_group = t4.id_group AND t1.id_lang = t4.id_lang "
-			+ "WHERE t1.id_customer = (SELECT id_customer FROM prstshp_orders WHERE id_order = ?)";
+			+ "WHERE t1.id_customer = ?";
 	/**
 	 * Select statement to retrieve the order lines on the order
 	 */
@@ -198,7 +215,7 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "INNER JOIN prstshp_order_detail_tax AS t3 ON t1.id_order_detail = t3.id_order_detail "
 			+ "INNER JOIN prstshp_tax AS t4 ON t3.id_tax = t4.id_tax "
 			+ "INNER JOIN prstshp_tax_lang AS t5 ON t4.id_tax = t5.id_tax AND t2.id_lang = t5.id_lang "
-			+ "WHERE t1.id_order = ? " + "ORDER BY t1.id_order_detail";
+			+ "WHERE t1.id_order = ? " + "ORDER BY t1.id_order_detail, t3.id_tax";
 	/**
 	 * Statement used to retrieve the attributes of a particular combination
 	 * (id_product_attribute)
@@ -210,7 +227,7 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "JOIN prstshp_attribute_group_lang AS t3 ON t2.id_attribute_group = t3.id_attribute_group "
 			+ "JOIN prstshp_attribute_lang AS t4 ON t1.id_attribute = t4.id_attribute "
 			+ "JOIN prstshp_lang AS T5 ON t3.id_lang = t5.id_lang AND t4.id_lang = t5.id_lang "
-			+ "WHERE t1.id_product_attribute = ? " + "ORDER BY t3.id_lang, t2.id_attribute_group";
+			+ "WHERE t1.id_product_attribute = ? " + "ORDER BY t3.id_lang, t2.id_attribute_group, t1.id_attribute";
 	/**
 	 * Select statement to retrieve the invoice associated to an order
 	 */
@@ -224,7 +241,8 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "LEFT JOIN prstshp_order_invoice_tax AS t3 ON t2.id_order_invoice = t3.id_order_invoice AND t3.`type` = "
 			+ SPECIAL_TAXABLE_INVOICE_CONCEPT + " " + "LEFT JOIN prstshp_tax AS t4 ON t3.id_tax = t4.id_tax "
 			+ "LEFT JOIN prstshp_tax_lang AS t5 ON t4.id_tax = t5.id_tax AND t5.id_lang = (SELECT id_lang FROM prstshp_orders WHERE id_order = t2.id_order) "
-			+ "WHERE t2.id_order_invoice IN (SELECT id_order_invoice FROM prstshp_order_detail WHERE id_order = ?)";
+			+ "WHERE t2.id_order_invoice IN (SELECT id_order_invoice FROM prstshp_order_detail WHERE id_order = ?) "
+			+ "ORDER BY t2.id_order_invoice";
 	/**
 	 * Select statement to retrieve the payments done over a invoice
 	 */
@@ -232,7 +250,8 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "t3.iso_code as currency_iso_Code, t2.amount, t2.payment_method, t2.conversion_rate, t2.transaction_id, t2.card_number, t2.card_brand, "
 			+ "t2.card_expiration, t2.card_holder, t2.date_add " + "FROM prstshp_order_invoice_payment  AS t1 "
 			+ "INNER JOIN prstshp_order_payment AS t2 ON t1.id_order_payment = t2.id_order_payment "
-			+ "INNER JOIN prstshp_currency AS t3 ON t2.id_currency = t3.id_currency " + "WHERE t1.id_order_invoice = ?";
+			+ "INNER JOIN prstshp_currency AS t3 ON t2.id_currency = t3.id_currency " + "WHERE t1.id_order_invoice = ? "
+			+ "ORDER BY t2.id_order_payment";
 	/**
 	 * Select statement to retrieve the history of order statuses
 	 */
@@ -252,25 +271,25 @@ public class OrdersLoader extends PrstshpLoader {
 	 */
 	private static final String GET_ORDER_SLIPS_QUERY = "SELECT id_order_slip, conversion_rate, id_customer, total_products_tax_excl, total_products_tax_incl, "
 			+ "total_shipping_tax_excl, total_shipping_tax_incl, shipping_cost, amount, shipping_cost_amount, `partial`, order_slip_type, date_add, date_upd "
-			+ "FROM prstshp_order_slip " + "WHERE id_order = ?";
+			+ "FROM prstshp_order_slip " + "WHERE id_order = ? " + "ORDER BY id_order_slip";
 	/**
 	 * Select statement to retrieve order slip details
 	 */
 	private static final String GET_ORDER_SLIP_DETAILS_QUERY = "SELECT id_order_detail, product_quantity, unit_price_tax_excl, unit_price_tax_incl, "
 			+ "total_price_tax_excl, total_price_tax_incl, amount_tax_excl, amount_tax_incl "
-			+ "FROM prstshp_order_slip_detail " + "WHERE id_order_slip = ?";
+			+ "FROM prstshp_order_slip_detail " + "WHERE id_order_slip = ? " + "ORDER BY id_order_detail";
 	/**
 	 * Select statement to retrieve order returns
 	 */
 	private static final String GET_ORDER_RETURNS_QUERY = "SELECT t1.id_order_return, t1.state, t2.name as state_name, t1.question, t1.date_add, t1.date_upd "
 			+ "FROM prstshp_order_return AS t1 "
 			+ "INNER JOIN prstshp_order_return_state_lang AS t2 ON t2.id_order_return_state = t1.state AND t2.id_lang = (SELECT id_lang FROM prstshp_orders WHERE id_order = t1.id_order) "
-			+ "WHERE id_order = ?";
+			+ "WHERE id_order = ? " + "ORDER BY t1.id_order_return";
 	/**
 	 * Select statement to retrieve order return details
 	 */
 	private static final String GET_ORDER_RETURN_DETAILS_QUERY = "SELECT id_order_detail, id_customization, product_quantity "
-			+ "FROM prstshp_order_return_detail " + "WHERE id_order_return = ?";
+			+ "FROM prstshp_order_return_detail " + "WHERE id_order_return = ? " + "ORDER BY id_order_detail, id_customization";
 	/**
 	 * Select statement to retrieve order messages
 	 */
@@ -285,13 +304,66 @@ public class OrdersLoader extends PrstshpLoader {
 			+ "FROM prstshp_customer_thread AS t1 "
 			+ "INNER JOIN prstshp_contact AS t2 ON t2.id_contact = t1.id_contact "
 			+ "INNER JOIN prstshp_contact_lang AS t3 ON t3.id_contact = t1.id_contact AND t3.id_lang = t1.id_lang "
-			+ "INNER JOIN prstshp_lang AS t4 ON t4.id_lang = t1.id_lang " + "WHERE id_order = ?";
+			+ "INNER JOIN prstshp_lang AS t4 ON t4.id_lang = t1.id_lang " + "WHERE id_order = ? " + "ORDER BY t1.id_customer_thread";
 	/**
 	 * Select statement to retrieve customer thread e-mails
 	 */
 	private static final String GET_THREAD_MESSAGES_QUERY = "SELECT id_customer_message, id_employee, message, file_name, ip_address, user_agent, "
 			+ "date_add, date_upd, private, `read` " + "FROM prstshp_customer_message "
-			+ "WHERE id_customer_thread = ?";
+			+ "WHERE id_customer_thread = ? " + "ORDER BY id_customer_message";
+
+	/**
+	 * Block versions of the child selector queries (see batchQuery()).
+	 */
+	private static final String GET_DELIVERY_ADDRESS_BATCH_QUERY = batchQuery(GET_DELIVERY_ADDRESS_QUERY, "id_order");
+	private static final String GET_INVOICE_ADDRESS_BATCH_QUERY = batchQuery(GET_INVOICE_ADDRESS_QUERY, "id_order");
+	private static final String GET_CARRIER_BATCH_QUERY = batchQuery(GET_CARRIER_QUERY, "id_order");
+	private static final String GET_DISCOUNTS_BATCH_QUERY = batchQuery(GET_DISCOUNTS_QUERY, "id_order");
+	private static final String GET_ORDER_DETAILS_BATCH_QUERY = batchQuery(GET_ORDER_DETAILS_QUERY, "t1.id_order");
+	private static final String GET_PRODUCT_COMBINATION_ATTRIBUTES_BATCH_QUERY = batchQuery(
+			GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY, "t1.id_product_attribute");
+	private static final String GET_INVOICE_PAYMENTS_BATCH_QUERY = batchQuery(GET_INVOICE_PAYMENTS_QUERY,
+			"t1.id_order_invoice");
+	private static final String GET_ORDER_HISTORY_BATCH_QUERY = batchQuery(GET_ORDER_HISTORY_QUERY, "t1.id_order");
+	private static final String GET_EMPLOYEE_BATCH_QUERY = batchQuery(GET_EMPLOYEE_QUERY, "id_employee");
+	private static final String GET_ORDER_SLIPS_BATCH_QUERY = batchQuery(GET_ORDER_SLIPS_QUERY, "id_order");
+	private static final String GET_ORDER_SLIP_DETAILS_BATCH_QUERY = batchQuery(GET_ORDER_SLIP_DETAILS_QUERY,
+			"id_order_slip");
+	private static final String GET_ORDER_RETURNS_BATCH_QUERY = batchQuery(GET_ORDER_RETURNS_QUERY, "id_order");
+	private static final String GET_ORDER_RETURN_DETAILS_BATCH_QUERY = batchQuery(GET_ORDER_RETURN_DETAILS_QUERY,
+			"id_order_return");
+	private static final String GET_MESSAGES_BATCH_QUERY = batchQuery(GET_MESSAGES_QUERY, "id_order");
+	private static final String GET_CUSTOMER_THREAD_BATCH_QUERY = batchQuery(GET_CUSTOMER_THREAD_QUERY, "id_order");
+	private static final String GET_THREAD_MESSAGES_BATCH_QUERY = batchQuery(GET_THREAD_MESSAGES_QUERY,
+			"id_customer_thread");
+	/**
+	 * Employees are a dimension: they are loaded once and embedded from memory.
+	 */
+	private static final String GET_EMPLOYEES_DIMENSION_QUERY = dimensionQuery(GET_EMPLOYEE_QUERY, "id_employee");
+	private static final String GET_CUSTOMER_BATCH_QUERY = batchQuery(GET_CUSTOMER_QUERY, "t1.id_customer");
+	/**
+	 * GET_INVOICE_QUERY finds the invoices through a sub-query on the order
+	 * details, so the block version joins the (distinct) invoices of each order.
+	 */
+	private static final String GET_INVOICE_BATCH_QUERY = batchQuery(GET_INVOICE_QUERY
+			.replace("FROM prstshp_order_invoice AS t2 ",
+					"FROM (SELECT DISTINCT id_order, id_order_invoice FROM prstshp_order_detail) AS t0 "
+							+ "INNER JOIN prstshp_order_invoice AS t2 ON t2.id_order_invoice = t0.id_order_invoice ")
+			.replace("t2.id_order_invoice IN (SELECT id_order_invoice FROM prstshp_order_detail WHERE id_order = ?)",
+					"t0.id_order = ?"),
+			"t0.id_order");
+
+	/**
+	 * Condition for the orders changed since a given time (incremental loads).
+	 * Besides the order itself, changes on its history, messages, returns, credit
+	 * slips and customer threads are taken into account.
+	 */
+	private static final String CHANGED_ORDERS_CONDITION = "t1.date_upd >= " + CHANGED_SINCE_PLACEHOLDER + " "
+			+ "OR t1.id_order IN (SELECT id_order FROM prstshp_order_history WHERE date_add >= " + CHANGED_SINCE_PLACEHOLDER + ") "
+			+ "OR t1.id_order IN (SELECT id_order FROM prstshp_message WHERE date_add >= " + CHANGED_SINCE_PLACEHOLDER + ") "
+			+ "OR t1.id_order IN (SELECT id_order FROM prstshp_order_return WHERE date_upd >= " + CHANGED_SINCE_PLACEHOLDER + ") "
+			+ "OR t1.id_order IN (SELECT id_order FROM prstshp_order_slip WHERE date_upd >= " + CHANGED_SINCE_PLACEHOLDER + ") "
+			+ "OR t1.id_order IN (SELECT id_order FROM prstshp_customer_thread WHERE date_upd >= " + CHANGED_SINCE_PLACEHOLDER + ")";
 
 	/**
 	 * Creates a loader for all orders.
@@ -320,31 +392,63 @@ public class OrdersLoader extends PrstshpLoader {
 	 * @return The number of orders loaded.
 	 */
 	public int load(com.indigoid.dbutils.MariaDBConnectionManager con, String shopName) {
+		// Employees are embedded on history, messages and thread messages
+		addDimension(GET_EMPLOYEE_QUERY, new DimensionCache(EMPLOYEE_PROTERY, GET_EMPLOYEES_DIMENSION_QUERY));
+
+		// Customers and combinations are repeated on many orders
+		memoize(GET_CUSTOMER_QUERY);
+		memoize(GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY);
+
 		// These are the selectors for child elements
 		DataSelector[][] childSelectors = {
-				{ new DataSelector(ORDERS_KEY_COLUMN, CUSTOMER_PROPERTY, GET_CUSTOMER_QUERY, false) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, DELIVERY_ADDRESS_PROPERTY, GET_DELIVERY_ADDRESS_QUERY, false) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, INVOICE_ADDRESS_PROPERTY, GET_INVOICE_ADDRESS_QUERY, false) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, CARRIER_PROPERTY, GET_CARRIER_QUERY, false) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, DISCOUNTS_PROPETRY, GET_DISCOUNTS_QUERY, true) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, INVOICE_PROPERTY, GET_INVOICE_QUERY, false),
-						new DataSelector(INVOICES_KEY_COLUMN, PAYMENTS_PROPERTY, GET_INVOICE_PAYMENTS_QUERY, true) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, DETAILS_PROPERTY, GET_ORDER_DETAILS_QUERY, true),
+				{ new DataSelector(CUSTOMERS_KEY_COLUMN, CUSTOMER_PROPERTY, GET_CUSTOMER_QUERY, false,
+						GET_CUSTOMER_BATCH_QUERY, CUSTOMERS_JOIN_COLUMN) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, DELIVERY_ADDRESS_PROPERTY, GET_DELIVERY_ADDRESS_QUERY, false,
+						GET_DELIVERY_ADDRESS_BATCH_QUERY, ORDERS_JOIN_COLUMN) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, INVOICE_ADDRESS_PROPERTY, GET_INVOICE_ADDRESS_QUERY, false,
+						GET_INVOICE_ADDRESS_BATCH_QUERY, ORDERS_JOIN_COLUMN) },
+				// prstshp_order_carrier may hold several rows per order: not joinable
+				{ new DataSelector(ORDERS_KEY_COLUMN, CARRIER_PROPERTY, GET_CARRIER_QUERY, false,
+						GET_CARRIER_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, DISCOUNTS_PROPETRY, GET_DISCOUNTS_QUERY, true,
+						GET_DISCOUNTS_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, INVOICE_PROPERTY, GET_INVOICE_QUERY, false, GET_INVOICE_BATCH_QUERY),
+						new DataSelector(INVOICES_KEY_COLUMN, PAYMENTS_PROPERTY, GET_INVOICE_PAYMENTS_QUERY, true,
+								GET_INVOICE_PAYMENTS_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, DETAILS_PROPERTY, GET_ORDER_DETAILS_QUERY, true,
+						GET_ORDER_DETAILS_BATCH_QUERY),
 						new DataSelector(PRODUCT_COMBINATION_KEY_COLUMN, COMBINATION_ATTRIBUTES_PROPERTY,
-								GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY, true) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, HISTORY_PROPERTY, GET_ORDER_HISTORY_QUERY, true),
-						new DataSelector(EMPLOYEES_KEY_COLUMN, EMPLOYEE_PROTERY, GET_EMPLOYEE_QUERY, false) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, RETURNS_PROPERTY, GET_ORDER_RETURNS_QUERY, true),
-						new DataSelector(ORDER_RETURN_KEY_COLUMN, RETURN_DETAILS_PROPERTY, GET_ORDER_RETURN_DETAILS_QUERY, true) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, CREDIT_SLIPS_PROPERTY, GET_ORDER_SLIPS_QUERY, true),
-						new DataSelector(ORDER_SLIP_KEY_COLUMN, CREDIT_SLIPS_DETAILS_PROPERTY, GET_ORDER_SLIP_DETAILS_QUERY, true) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, MESSAGES_PROPERTY, GET_MESSAGES_QUERY, true),
-						new DataSelector(EMPLOYEES_KEY_COLUMN, EMPLOYEE_PROTERY, GET_EMPLOYEE_QUERY, false) },
-				{ new DataSelector(ORDERS_KEY_COLUMN, CUSTOMER_THREAD_PROPERTY, GET_CUSTOMER_THREAD_QUERY, false),
-						new DataSelector(CUSTOMER_THREAD_KEY_COLUMN, THREAD_MESSAGES_PROPERTY, GET_THREAD_MESSAGES_QUERY, true),
-						new DataSelector(EMPLOYEES_KEY_COLUMN, EMPLOYEE_PROTERY, GET_EMPLOYEE_QUERY, false) } };
+								GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY, true,
+								GET_PRODUCT_COMBINATION_ATTRIBUTES_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, HISTORY_PROPERTY, GET_ORDER_HISTORY_QUERY, true,
+						GET_ORDER_HISTORY_BATCH_QUERY),
+						new DataSelector(EMPLOYEES_KEY_COLUMN, EMPLOYEE_PROTERY, GET_EMPLOYEE_QUERY, false,
+								GET_EMPLOYEE_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, RETURNS_PROPERTY, GET_ORDER_RETURNS_QUERY, true,
+						GET_ORDER_RETURNS_BATCH_QUERY),
+						new DataSelector(ORDER_RETURN_KEY_COLUMN, RETURN_DETAILS_PROPERTY, GET_ORDER_RETURN_DETAILS_QUERY,
+								true, GET_ORDER_RETURN_DETAILS_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, CREDIT_SLIPS_PROPERTY, GET_ORDER_SLIPS_QUERY, true,
+						GET_ORDER_SLIPS_BATCH_QUERY),
+						new DataSelector(ORDER_SLIP_KEY_COLUMN, CREDIT_SLIPS_DETAILS_PROPERTY, GET_ORDER_SLIP_DETAILS_QUERY,
+								true, GET_ORDER_SLIP_DETAILS_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, MESSAGES_PROPERTY, GET_MESSAGES_QUERY, true,
+						GET_MESSAGES_BATCH_QUERY),
+						new DataSelector(EMPLOYEES_KEY_COLUMN, EMPLOYEE_PROTERY, GET_EMPLOYEE_QUERY, false,
+								GET_EMPLOYEE_BATCH_QUERY) },
+				{ new DataSelector(ORDERS_KEY_COLUMN, CUSTOMER_THREAD_PROPERTY, GET_CUSTOMER_THREAD_QUERY, false,
+						GET_CUSTOMER_THREAD_BATCH_QUERY),
+						new DataSelector(CUSTOMER_THREAD_KEY_COLUMN, THREAD_MESSAGES_PROPERTY, GET_THREAD_MESSAGES_QUERY,
+								true, GET_THREAD_MESSAGES_BATCH_QUERY),
+						new DataSelector(EMPLOYEES_KEY_COLUMN, EMPLOYEE_PROTERY, GET_EMPLOYEE_QUERY, false,
+								GET_EMPLOYEE_BATCH_QUERY) } };
 
 		return loadMainLevel(con, shopName, new DataSelector(ORDERS_KEY_COLUMN, ORDERS_DOC_TYPE, GET_ORDERS_QUERY, false),
 				childSelectors);
 	}
+
+	@Override
+	protected String getChangedCondition() {
+		return CHANGED_ORDERS_CONDITION;
+	}
 }
\ No newline at end of file
@@ -74,7 +74,7 @@ public class ProductsLoader extends PrstshpLoader {
 			+ "`prstshp_product_lang`.`name`, `prstshp_product_lang`.`available_now`, `prstshp_product_lang`.`available_later`"
 			+ "FROM `prstshp_product_lang` "
 			+ "INNER JOIN `prstshp_lang` ON `prstshp_product_lang`.`id_lang` = `prstshp_lang`.`id_lang` "
-			+ "WHERE `id_product` = ? " + "ORDER BY `prstshp_product_lang`.`id_shop`";
+			+ "WHERE `id_product` = ? " + "ORDER BY `prstshp_product_lang`.`id_shop`, `prstshp_product_lang`.`id_lang`";
 	/**
 	 * Statement used to retrieve the carriers associated to a product
 	 */
@@ -89,7 +89,7 @@ public class ProductsLoader extends PrstshpLoader {
 	 */
 	private static final String GET_PRODUCT_COMMENTS_QUERY = "SELECT `id_product_comment`,  `id_customer`, `id_guest`, `title`, `content`, "
 			+ "`customer_name`, `grade`, `validate`, `deleted`, `date_add` " + "FROM `prstshp_product_comment` "
-			+ "WHERE `id_product` = ?";
+			+ "WHERE `id_product` = ? " + "ORDER BY `id_product_comment`";
 	/**
 	 * Statement used to retrieve the tags on a product
 	 */
@@ -97,7 +97,7 @@ public class ProductsLoader extends PrstshpLoader {
 			+ "FROM `prstshp_product_tag` "
 			+ "INNER JOIN `prstshp_tag` ON `prstshp_product_tag`.`id_tag` = `prstshp_tag`.`id_tag` "
 			+ "INNER JOIN `prstshp_lang` ON `prstshp_product_tag`.`id_lang` = `prstshp_lang`.`id_lang` "
-			+ "WHERE `id_product` = ?";
+			+ "WHERE `id_product` = ? " + "ORDER BY `prstshp_product_tag`.`id_tag`, `prstshp_product_tag`.`id_lang`";
 	/**
 	 * Statement used to retrieve the features defined on a product
 	 */
@@ -107,7 +107,8 @@ public class ProductsLoader extends PrstshpLoader {
 			+ "INNER JOIN `prstshp_feature_lang` ON `prstshp_feature_product`.`id_feature`  = `prstshp_feature_lang`.`id_feature` "
 			+ "INNER JOIN `prstshp_feature_value_lang` ON `prstshp_feature_product`.`id_feature_value`  = `prstshp_feature_value_lang`.`id_feature_value` AND `prstshp_feature_lang`.`id_lang`  = `prstshp_feature_value_lang`.`id_lang` "
 			+ "INNER JOIN `prstshp_lang` ON `prstshp_feature_lang`.`id_lang` = `prstshp_lang`.`id_lang` "
-			+ "WHERE `prstshp_feature_product`.`id_product` = ? " + "ORDER BY `prstshp_feature_product`.`id_feature`";
+			+ "WHERE `prstshp_feature_product`.`id_product` = ? "
+			+ "ORDER BY `prstshp_feature_product`.`id_feature`, `prstshp_feature_product`.`id_feature_value`, `prstshp_feature_lang`.`id_lang`";
 	/**
 	 * Statement used to retrieve the combinations defined on a product
 	 */
@@ -115,7 +116,7 @@ public class ProductsLoader extends PrstshpLoader {
 			+ "t1.ean13, t1.upc, t2.id_shop, t2.wholesale_price, t2.price, t2.ecotax, t2.weight, t2.unit_price_impact, t2.default_on, "
 			+ "t2.minimal_quantity, t2.available_date " + "FROM  prstshp_product_attribute as t1 "
 			+ "JOIN prstshp_product_attribute_shop AS t2 ON t1.id_product = t2.id_product AND t1.id_product_attribute = t2.id_product_attribute "
-			+ "WHERE t1.id_product = ?";
+			+ "WHERE t1.id_product = ? " + "ORDER BY t1.id_product_attribute, t2.id_shop";
 	/**
 	 * Statement used to retrieve the attributes of a particular combination
 	 * (id_product_attribute)
@@ -127,7 +128,7 @@ public class ProductsLoader extends PrstshpLoader {
 			+ "JOIN prstshp_attribute_group_lang AS t3 ON t2.id_attribute_group = t3.id_attribute_group "
 			+ "JOIN prstshp_attribute_lang AS t4 ON t1.id_attribute = t4.id_attribute "
 			+ "JOIN prstshp_lang AS T5 ON t3.id_lang = t5.id_lang AND t4.id_lang = t5.id_lang "
-			+ "WHERE t1.id_product_attribute = ? " + "ORDER BY t3.id_lang, t2.id_attribute_group";
+			+ "WHERE t1.id_product_attribute = ? " + "ORDER BY t3.id_lang, t2.id_attribute_group, t1.id_attribute";
 	/**
 	 * Statement used to retrieve the categories a product belongs to
 	 */
@@ -135,7 +136,34 @@ public class ProductsLoader extends PrstshpLoader {
 			+ "FROM prstshp_category_product AS t1 "
 			+ "JOIN prstshp_category_shop AS t2 ON t1.id_category = t2.id_category "
 			+ "JOIN prstshp_category_lang AS t3 ON t1.id_category = t3.id_category AND t2.id_shop = t3.id_shop "
-			+ "JOIN prstshp_lang AS t4 ON t4.id_lang = t3.id_lang " + "WHERE t1.id_product = ?";
+			+ "JOIN prstshp_lang AS t4 ON t4.id_lang = t3.id_lang " + "WHERE t1.id_product = ? "
+			+ "ORDER BY t2.id_category, t2.id_shop, t3.id_lang";
+
+	/**
+	 * Block versions of the child selector queries (see batchQuery()).
+	 */
+	private static final String GET_PRODUCT_DESCRIPTIONS_BATCH_QUERY = batchQuery(GET_PRODUCT_DESCRIPTIONS_QUERY,
+			"`id_product`");
+	private static final String GET_PRODUCT_CATEGORIES_BATCH_QUERY = batchQuery(GET_PRODUCT_CATEGORIES_QUERY,
+			"t1.id_product");
+	private static final String GET_PRODUCT_COMMENTS_BATCH_QUERY = batchQuery(GET_PRODUCT_COMMENTS_QUERY,
+			"`id_product`");
+	private static final String GET_PRODUCT_TAGS_BATCH_QUERY = batchQuery(GET_PRODUCT_TAGS_QUERY, "`id_product`");
+	private static final String GET_PRODUCT_FEATURES_BATCH_QUERY = batchQuery(GET_PRODUCT_FEATURES_QUERY,
+			"`prstshp_feature_product`.`id_product`");
+	private static final String GET_PRODUCT_CARRIERS_BATCH_QUERY = batchQuery(GET_PRODUCT_CARRIERS_QUERY,
+			"`prstshp_product_carrier`.`id_product`");
+	private static final String GET_PRODUCT_COMBINATIONS_BATCH_QUERY = batchQuery(GET_PRODUCT_COMBINATIONS_QUERY,
+			"t1.id_product");
+	private static final String GET_PRODUCT_COMBINATION_ATTRIBUTES_BATCH_QUERY = batchQuery(
+			GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY, "t1.id_product_attribute");
+
+	/**
+	 * Condition for the products changed since a given time (incremental loads).
+	 * New comments on a product are also taken into account.
+	 */
+	private static final String CHANGED_PRODUCTS_CONDITION = "date_upd >= " + CHANGED_SINCE_PLACEHOLDER + " "
+			+ "OR id_product IN (SELECT id_product FROM prstshp_product_comment WHERE date_add >= " + CHANGED_SINCE_PLACEHOLDER + ")";
 
 	/**
 	 * Creates a loader for all products.
@@ -164,17 +192,33 @@ public class ProductsLoader extends PrstshpLoader {
 	 * @return The number of products loaded.
 	 */
 	public int load(com.indigoid.dbutils.MariaDBConnectionManager con, String shopName) {
+		// Combinations are also embedded on order details (shared fragment cache)
+		memoize(GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY);
+
 		// These are the selectors for child elements
 		DataSelector[][] childSelectors = {
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, DESCRIPTIONS_PROPERTY, GET_PRODUCT_DESCRIPTIONS_QUERY, true) },
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, CATEGORIES_PROPERTY, GET_PRODUCT_CATEGORIES_QUERY, true) },
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, COMMENTS_PROPERTY, GET_PRODUCT_COMMENTS_QUERY, true) },
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, TAGS_PROPERTY, GET_PRODUCT_TAGS_QUERY, true) },
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, FEATURES_PROPERTY, GET_PRODUCT_FEATURES_QUERY, true) },
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, CARRIERS_PROPERTY, GET_PRODUCT_CARRIERS_QUERY, true) },
-				{ new DataSelector(PRODUCTS_KEY_COLUMN, COMBINATIONS_PROPERTY, GET_PRODUCT_COMBINATIONS_QUERY, true), 
-				  new DataSelector(PRODUCT_COMBINATION_KEY_COLUMN, COMBINATION_ATTRIBUTES_PROPERTY, GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY, true) } };
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, DESCRIPTIONS_PROPERTY, GET_PRODUCT_DESCRIPTIONS_QUERY, true,
+						GET_PRODUCT_DESCRIPTIONS_BATCH_QUERY) },
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, CATEGORIES_PROPERTY, GET_PRODUCT_CATEGORIES_QUERY, true,
+						GET_PRODUCT_CATEGORIES_BATCH_QUERY) },
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, COMMENTS_PROPERTY, GET_PRODUCT_COMMENTS_QUERY, true,
+						GET_PRODUCT_COMMENTS_BATCH_QUERY) },
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, TAGS_PROPERTY, GET_PRODUCT_TAGS_QUERY, true,
+						GET_PRODUCT_TAGS_BATCH_QUERY) },
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, FEATURES_PROPERTY, GET_PRODUCT_FEATURES_QUERY, true,
+						GET_PRODUCT_FEATURES_BATCH_QUERY) },
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, CARRIERS_PROPERTY, GET_PRODUCT_CARRIERS_QUERY, true,
+						GET_PRODUCT_CARRIERS_BATCH_QUERY) },
+				{ new DataSelector(PRODUCTS_KEY_COLUMN, COMBINATIONS_PROPERTY, GET_PRODUCT_COMBINATIONS_QUERY, true,
+						GET_PRODUCT_COMBINATIONS_BATCH_QUERY), 
+				  new DataSelector(PRODUCT_COMBINATION_KEY_COLUMN, COMBINATION_ATTRIBUTES_PROPERTY, GET_PRODUCT_COMBINATION_ATTRIBUTES_QUERY, true,
+						GET_PRODUCT_COMBINATION_ATTRIBUTES_BATCH_QUERY) } };
 
 		return loadMainLevel(con, shopName, new DataSelector(PRODUCTS_KEY_COLUMN, PRODUCTS_DOC_TYPE, GET_PRODUCTS_QUERY, false), childSelectors);
 	}
+
+	@Override
+	protected String getChangedCondition() {
+		return CHANGED_PRODUCTS_CONDITION;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.indigoid.prestashop;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.indigoid.utils.MessageLogger;
+import com.indigoid.utils.MessageLogger.MessageType;
+
+/**
+ * Reports the progress of a load every so many seconds, from a background
+ * thread: documents done out of the estimated total, current rate, estimated
+ * time to finish, average document size and heap usage. The loading threads
+ * only count their documents (see LoaderMetrics), so reporting does not slow
+ * them down.
+ *
+ * @author Charlie
+ *
+ */
+public class ProgressReporter implements Closeable {
+
+	/**
+	 * Bytes (or characters) on a kilobyte.
+	 */
+	private static final double KB = 1024.0;
+	/**
+	 * Bytes on a megabyte.
+	 */
+	private static final long MB = 1024L * 1024L;
+
+	/**
+	 * Name of the documents.
+	 */
+	private String name;
+	/**
+	 * Metrics of the load, counting the documents done.
+	 */
+	private LoaderMetrics metrics;
+	/**
+	 * Estimated number of documents (negative if unknown).
+	 */
+	private long total;
+	/**
+	 * Thread running the reports.
+	 */
+	private ScheduledExecutorService reporter;
+	/**
+	 * Documents done on the last report.
+	 */
+	private long lastDocuments = 0;
+	/**
+	 * Time of the last report (System.nanoTime()).
+	 */
+	private long lastNanos;
+
+	/**
+	 * Starts reporting the progress of a load.
+	 *
+	 * @param name
+	 *            Name of the documents
+	 * @param metrics
+	 *            Metrics of the load (already started)
+	 * @param total
+	 *            Estimated number of documents (negative if unknown)
+	 * @param intervalSeconds
+	 *            Seconds between reports
+	 */
+	public ProgressReporter(String name, LoaderMetrics metrics, long total, int intervalSeconds) {
+		this.name = name;
+		this.metrics = metrics;
+		this.total = total;
+		this.lastNanos = System.nanoTime();
+		this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "progress-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Logs the progress of the load.
+	 */
+	private void report() {
+		long now = System.nanoTime();
+		long documents = metrics.getDocuments();
+		long chars = metrics.getDocumentChars();
+
+		// Rate of the last interval (the whole load if nothing was done on it)
+		double seconds = Math.max(now - lastNanos, 1) / 1e9;
+		double rate = (documents - lastDocuments) / seconds;
+		if (rate == 0.0) {
+			rate = metrics.getDocumentsPerSecond();
+		}
+		lastDocuments = documents;
+		lastNanos = now;
+
+		StringBuilder message = new StringBuilder();
+		message.append("Progress of ").append(name).append(": ").append(documents);
+		if (total >= 0) {
+			message.append(" of ~").append(total).append(" documents");
+			message.append(String.format(" (%.1f%%)", (total == 0) ? 100.0 : Math.min(100.0, 100.0 * documents / total)));
+		} else {
+			message.append(" documents");
+		}
+		message.append(String.format(", %.1f documents/s", rate));
+		if (total >= 0) {
+			long remaining = Math.max(total - documents, 0);
+			message.append(", ETA ").append((rate > 0.0) ? formatDuration((long) (remaining / rate)) : "unknown");
+		}
+		message.append(String.format(", average document %.1f KB", (documents == 0) ? 0.0 : chars / KB / documents));
+
+		Runtime runtime = Runtime.getRuntime();
+		message.append(", heap ").append((runtime.totalMemory() - runtime.freeMemory()) / MB).append(" of ")
+				.append(runtime.maxMemory() / MB).append(" MB");
+
+		MessageLogger.logMessage(MessageType.INFO, message.toString());
+	}
+
+	/**
+	 * Formats a duration as hours, minutes and seconds.
+	 *
+	 * @param seconds
+	 *            The duration in seconds
+	 * @return The duration (hh:mm:ss).
+	 */
+	private static String formatDuration(long seconds) {
+		return String.format("%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+
+	/**
+	 * Stops reporting.
+	 */
+	@Override
+	public void close() {
+		reporter.shutdownNow();
+	}
+}
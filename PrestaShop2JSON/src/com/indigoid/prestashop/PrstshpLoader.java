@@ -1,7 +1,7 @@
 package com.indigoid.prestashop;
 
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.File;
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -9,13 +9,38 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 import com.indigoid.dbutils.MariaDBConnectionManager;
 import com.indigoid.dbutils.MyPreparedStatement;
 import com.indigoid.dbutils.MyStatement;
-import com.indigoid.utils.JSONBuilder;
+import com.indigoid.prestashop.LoaderMetrics.SelectorMetrics;
+import com.indigoid.prestashop.LoaderMetrics.StageMetrics;
+import com.indigoid.utils.DocumentSink;
+import com.indigoid.utils.FileDocumentSink;
+import com.indigoid.utils.JSONWriter;
 import com.indigoid.utils.MessageLogger;
+import com.indigoid.utils.MessageLogger.MessageType;
+import com.indigoid.utils.SegmentDocumentStore;
 
 /**
  * Abstract class with all the common behaviors of loaders. Loaders are classes
@@ -41,7 +66,9 @@ public abstract class PrstshpLoader {
 		private String idColumn;
 		private String attribute;
 		private String query;
+		private String batchQuery;
 		private boolean asAnArray;
+		private String joinColumn;
 
 		/**
 		 * Constructor. Creates a new DataSelector and sets all its properties
@@ -59,10 +86,62 @@ public abstract class PrstshpLoader {
 		 *            or a collection of objects (true)
 		 */
 		public DataSelector(String idColumn, String attribute, String query, boolean asAnArray) {
+			this(idColumn, attribute, query, asAnArray, null);
+		}
+
+		/**
+		 * Constructor. Creates a new DataSelector that can also retrieve the child
+		 * elements of a whole block of parents with a single query.
+		 * 
+		 * @param idColumn
+		 *            Name of the database column that is the id of the element
+		 * @param attribute
+		 *            Name of the attribute used on the JSON to represent the elements
+		 *            of this level
+		 * @param query
+		 *            SQL query used to retrieve all objects on current level
+		 * @param asAnArray
+		 *            Flag indicating if the selectors retrieves a single object (false)
+		 *            or a collection of objects (true)
+		 * @param batchQuery
+		 *            Block version of the query, as built by batchQuery(). null if the
+		 *            selector can only be run one parent at a time.
+		 */
+		public DataSelector(String idColumn, String attribute, String query, boolean asAnArray, String batchQuery) {
+			this(idColumn, attribute, query, asAnArray, batchQuery, null);
+		}
+
+		/**
+		 * Constructor. Creates a new DataSelector for a single object per parent that
+		 * can be joined into the main query (see setJoinSelectors()). Its batch query
+		 * must return at most one row per parent, and none of its columns may be
+		 * named as the key column of the main level.
+		 * 
+		 * @param idColumn
+		 *            Name of the database column that is the id of the element
+		 * @param attribute
+		 *            Name of the attribute used on the JSON to represent the element
+		 *            of this level
+		 * @param query
+		 *            SQL query used to retrieve all objects on current level
+		 * @param asAnArray
+		 *            Flag indicating if the selectors retrieves a single object (false)
+		 *            or a collection of objects (true). Only single objects are
+		 *            joined.
+		 * @param batchQuery
+		 *            Block version of the query, as built by batchQuery()
+		 * @param joinColumn
+		 *            Column of the main query (as written on it) holding the parent
+		 *            id, or null if the selector cannot be joined
+		 */
+		public DataSelector(String idColumn, String attribute, String query, boolean asAnArray, String batchQuery,
+				String joinColumn) {
 			this.idColumn = idColumn;
 			this.attribute = attribute;
 			this.query = query;
 			this.asAnArray = asAnArray;
+			this.batchQuery = batchQuery;
+			this.joinColumn = joinColumn;
 		}
 
 		/**
@@ -88,6 +167,14 @@ public abstract class PrstshpLoader {
 			return this.query;
 		}
 
+		/**
+		 * @return SQL query used to retrieve the objects on current level for a block
+		 *         of parents, or null if there is no such query
+		 */
+		public String getBatchQuery() {
+			return this.batchQuery;
+		}
+
 		/**
 		 * @return Flag indicating if the selectors retrieves a single object (false) or
 		 *         a collection of objects (true)
@@ -95,6 +182,608 @@ public abstract class PrstshpLoader {
 		public boolean asAnArray() {
 			return this.asAnArray;
 		}
+
+		/**
+		 * @return Column of the main query holding the parent id, or null if the
+		 *         selector cannot be joined into the main query
+		 */
+		public String getJoinColumn() {
+			return this.joinColumn;
+		}
+
+		/**
+		 * A joinable query must return at most one row per parent: the LEFT JOIN
+		 * would otherwise repeat the main row, and the element, once per child row.
+		 * Selectors whose table may hold several rows per parent (even if the
+		 * document shows a single object) must not be given a join column.
+		 * 
+		 * @return true if the selector can be joined into the main query: a single
+		 *         object per parent with a batch query.
+		 */
+		public boolean isJoinable() {
+			return this.joinColumn != null && this.batchQuery != null && !this.asAnArray;
+		}
+	}
+
+	/**
+	 * Sink used when not on streaming mode. It keeps the elements on the hash
+	 * map, or on the spill store if there is one.
+	 */
+	private class ElementsSink implements DocumentSink {
+
+		@Override
+		public void write(int id, String document) throws IOException {
+			if (store != null) {
+				store.write(id, document);
+			} else {
+				elements.put(id, document);
+			}
+		}
+
+		@Override
+		public int getDocumentCount() {
+			return (store != null) ? store.getDocumentCount() : elements.size();
+		}
+
+		@Override
+		public void close() {
+			/* Elements are kept until dumpData() */ }
+	}
+
+	/**
+	 * Elements of one partition, loaded by a worker thread and waiting to be
+	 * stored in order.
+	 */
+	private static class PartitionBuffer implements DocumentSink {
+
+		private List<Integer> ids = new ArrayList<>();
+		private List<String> documents = new ArrayList<>();
+
+		@Override
+		public void write(int id, String document) {
+			ids.add(id);
+			documents.add(document);
+		}
+
+		@Override
+		public int getDocumentCount() {
+			return ids.size();
+		}
+
+		@Override
+		public void close() {
+			ids.clear();
+			documents.clear();
+		}
+
+		/**
+		 * Writes all the elements of the partition to another sink and frees them.
+		 * 
+		 * @param target
+		 *            Where the elements are stored
+		 * @return The number of elements written.
+		 * @throws IOException
+		 *             When an element cannot be written
+		 */
+		public int writeTo(DocumentSink target) throws IOException {
+			int nElements = ids.size();
+			for (int i = 0; i < nElements; i++) {
+				target.write(ids.get(i), documents.get(i));
+			}
+			close();
+			return nElements;
+		}
+	}
+
+	/**
+	 * Block of main level elements waiting for their children, handed by the
+	 * fetch stage of a pipeline to the assembly and write stages.
+	 */
+	private static class PipelineBlock {
+
+		private List<Integer> ids;
+		private List<JSONWriter> jsons;
+		private List<HashMap<String, Integer>> links;
+		private CompletableFuture<PartitionBuffer> documents = new CompletableFuture<>();
+
+		/**
+		 * @param ids
+		 *            Ids of the elements
+		 * @param jsons
+		 *            JSON of the elements, still open (same order)
+		 * @param links
+		 *            Link columns of the elements (same order)
+		 */
+		public PipelineBlock(List<Integer> ids, List<JSONWriter> jsons, List<HashMap<String, Integer>> links) {
+			this.ids = ids;
+			this.jsons = jsons;
+			this.links = links;
+		}
+	}
+
+	/**
+	 * Pipeline of the main level load. The thread reading the main query (fetch
+	 * stage) hands each block of elements to several threads loading their
+	 * children (assembly stage), and a dedicated thread stores the finished
+	 * documents in order (write stage). So the database, the CPU and the disk
+	 * are all busy at the same time.<br/>
+	 * <br/>
+	 * Queues between stages are bounded, so a stage falling behind stops the
+	 * ones before it (backpressure) and memory is bounded by the number of
+	 * blocks in flight. Each stage measures its work, its waits and the depth of
+	 * its input queue (see LoaderMetrics.StageMetrics).
+	 */
+	private class Pipeline {
+
+		/**
+		 * Marks the end of the blocks on the queues.
+		 */
+		private final PipelineBlock end = new PipelineBlock(null, null, null);
+		/**
+		 * Blocks waiting for their children.
+		 */
+		private ArrayBlockingQueue<PipelineBlock> assembleQueue;
+		/**
+		 * Blocks waiting to be stored, in order.
+		 */
+		private ArrayBlockingQueue<PipelineBlock> writeQueue;
+		/**
+		 * Threads of the assembly and write stages.
+		 */
+		private ExecutorService threads;
+		/**
+		 * Number of threads of the assembly stage.
+		 */
+		private int nAssemblers;
+		/**
+		 * Selectors for the child elements.
+		 */
+		private DataSelector[][] selectors;
+		/**
+		 * Where the documents are stored.
+		 */
+		private DocumentSink target;
+		/**
+		 * Set when documents cannot be stored, so the fetch stage stops.
+		 */
+		private volatile boolean failed = false;
+		/**
+		 * Time when the fetch stage handed its last block (System.nanoTime()).
+		 */
+		private long lastSubmitNanos;
+		/**
+		 * Metrics of each stage.
+		 */
+		private StageMetrics fetchStage, assembleStage, writeStage;
+
+		/**
+		 * Starts the assembly and write stages.
+		 * 
+		 * @param con
+		 *            The database manager connection (each assembly thread takes
+		 *            its own connection from the pool)
+		 * @param selectors
+		 *            Selectors for the child elements
+		 * @param target
+		 *            Where the documents are stored
+		 * @param nAssemblers
+		 *            Number of threads of the assembly stage
+		 */
+		public Pipeline(MariaDBConnectionManager con, DataSelector[][] selectors, DocumentSink target,
+				int nAssemblers) {
+			this.selectors = selectors;
+			this.target = target;
+			this.nAssemblers = nAssemblers;
+			this.assembleQueue = new ArrayBlockingQueue<>(nAssemblers * 2);
+			this.writeQueue = new ArrayBlockingQueue<>(nAssemblers * 4);
+			this.fetchStage = metrics.addStage("fetch", 0);
+			this.assembleStage = metrics.addStage("assemble (" + nAssemblers + " threads)",
+					assembleQueue.remainingCapacity());
+			this.writeStage = metrics.addStage("write", writeQueue.remainingCapacity());
+			this.lastSubmitNanos = System.nanoTime();
+
+			threads = Executors.newFixedThreadPool(nAssemblers + 1);
+			for (int i = 0; i < nAssemblers; i++) {
+				threads.execute(() -> assemble(con));
+			}
+			threads.execute(this::write);
+		}
+
+		/**
+		 * Fetch stage: hands a block of elements to the next stages, waiting while
+		 * their queues are full. The lists must not be used afterwards.
+		 * 
+		 * @param ids
+		 *            Ids of the elements
+		 * @param jsons
+		 *            JSON of the elements, still open (same order)
+		 * @param links
+		 *            Link columns of the elements (same order)
+		 * @throws InterruptedException
+		 *             When the thread is interrupted while waiting
+		 */
+		public void submit(List<Integer> ids, List<JSONWriter> jsons, List<HashMap<String, Integer>> links)
+				throws InterruptedException {
+			PipelineBlock block = new PipelineBlock(ids, jsons, links);
+			long start = System.nanoTime();
+			fetchStage.addItem(start - lastSubmitNanos);
+			writeQueue.put(block);
+			assembleQueue.put(block);
+			lastSubmitNanos = System.nanoTime();
+			fetchStage.addWait(lastSubmitNanos - start);
+			assembleStage.sampleDepth(assembleQueue.size());
+			writeStage.sampleDepth(writeQueue.size());
+		}
+
+		/**
+		 * @return true if documents cannot be stored (the fetch stage should stop).
+		 */
+		public boolean hasFailed() {
+			return failed;
+		}
+
+		/**
+		 * Assembly stage: loads the children of the blocks, until the end.
+		 * 
+		 * @param con
+		 *            The database manager connection
+		 */
+		private void assemble(MariaDBConnectionManager con) {
+			try {
+				while (true) {
+					long start = System.nanoTime();
+					PipelineBlock block = assembleQueue.take();
+					assembleStage.addWait(System.nanoTime() - start);
+					if (block == end) {
+						break;
+					}
+
+					start = System.nanoTime();
+					try {
+						PartitionBuffer buffer = new PartitionBuffer();
+						loadBlock(con, block.ids, block.jsons, block.links, selectors, buffer);
+						block.documents.complete(buffer);
+					} catch (Exception e) {
+						block.documents.completeExceptionally(e);
+					}
+					assembleStage.addItem(System.nanoTime() - start);
+				}
+			} catch (InterruptedException e) {
+				failed = true;
+			}
+		}
+
+		/**
+		 * Write stage: stores the documents of the blocks in order, until the end.
+		 * Once a block fails, the rest are only drained.
+		 */
+		private void write() {
+			try {
+				while (true) {
+					long start = System.nanoTime();
+					PipelineBlock block = writeQueue.take();
+					if (block == end) {
+						writeStage.addWait(System.nanoTime() - start);
+						break;
+					}
+					PartitionBuffer buffer;
+					try {
+						buffer = block.documents.get();
+					} catch (ExecutionException e) {
+						buffer = null;
+						if (!failed) {
+							failed = true;
+							logError((e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+						}
+					}
+					writeStage.addWait(System.nanoTime() - start);
+
+					start = System.nanoTime();
+					try {
+						if (buffer != null && !failed) {
+							buffer.writeTo(target);
+						}
+					} catch (IOException e) {
+						failed = true;
+						logError(e);
+					}
+					writeStage.addItem(System.nanoTime() - start);
+				}
+			} catch (InterruptedException e) {
+				failed = true;
+			}
+		}
+
+		/**
+		 * Ends the pipeline once the fetch stage is done, and waits for the rest of
+		 * the stages to store all the blocks.
+		 * 
+		 * @throws InterruptedException
+		 *             When the thread is interrupted while waiting
+		 */
+		public void finish() throws InterruptedException {
+			try {
+				for (int i = 0; i < nAssemblers; i++) {
+					assembleQueue.put(end);
+				}
+				writeQueue.put(end);
+				threads.shutdown();
+				threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} finally {
+				threads.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Rows of a child selector retrieved for a set of parents, waiting for their
+	 * sub-children. The rows come from batch queries (the parent id is their first
+	 * column); once all of them are read, the next level is loaded for all of
+	 * them at once and each row is stitched to its parent.
+	 */
+	private class ChildRows {
+
+		/**
+		 * Selectors of the levels to process (the rows are of the first one).
+		 */
+		private DataSelector[] selectors;
+		/**
+		 * Selectors of the next levels (null if there are none).
+		 */
+		private DataSelector[] restOfSelectors = null;
+		/**
+		 * Key column for the next level (null if there is none).
+		 */
+		private String childKeyColumn = null;
+		/**
+		 * Column names and types of the result sets.
+		 */
+		private String[] colNames;
+		private int[] colTypes;
+		/**
+		 * Rows retrieved: parent id, JSON (still open) and key of the next level.
+		 */
+		private List<Integer> rowParents = new ArrayList<>();
+		private List<JSONWriter> rowJsons = new ArrayList<>();
+		private List<Integer> rowChildKeys = new ArrayList<>();
+		/**
+		 * Keys of the next level, to load their elements at once.
+		 */
+		private LinkedHashSet<Integer> childKeys = new LinkedHashSet<>();
+
+		/**
+		 * @param selectors
+		 *            An array of selector representing the levels to process in the
+		 *            hierarchy (see loadChildElements()).
+		 */
+		public ChildRows(DataSelector[] selectors) {
+			this.selectors = selectors;
+
+			// If there are more than one selector then we need to process sub-children.
+			if (selectors.length > 1) {
+				// Set the key column for the next level
+				childKeyColumn = selectors[1].getIdColumn();
+
+				// Compute the array with all selectors but first, to work recursively
+				restOfSelectors = new DataSelector[selectors.length - 1];
+				for (int i = 1; i < selectors.length; i++) {
+					restOfSelectors[i - 1] = selectors[i];
+				}
+			}
+		}
+
+		/**
+		 * Sets the columns of the result set the rows are read from.
+		 * 
+		 * @param md
+		 *            Metadata of the result set
+		 * @throws SQLException
+		 *             When the metadata cannot be read
+		 */
+		public void setColumns(ResultSetMetaData md) throws SQLException {
+			int nCols = md.getColumnCount();
+			colNames = new String[nCols + 1];
+			colTypes = new int[nCols + 1];
+			for (int index = 1; index <= nCols; index++) {
+				colNames[index] = md.getColumnLabel(index);
+				colTypes[index] = md.getColumnType(index);
+			}
+		}
+
+		/**
+		 * Renders the current row of a result set.
+		 * 
+		 * @param rs
+		 *            The result set (parent id on the first column)
+		 * @throws SQLException
+		 *             When the row cannot be read
+		 */
+		public void add(ResultSet rs) throws SQLException {
+
+			// Start the JSON of this object (it stays open until its sub-children
+			// are appended)
+			JSONWriter json = new JSONWriter(compactJSON);
+			json.beginObject();
+
+			// For each column but the parent id (2..nCols)
+			int childKeyValue = -1;
+			for (int index = 2; index < colNames.length; index++) {
+				// Convert this column to JSON format
+				boolean notNull = data2JSON(rs, index, colNames[index], colTypes[index], json);
+
+				// If we need to process sub-children, check if this is the key column
+				// and save the value for the key of the next level
+				if (childKeyColumn != null && childKeyValue < 0 && notNull) {
+					if (colNames[index].equals(childKeyColumn)) {
+						childKeyValue = rs.getInt(index);
+					}
+				}
+			}
+
+			if (childKeyColumn != null && childKeyValue > 0) {
+				childKeys.add(childKeyValue);
+			}
+
+			rowParents.add(rs.getInt(1));
+			rowJsons.add(json);
+			rowChildKeys.add(childKeyValue);
+		}
+
+		/**
+		 * Loads the next level for all the rows and stitches each row to its parent.
+		 * 
+		 * @param con
+		 *            Database connection manager (for the next level)
+		 * @return For each parent id, the JSON representation of its children.
+		 *         Parents without children are not included.
+		 */
+		public HashMap<Integer, List<String>> stitch(MariaDBConnectionManager con) {
+
+			// Process the next level for all the children at once (one at a time when
+			// not loading by blocks)
+			HashMap<Integer, List<String>> subchildren = null;
+			if (restOfSelectors != null && batchSize > 0) {
+				subchildren = loadChildBlock(con, childKeys, restOfSelectors);
+			} else if (restOfSelectors != null) {
+				subchildren = new HashMap<>();
+				for (Integer childKey : childKeys) {
+					subchildren.put(childKey, loadChildElements(con, childKey, restOfSelectors));
+				}
+			}
+
+			// Stitch each row to its parent
+			HashMap<Integer, List<String>> children = new HashMap<>();
+			long nChars = 0;
+			for (int index = 0; index < rowParents.size(); index++) {
+				JSONWriter json = rowJsons.get(index);
+				int childKeyValue = rowChildKeys.get(index);
+				if (restOfSelectors != null && childKeyValue > 0) {
+					appendChildElements(json, restOfSelectors[0], subchildren.get(childKeyValue));
+				}
+				json.endObject();
+				children.computeIfAbsent(rowParents.get(index), k -> new ArrayList<>()).add(json.toString());
+				nChars += json.length();
+			}
+			metrics.get(selectors[0].getQuery()).addRows(rowParents.size(), nChars);
+
+			return children;
+		}
+	}
+
+	/**
+	 * Full scan of the children of a selector, read in step with the main level
+	 * (merge join). The batch query of the selector runs once for all the parents,
+	 * sorted by parent id as the main level is, on a streaming cursor of its own
+	 * connection (taken from the pool for the whole scan). Each block of parents takes the rows up to its last parent, and
+	 * skips the rows of parents not loaded.
+	 */
+	private class ChildScan {
+
+		/**
+		 * Selectors of the levels of the chain (the scan is of the first one).
+		 */
+		private DataSelector[] selectors;
+		/**
+		 * Pool the connection of the scan is taken from.
+		 */
+		private MariaDBConnectionManager scanCon;
+		/**
+		 * Statement and cursor of the scan.
+		 */
+		private MyStatement stmt = null;
+		private ResultSet rs = null;
+		/**
+		 * Set when the current row of the cursor is of a parent after the last block.
+		 */
+		private boolean pending = false;
+		/**
+		 * Set when the cursor has no more rows (or it failed).
+		 */
+		private boolean done = false;
+
+		/**
+		 * Opens the scan of a chain of selectors.
+		 * 
+		 * @param con
+		 *            Database connection manager (a connection of its pool is
+		 *            dedicated to the scan)
+		 * @param selectors
+		 *            Levels of the chain (the first one must have a batch query)
+		 * @throws SQLException
+		 *             When the scan cannot be opened, or the pool has no connection
+		 *             free for it
+		 */
+		public ChildScan(MariaDBConnectionManager con, DataSelector[] selectors) throws SQLException {
+			this.selectors = selectors;
+			this.scanCon = con;
+			try {
+				String query = allParentsQuery(selectors[0].getBatchQuery(), resumeAfter);
+				stmt = scanCon.acquireDedicatedStreamingStatement((fetchSize > 0) ? fetchSize : SCAN_FETCH_SIZE);
+				long start = System.nanoTime();
+				rs = stmt.executeQuery(query);
+				metrics.get(selectors[0].getQuery()).addQuery(System.nanoTime() - start);
+			} catch (SQLException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Reads the children of a set of parents, which must come after the parents
+		 * of the previous call.
+		 * 
+		 * @param con
+		 *            Database connection manager (for the next levels)
+		 * @param ids
+		 *            Ids of the parents, sorted
+		 * @return For each parent id, the JSON representation of its children.
+		 *         Parents without children are not included.
+		 */
+		public HashMap<Integer, List<String>> load(MariaDBConnectionManager con, Collection<Integer> ids) {
+
+			ChildRows rows = new ChildRows(selectors);
+			if (ids.isEmpty()) {
+				return rows.stitch(con);
+			}
+
+			HashSet<Integer> parents = new HashSet<>(ids);
+			int lastParent = Collections.max(ids);
+			try {
+				rows.setColumns(rs.getMetaData());
+				while (!done) {
+					if (!pending && !rs.next()) {
+						done = true;
+						break;
+					}
+					pending = true;
+					int parent = rs.getInt(1);
+					if (parent > lastParent) {
+						break;
+					}
+					if (parents.contains(parent)) {
+						rows.add(rs);
+					}
+					pending = false;
+				}
+			} catch (SQLException e) {
+				done = true;
+				logError(e);
+			}
+			return rows.stitch(con);
+		}
+
+		/**
+		 * Closes the scan and returns its connection to the pool.
+		 */
+		public void close() {
+			try {
+				if (stmt != null) {
+					scanCon.relaseDedicatedStatement(stmt);
+				}
+			} catch (SQLException e) {
+				/* Ignore error */
+			}
+		}
 	}
 
 	/**
@@ -111,9 +800,46 @@ public abstract class PrstshpLoader {
 	 */
 	private static final String SHOP_NAME_PROPERTY = "shop_name";
 	/**
-	 * This predicate means load all elements.
+	 * Columns of the main query whose label starts with this prefix are not
+	 * written to the JSON. They link the element with child selectors keyed on
+	 * some other column than the element id (e.g. link_id_customer on orders).
 	 */
-	private static final String PREDICATE_ALL_ELEMENTS = "";
+	protected static final String LINK_COLUMN_PREFIX = "link_";
+	/**
+	 * Placeholder on the changed elements condition replaced by the timestamp.
+	 */
+	protected static final String CHANGED_SINCE_PLACEHOLDER = "{since}";
+	/**
+	 * Format of the timestamps accepted by setChangedSince() (as returned by the
+	 * database NOW() function).
+	 */
+	private static final String TIMESTAMP_FORMAT = "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(\\.\\d+)?";
+	/**
+	 * This predicate means load all elements.
+	 */
+	private static final String PREDICATE_ALL_ELEMENTS = "";
+	/**
+	 * Batch queries return the id of the parent element on this (first) column.
+	 */
+	private static final String BATCH_PARENT_ID_COLUMN = "batch_parent_id";
+	/**
+	 * Placeholder on batch queries replaced by the list of parameters of a block.
+	 */
+	private static final String BATCH_IDS_PLACEHOLDER = "{ids}";
+	/**
+	 * Selectors joined into the main query are aliased with this prefix and their
+	 * position (j1, j2...).
+	 */
+	private static final String JOINED_SELECTOR_ALIAS = "j";
+	/**
+	 * Rows fetched at a time by the scans of the children (when no fetch size is
+	 * set).
+	 */
+	private static final int SCAN_FETCH_SIZE = 1000;
+	/**
+	 * Default number of parent elements whose children are retrieved at once.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
 	/**
 	 * This is the condition used to select a specific group of elements from the
 	 * database.
@@ -124,6 +850,125 @@ public abstract class PrstshpLoader {
 	 * and the value is the JSON representation of the element data.
 	 */
 	private HashMap<Integer, String> elements = new HashMap<Integer, String>();
+	/**
+	 * Number of parent elements whose children are retrieved with a single query.
+	 * Zero or less means one query per parent element.
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	/**
+	 * Number of rows of the main level fetched at a time while they are read
+	 * (streaming cursor). Zero or less means that the whole result set is read
+	 * when the query is executed.
+	 */
+	private int fetchSize = 0;
+	/**
+	 * Number of rows of the main level read by each query (keyset pagination).
+	 * Zero or less means that the main level is read by a single query.
+	 */
+	private int pageSize = 0;
+	/**
+	 * Milliseconds to wait between two pages of the main level.
+	 */
+	private long pagePause = 0;
+	/**
+	 * Set when documents are written on a single line, as MongoDB Extended JSON
+	 * (see JSONWriter).
+	 */
+	private boolean compactJSON = false;
+	/**
+	 * When set, documents are written to this sink as soon as they are complete
+	 * instead of being kept on the hash map (streaming mode).
+	 */
+	private DocumentSink sink = null;
+	/**
+	 * Number of threads loading the main level concurrently.
+	 */
+	private int threads = 1;
+	/**
+	 * When set, only the elements changed since this timestamp (or with changed
+	 * children) are loaded.
+	 */
+	private String changedSince = null;
+	/**
+	 * When set, only the elements with a greater key are loaded (the export is
+	 * resumed after the last element of a checkpoint).
+	 */
+	private Integer resumeAfter = null;
+	/**
+	 * Where the time of the load goes (queries, rows and JSON of each selector).
+	 */
+	private LoaderMetrics metrics = new LoaderMetrics();
+	/**
+	 * Seconds between progress reports. Zero or less means no reports.
+	 */
+	private int progressInterval = 0;
+	/**
+	 * Number of threads loading the children of the blocks read by the main
+	 * query (pipelined load). Zero or less means no pipeline.
+	 */
+	private int pipelineThreads = 0;
+	/**
+	 * Tells if the child chains of an element (or block) are loaded concurrently.
+	 */
+	private boolean parallelChains = false;
+	/**
+	 * Tells if the joinable selectors are folded into the main query.
+	 */
+	private boolean joinSelectors = false;
+	/**
+	 * Selectors folded into the main query of the entity being loaded (their
+	 * columns follow the main ones on each row).
+	 */
+	private DataSelector[] joinedSelectors = new DataSelector[0];
+	/**
+	 * Tells if the children keyed on the main id are read by scans merged with
+	 * the main level.
+	 */
+	private boolean mergeChildren = false;
+	/**
+	 * Scan of each chain of child selectors while an entity is loaded in merge
+	 * mode (null for the chains queried by blocks, or when not in merge mode).
+	 */
+	private ChildScan[] childScans = null;
+	/**
+	 * Runs the child chains while an entity is loaded in parallel chains mode
+	 * (null otherwise).
+	 */
+	private ExecutorService chainExecutor = null;
+	/**
+	 * Directory where the elements are spilled when not on streaming mode, or
+	 * null to keep them on the hash map.
+	 */
+	private File spillDirectory = null;
+	/**
+	 * Store of the elements spilled to disk (null when they are kept on the hash
+	 * map).
+	 */
+	private SegmentDocumentStore store = null;
+	/**
+	 * Set when an error has been found while loading, so the elements loaded
+	 * might not be complete.
+	 */
+	private AtomicBoolean errors = new AtomicBoolean(false);
+	/**
+	 * Caches of dimensions (small and stable tables), by the query of the
+	 * selectors whose elements they hold.
+	 */
+	private HashMap<String, DimensionCache> dimensions = new HashMap<>();
+	/**
+	 * Dimensions are preloaded and taken from memory (as opposite to being
+	 * queried for each parent element).
+	 */
+	private boolean dimensionCache = true;
+	/**
+	 * Cache of rendered child elements (null if there is no cache)
+	 */
+	private FragmentCache fragmentCache = null;
+	/**
+	 * Queries of the child selectors whose elements are kept on the fragment
+	 * cache.
+	 */
+	private HashSet<String> memoized = new HashSet<>();
 
 	/**
 	 * Creates a loader for all elements.
@@ -143,126 +988,1400 @@ public abstract class PrstshpLoader {
 	}
 
 	/**
-	 * Load elements information from a PrestaShop database. The implementation of
-	 * this method should call to loadMainLevel() after setting the appropriate
-	 * DataSelector(s) required to load the main level elements as well as all child
-	 * elements.
+	 * Sets the number of parent elements whose children are retrieved with a
+	 * single query. Child selectors without a batch query are still run once per
+	 * parent.
+	 * 
+	 * @param batchSize
+	 *            Number of elements per block. Zero or less disables block loading.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the fetch mode of the main level. With a fetch size, the elements are
+	 * read from a forward-only, read-only cursor a few rows at a time, so the
+	 * client memory does not depend on the number of elements and documents are
+	 * assembled while the server is still sending rows. Child elements are then
+	 * queried on a sibling connection (see
+	 * MariaDBConnectionManager.getSiblingConnection()).
+	 * 
+	 * @param fetchSize
+	 *            Number of rows fetched at a time. Zero or less reads the whole
+	 *            result set at once.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Sets the paginated mode of the main level. Instead of a single query held
+	 * open for the whole load, the elements are read by short queries of a page
+	 * of rows each, every page starting after the last key of the previous one
+	 * ("key > last ORDER BY key LIMIT n"). Pages are filtered by the same
+	 * conditions as the single query (predicate, incremental load, partition).
+	 * 
+	 * @param pageSize
+	 *            Number of rows of each page. Zero or less reads the main level
+	 *            with a single query.
+	 * @param pagePause
+	 *            Milliseconds to wait between pages, to leave room for the rest
+	 *            of the database load (zero for no pause)
+	 */
+	public void setPageSize(int pageSize, long pagePause) {
+		this.pageSize = pageSize;
+		this.pagePause = Math.max(pagePause, 0);
+	}
+
+	/**
+	 * Sets the layout of the documents: indented, with the ISODate() dates of the
+	 * mongo shell (the default, easier to read), or compact, one document per
+	 * line, as MongoDB Extended JSON. Loaders sharing a fragment cache must use
+	 * the same layout.
+	 * 
+	 * @param compactJSON
+	 *            true to write compact Extended JSON documents
+	 */
+	public void setCompactJSON(boolean compactJSON) {
+		this.compactJSON = compactJSON;
+	}
+
+	/**
+	 * Sets the streaming mode. Each top level document is handed over to the sink
+	 * as soon as it is complete, and nothing is kept in memory, so dumpData()
+	 * has nothing left to write. The sink is not closed by the loader.
+	 * 
+	 * @param sink
+	 *            Destination of the documents, or null to keep them in memory.
+	 */
+	public void setDocumentSink(DocumentSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Sets the number of threads loading elements concurrently. Each thread uses
+	 * its own database connection.
+	 * 
+	 * @param threads
+	 *            Number of threads. One (or less) means no concurrency.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Enables or disables the caches of dimensions (see addDimension()).
+	 * 
+	 * @param dimensionCache
+	 *            true to preload the dimensions and take them from memory.
+	 */
+	public void setDimensionCache(boolean dimensionCache) {
+		this.dimensionCache = dimensionCache;
+	}
+
+	/**
+	 * Registers a dimension: a small and stable table whose elements are
+	 * embedded on many documents. All the child selectors with the given query
+	 * will take their elements from the cache instead of querying the database,
+	 * provided that they are the last level of their chain. Loaders call this
+	 * method before loadMainLevel().
+	 * 
+	 * @param query
+	 *            Query of the child selectors retrieving the dimension elements
+	 * @param cache
+	 *            Cache of the dimension
+	 */
+	protected void addDimension(String query, DimensionCache cache) {
+		dimensions.put(query, cache);
+	}
+
+	/**
+	 * Sets the cache of rendered child elements. The same cache can be shared by
+	 * several loaders.
+	 * 
+	 * @param fragmentCache
+	 *            The cache, or null to render all the child elements.
+	 */
+	public void setFragmentCache(FragmentCache fragmentCache) {
+		this.fragmentCache = fragmentCache;
+	}
+
+	/**
+	 * Marks the elements of a child selector as repeated on many documents, so
+	 * they are kept on the fragment cache (if any) once rendered. All the child
+	 * selectors with the given query are memoized, including their sub-levels.
+	 * Loaders call this method before loadMainLevel().
+	 * 
+	 * @param query
+	 *            Query of the child selectors
+	 */
+	protected void memoize(String query) {
+		memoized.add(query);
+	}
+
+	/**
+	 * Sets the incremental mode. Only the elements that have been changed since
+	 * a given time, or whose children have been changed since that time, are
+	 * loaded. The loader must provide a condition for changed elements (see
+	 * getChangedCondition()), otherwise all the elements are loaded.
+	 * 
+	 * @param changedSince
+	 *            Timestamp (yyyy-mm-dd hh:mm:ss), or null to load all elements.
+	 */
+	public void setChangedSince(String changedSince) {
+		if (changedSince != null && !changedSince.matches(TIMESTAMP_FORMAT)) {
+			throw new IllegalArgumentException("Invalid timestamp: " + changedSince);
+		}
+		this.changedSince = changedSince;
+	}
+
+	/**
+	 * @return Metrics of the load: queries, time, rows and JSON of each selector,
+	 *         and rates of the documents. Complete once the load is over.
+	 */
+	public LoaderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the progress reports of the load. Every so many seconds, a background
+	 * thread logs the documents done out of the number of elements of the main
+	 * level (counted before the load), the current rate, the estimated time to
+	 * finish, the average document size and the heap usage.
+	 * 
+	 * @param progressInterval
+	 *            Seconds between reports. Zero or less for no reports.
+	 */
+	public void setProgressInterval(int progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * Sets the pipelined mode of the load. The thread reading the main query only
+	 * renders the main level; blocks of batchSize elements are handed to several
+	 * threads loading their children, and a dedicated thread stores the
+	 * documents in order. Queues between them are bounded, and their depths are
+	 * reported on the metrics. It applies to loads on a single thread (partitions
+	 * are already loaded in parallel) and by blocks.
+	 * 
+	 * @param pipelineThreads
+	 *            Number of threads loading the children. Zero or less for no
+	 *            pipeline.
+	 */
+	public void setPipelineThreads(int pipelineThreads) {
+		this.pipelineThreads = pipelineThreads;
+	}
+
+	/**
+	 * Sets the parallel chains mode of the load. The chains of child selectors of
+	 * an element (or a block of elements) do not depend on each other, so they
+	 * are loaded at the same time, each on its own thread and pooled connection,
+	 * and then appended in the order they are declared. Virtual threads are used
+	 * when the JVM has them (Java 21 or later).
+	 * 
+	 * @param parallelChains
+	 *            true to load the child chains concurrently
+	 */
+	public void setParallelChains(boolean parallelChains) {
+		this.parallelChains = parallelChains;
+	}
+
+	/**
+	 * Sets the joined mode of the load. The first chains of child selectors made
+	 * of a single joinable selector (one object per parent, see DataSelector) are
+	 * LEFT JOINed into the main query and rendered from its rows, instead of
+	 * being queried apart. Documents do not change. Chains after the first one
+	 * that cannot be joined are always queried, so the children keep their
+	 * order.
+	 * 
+	 * @param joinSelectors
+	 *            true to join the joinable selectors into the main query
+	 */
+	public void setJoinSelectors(boolean joinSelectors) {
+		this.joinSelectors = joinSelectors;
+	}
+
+	/**
+	 * Sets the merge mode of the load. Each chain of child selectors keyed on the
+	 * main id (with a batch query, and not a dimension or memoized) is read by a
+	 * single scan of all the children sorted by parent, advanced in step with the
+	 * main level, instead of by a query per block or element. Sub-levels are still
+	 * loaded by blocks. It applies to full exports on a single thread without
+	 * pipeline: every scan reads all the children, and the parents must come in
+	 * order.
+	 * 
+	 * @param mergeChildren
+	 *            true to merge the children scans with the main level
+	 */
+	public void setMergeChildren(boolean mergeChildren) {
+		this.mergeChildren = mergeChildren;
+	}
+
+	/**
+	 * Sets where the elements are kept when not on streaming mode. With a spill
+	 * directory, documents are appended to files on a temporary directory
+	 * within it, and only their offsets are kept in memory, so loads larger than
+	 * the heap can still be dumped at the end. dumpData() then writes them in
+	 * the order of their keys, and frees the files.
+	 * 
+	 * @param spillDirectory
+	 *            Directory for the temporary files, or null to keep the elements
+	 *            in memory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Resumes an interrupted export: only the elements with a key greater than a
+	 * given one are loaded. Main level elements are always loaded in the order
+	 * of their keys, so those before had already been exported.
+	 * 
+	 * @param lastId
+	 *            Key of the last element exported, or null to load all elements.
+	 */
+	public void setResumeAfter(Integer lastId) {
+		this.resumeAfter = lastId;
+	}
+
+	/**
+	 * Condition on the main query that is true for the elements changed since a
+	 * given time, including those with changed children. The time is written
+	 * as CHANGED_SINCE_PLACEHOLDER. Loaders supporting the incremental mode
+	 * override this method.
+	 * 
+	 * @return The condition, or null if the loader does not support incremental
+	 *         loads.
+	 */
+	protected String getChangedCondition() {
+		return null;
+	}
+
+	/**
+	 * @return true if some error has been found while loading, so some elements
+	 *         might be missing or incomplete.
+	 */
+	public boolean hasErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Logs an error found while loading and remembers that the load is not
+	 * complete.
+	 * 
+	 * @param e
+	 *            The exception found
+	 */
+	private void logError(Exception e) {
+		errors.set(true);
+		MessageLogger.logUnmanagedException(e);
+	}
+
+	/**
+	 * Tells if the elements just retrieved can be kept on a cache shared with
+	 * other documents (and other loaders). Queries that fail log the error and
+	 * return what they have, so nothing is cached once the loader has found
+	 * errors: the elements might be incomplete.
+	 * 
+	 * @return true if the elements retrieved can be cached.
+	 */
+	private boolean isCacheable() {
+		return !errors.get();
+	}
+
+	/**
+	 * Builds the block version of a child selector query. The query must start
+	 * with SELECT and filter the parent with the condition "parentColumn = ?". The
+	 * resulting query returns the parent id as its first column, accepts a whole
+	 * list of parent ids and sorts the rows by parent before the original order,
+	 * so that the rows of each parent come in the same sequence as they do when
+	 * the original query is run for that parent alone. This only holds if the
+	 * original ORDER BY is complete (it ends on the key of the child, or the query
+	 * returns one row per parent): rows with equal sort keys may come in any
+	 * order.
+	 *
+	 * @param query
+	 *            Child selector query with one parameter (the parent id)
+	 * @param parentColumn
+	 *            Column (as written in the query) compared with the parameter
+	 * @return The batch query to be used on a DataSelector.
+	 */
+	protected static String batchQuery(String query, String parentColumn) {
+		return rewriteQuery(query, parentColumn, parentColumn + " IN (" + BATCH_IDS_PLACEHOLDER + ")");
+	}
+
+	/**
+	 * Builds the query retrieving a whole dimension from the query of its child
+	 * selector. The query must filter the key of the dimension with the condition
+	 * "keyColumn = ?". The resulting query has no parameters, and returns the key
+	 * as its first column and then the original columns.
+	 * 
+	 * @param query
+	 *            Child selector query with one parameter (the dimension key)
+	 * @param keyColumn
+	 *            Column (as written in the query) compared with the parameter
+	 * @return The query to be used on a DimensionCache.
+	 */
+	protected static String dimensionQuery(String query, String keyColumn) {
+		return rewriteQuery(query, keyColumn, "TRUE");
+	}
+
+	/**
+	 * Rewrites a child selector query (see batchQuery()): the parent column is
+	 * returned first, the condition on the parent is replaced and the rows are
+	 * sorted by parent.
+	 * 
+	 * @param query
+	 *            Child selector query with one parameter (the parent id)
+	 * @param parentColumn
+	 *            Column (as written in the query) compared with the parameter
+	 * @param newCondition
+	 *            Condition replacing "parentColumn = ?"
+	 * @return The rewritten query.
+	 */
+	private static String rewriteQuery(String query, String parentColumn, String newCondition) {
+		final String select = "SELECT ";
+		final String groupBy = " GROUP BY ";
+		final String orderBy = "ORDER BY ";
+		String condition = parentColumn + " = ?";
+		int where = query.lastIndexOf(condition);
+
+		if (!query.startsWith(select) || where < 0) {
+			throw new IllegalArgumentException("Query cannot be rewritten on " + parentColumn + ": " + query);
+		}
+
+		// Parent id goes first, then the original columns and conditions
+		StringBuilder batch = new StringBuilder(query.length() + 100);
+		batch.append(select).append(parentColumn).append(" AS ").append(BATCH_PARENT_ID_COLUMN).append(", ");
+		batch.append(query, select.length(), where);
+		batch.append(newCondition);
+
+		// Groups must not mix parents and rows are sorted by parent first
+		String tail = query.substring(where + condition.length());
+		tail = tail.replace(groupBy, groupBy + parentColumn + ", ");
+		if (tail.contains(orderBy)) {
+			tail = tail.replace(orderBy, orderBy + BATCH_PARENT_ID_COLUMN + ", ");
+		} else {
+			tail = tail + " " + orderBy + BATCH_PARENT_ID_COLUMN;
+		}
+		batch.append(tail);
+
+		return batch.toString();
+	}
+
+	/**
+	 * Load elements information from a PrestaShop database. The implementation of
+	 * this method should call to loadMainLevel() after setting the appropriate
+	 * DataSelector(s) required to load the main level elements as well as all child
+	 * elements.
+	 * 
+	 * @param con
+	 *            The database manager connection
+	 * @param shopName
+	 *            Name of the shop to identify generated top-level documents
+	 * @return The number of elements loaded.
+	 */
+	public abstract int load(com.indigoid.dbutils.MariaDBConnectionManager con, String shopName);
+
+	/**
+	 * Load the elements on the main level of the hierarchy and for each element
+	 * loaded, load all its descendants. Elements are loaded in the order of their
+	 * key column. When several threads are set, the range of ids is split into
+	 * partitions loaded concurrently, but the elements are still stored in the
+	 * same order.
+	 * 
+	 * @param con
+	 *            The database manager connection
+	 * @param shopName
+	 *            Name of the shop to identify generated top-level documents
+	 * @param mainSelector
+	 *            This is the selector for the main level. It must be a query
+	 *            without parameters.
+	 * @param selectors
+	 *            These are the selectors for the child elements. These selectors
+	 *            use a query with one parameter that is the parent' key element
+	 *            value.
+	 * @return The number of elements loaded.
+	 */
+	protected int loadMainLevel(MariaDBConnectionManager con, String shopName, DataSelector mainSelector,
+			DataSelector[][] selectors) {
+
+		// Leading single-object chains are folded into the main query
+		DataSelector[][] allSelectors = selectors;
+		int nJoined = 0;
+		if (joinSelectors && selectors != null) {
+			while (nJoined < selectors.length && selectors[nJoined].length == 1 && selectors[nJoined][0].isJoinable()) {
+				nJoined++;
+			}
+		}
+		joinedSelectors = new DataSelector[nJoined];
+		if (nJoined > 0) {
+			for (int i = 0; i < nJoined; i++) {
+				joinedSelectors[i] = selectors[i][0];
+			}
+			mainSelector = new DataSelector(mainSelector.getIdColumn(), mainSelector.getAttribute(),
+					joinQuery(mainSelector.getQuery(), joinedSelectors), false);
+			selectors = Arrays.copyOfRange(selectors, nJoined, selectors.length);
+		}
+
+		// Selectors are named by their path on the metrics
+		metrics.start(mainSelector.getAttribute());
+		SelectorMetrics mainMetrics = metrics.register(mainSelector.getQuery(), mainSelector.getAttribute());
+		if (allSelectors != null) {
+			for (DataSelector[] chain : allSelectors) {
+				String path = mainSelector.getAttribute();
+				for (DataSelector selector : chain) {
+					path += "." + selector.getAttribute();
+					metrics.register(selector.getQuery(), path);
+				}
+			}
+		}
+
+		// Conditions for the main query
+		List<String> conditions = new ArrayList<>();
+		if (!this.predicate.equals(PREDICATE_ALL_ELEMENTS)) {
+			conditions.add(predicate);
+		}
+		if (changedSince != null) {
+			String changedCondition = getChangedCondition();
+			if (changedCondition != null) {
+				conditions.add(changedCondition.replace(CHANGED_SINCE_PLACEHOLDER, "'" + changedSince + "'"));
+			} else {
+				MessageLogger.logMessage(MessageType.WARNING,
+						mainSelector.getAttribute() + " loader does not support incremental loads. Loading all");
+			}
+		}
+
+		if (resumeAfter != null) {
+			conditions.add(mainSelector.getIdColumn() + " > " + resumeAfter);
+		}
+
+		// Dimensions are loaded once, before any element
+		if (dimensionCache) {
+			dimensions.forEach((query, d) -> preloadDimension(con, query, d));
+		}
+
+		// Elements go to the sink on streaming mode, or to the hash map (or the
+		// spill store) otherwise
+		if (sink == null && spillDirectory != null && store == null) {
+			try {
+				store = new SegmentDocumentStore(spillDirectory);
+			} catch (IOException e) {
+				MessageLogger.logMessage(MessageType.WARNING, "Cannot spill " + mainSelector.getAttribute() + " to "
+						+ spillDirectory + " (" + e.getMessage() + "). Keeping them in memory");
+			}
+		}
+		DocumentSink target = metrics.meter((sink != null) ? sink : new ElementsSink(), mainMetrics);
+
+		// Number of elements and range of ids, for partitions and progress reports
+		long[] range = null;
+		if (threads > 1 || progressInterval > 0) {
+			try {
+				range = countMainLevel(con, mainSelector, conditions);
+			} catch (SQLException e) {
+				if (threads > 1) {
+					logError(e);
+				} else {
+					// Not fatal: progress is reported without a total
+					MessageLogger.logMessage(MessageType.WARNING,
+							"Number of " + mainSelector.getAttribute() + " elements cannot be estimated");
+					MessageLogger.logUnmanagedException(e);
+				}
+			}
+		}
+
+		// A single thread reading the main query can hand its blocks to a pipeline
+		Pipeline pipeline = null;
+		if (threads <= 1 && pipelineThreads > 0) {
+			if (batchSize > 0) {
+				pipeline = new Pipeline(con, selectors, target, pipelineThreads);
+			} else {
+				MessageLogger.logMessage(MessageType.WARNING,
+						"Pipelined loads need a batch size. Loading " + mainSelector.getAttribute() + " without pipeline");
+			}
+		}
+
+		// Children keyed on the main id are read by scans merged with the main level
+		if (mergeChildren && selectors != null) {
+			if (threads > 1 || pipeline != null || !predicate.equals(PREDICATE_ALL_ELEMENTS) || changedSince != null) {
+				MessageLogger.logMessage(MessageType.WARNING, "Children scans need a full export on a single thread. Loading "
+						+ mainSelector.getAttribute() + " without them");
+			} else {
+				childScans = openChildScans(con, mainSelector, selectors);
+			}
+		}
+
+		// Child chains run on their own threads (if there are several of them)
+		if (parallelChains && selectors != null && selectors.length > 1) {
+			chainExecutor = newChainExecutor(mainSelector.getAttribute());
+		}
+
+		ProgressReporter progress = (progressInterval > 0) ? new ProgressReporter(mainSelector.getAttribute(),
+				metrics, (range != null) ? range[0] : -1, progressInterval) : null;
+		int nElements = 0;
+		try {
+			if (threads > 1) {
+				nElements = loadPartitions(con, shopName, mainSelector, selectors, conditions, range, target);
+			} else {
+				nElements = loadRange(con, shopName, mainSelector, selectors, conditions, target, pipeline);
+			}
+		} finally {
+			// The pipeline stores the blocks handed to it, even if reading stopped early
+			if (pipeline != null) {
+				try {
+					pipeline.finish();
+				} catch (InterruptedException e) {
+					logError(e);
+				}
+			}
+			if (progress != null) {
+				progress.close();
+			}
+			if (chainExecutor != null) {
+				chainExecutor.shutdownNow();
+				chainExecutor = null;
+			}
+			if (childScans != null) {
+				for (ChildScan scan : childScans) {
+					if (scan != null) {
+						scan.close();
+					}
+				}
+				childScans = null;
+			}
+		}
+
+		// How well the dimensions did
+		if (dimensionCache) {
+			dimensions.values().forEach(d -> MessageLogger.logMessage(MessageType.INFO, d.toString()));
+		}
+
+		metrics.stop();
+		return nElements;
+	}
+
+	/**
+	 * Opens the scans of the chains of child selectors that can be merged with the
+	 * main level: those with a batch query, keyed on the main id (not on a link
+	 * column), and neither dimensions nor memoized. Each scan takes a connection
+	 * of the pool for the whole load, as long as one is left free for the other
+	 * queries. A chain whose scan cannot be opened is queried by blocks.
+	 * 
+	 * @param con
+	 *            The database manager connection
+	 * @param mainSelector
+	 *            Selector for the main level
+	 * @param selectors
+	 *            Selectors for the child elements
+	 * @return The scan of each chain (null for the chains not scanned).
+	 */
+	private ChildScan[] openChildScans(MariaDBConnectionManager con, DataSelector mainSelector,
+			DataSelector[][] selectors) {
+		ChildScan[] scans = new ChildScan[selectors.length];
+		int nScans = 0;
+		for (int index = 0; index < selectors.length; index++) {
+			DataSelector[] chain = selectors[index];
+			if (chain[0].getBatchQuery() == null
+					|| mainSelector.getQuery().contains(LINK_COLUMN_PREFIX + chain[0].getIdColumn())
+					|| getDimension(chain) != null || isMemoized(chain)) {
+				continue;
+			}
+			try {
+				scans[index] = new ChildScan(con, chain);
+				nScans++;
+			} catch (SQLException e) {
+				// Not fatal: the chain is queried by blocks
+				MessageLogger.logMessage(MessageType.WARNING,
+						"Children " + chain[0].getAttribute() + " cannot be scanned. Querying them by blocks");
+				MessageLogger.logUnmanagedException(e);
+			}
+		}
+		MessageLogger.logMessage(MessageType.INFO, nScans + " children scans of " + mainSelector.getAttribute()
+				+ " open, each on its own connection of the pool");
+		return scans;
+	}
+
+	/**
+	 * Loads all the elements of a dimension into its cache.
+	 * 
+	 * @param con
+	 *            The database manager connection
+	 * @param query
+	 *            Query of the selectors whose elements the dimension holds
+	 * @param cache
+	 *            Cache of the dimension
+	 */
+	private void preloadDimension(MariaDBConnectionManager con, String query, DimensionCache cache) {
+
+		MyStatement stmt = null;
+		int nCols, index;
+		long nRows = 0, nChars = 0;
+		SelectorMetrics selectorMetrics = metrics.get(query);
+
+		try {
+			// Get a statement
+			stmt = con.acquireStatement();
+
+			// Execute the query to retrieve the whole dimension
+			long start = System.nanoTime();
+			ResultSet rs = stmt.executeQuery(cache.getPreloadQuery());
+			selectorMetrics.addQuery(System.nanoTime() - start);
+
+			// Retrieve metadata
+			ResultSetMetaData md = rs.getMetaData();
+			nCols = md.getColumnCount();
+
+			// From metadata retrieve column names and types
+			String[] colNames = new String[nCols + 1];
+			int[] colTypes = new int[nCols + 1];
+			for (index = 1; index <= nCols; index++) {
+				colNames[index] = md.getColumnLabel(index);
+				colTypes[index] = md.getColumnType(index);
+			}
+
+			// Each row is one element, under the key on the first column
+			JSONWriter json = new JSONWriter(compactJSON);
+			while (rs.next()) {
+				json.reset();
+				json.beginObject();
+				for (index = 2; index <= nCols; index++) {
+					data2JSON(rs, index, colNames[index], colTypes[index], json);
+				}
+				json.endObject();
+				cache.add(rs.getInt(1), json.toString());
+				nRows++;
+				nChars += json.length();
+			}
+			selectorMetrics.addRows(nRows, nChars);
+
+		} catch (SQLException e) {
+			// Not fatal: elements not preloaded are queried when needed
+			MessageLogger.logMessage(MessageType.WARNING, cache.getName() + " dimension cannot be preloaded");
+			MessageLogger.logUnmanagedException(e);
+			cache.clear();
+		} finally {
+			try {
+				con.relaseStatement(stmt);
+			} catch (SQLException e) {
+				/* Ignore error */ }
+		}
+	}
+
+	/**
+	 * Finds the dimension cache holding the elements of a chain of selectors.
+	 * Only the last selector of a chain can be taken from a dimension.
+	 * 
+	 * @param selectors
+	 *            Levels to process in the hierarchy
+	 * @return The cache, or null if the elements must be queried.
+	 */
+	private DimensionCache getDimension(DataSelector[] selectors) {
+		if (!dimensionCache || selectors.length != 1) {
+			return null;
+		}
+		return dimensions.get(selectors[0].getQuery());
+	}
+
+	/**
+	 * Builds the query for the main level: the main selector query, filtered by
+	 * the given conditions and sorted by the key column.
+	 * 
+	 * @param mainSelector
+	 *            Selector for the main level
+	 * @param conditions
+	 *            Conditions that the elements must follow (might be empty)
+	 * @return The SQL query.
+	 */
+	private static String buildMainQuery(DataSelector mainSelector, List<String> conditions) {
+		StringBuilder query = new StringBuilder();
+		query.append(mainSelector.getQuery());
+		appendConditions(query, conditions);
+		query.append(" ORDER BY ").append(mainSelector.getIdColumn());
+		return query.toString();
+	}
+
+	/**
+	 * Folds selectors into the main query. Each one is LEFT JOINed as a derived
+	 * table (its batch query for all the parents) on its join column, and all its
+	 * columns are added after the main ones. The parent id column
+	 * (batch_parent_id) starts the columns of each selector, and it is null when
+	 * the parent has no child.
+	 * 
+	 * @param mainQuery
+	 *            Main query (SELECT ... FROM ... without conditions)
+	 * @param joined
+	 *            Selectors to join, in order
+	 * @return The main query with the selectors joined.
+	 */
+	private static String joinQuery(String mainQuery, DataSelector[] joined) {
+		final String from = " FROM ";
+		int fromIndex = mainQuery.indexOf(from);
+
+		StringBuilder query = new StringBuilder(mainQuery.length() * 2);
+		query.append(mainQuery, 0, fromIndex);
+		for (int i = 1; i <= joined.length; i++) {
+			query.append(", ").append(JOINED_SELECTOR_ALIAS).append(i).append(".*");
+		}
+		query.append(' ').append(mainQuery.substring(fromIndex).trim());
+
+		for (int i = 1; i <= joined.length; i++) {
+			String alias = JOINED_SELECTOR_ALIAS + i;
+			query.append(" LEFT JOIN (").append(allParentsQuery(joined[i - 1].getBatchQuery(), null)).append(") AS ")
+					.append(alias);
+			query.append(" ON ").append(alias).append('.').append(BATCH_PARENT_ID_COLUMN).append(" = ")
+					.append(joined[i - 1].getJoinColumn());
+		}
+		return query.toString();
+	}
+
+	/**
+	 * Builds the version of a batch query for all the parents: its list of
+	 * parents is replaced by a condition that is always true, or that selects the
+	 * parents after a given one. Rows are still sorted by parent.
+	 * 
+	 * @param batchQuery
+	 *            Batch query (see batchQuery())
+	 * @param after
+	 *            Only the parents after this id are selected (null for all)
+	 * @return The query for all the parents.
+	 */
+	private static String allParentsQuery(String batchQuery, Integer after) {
+		final String in = " IN (" + BATCH_IDS_PLACEHOLDER + ")";
+		int inIndex = batchQuery.lastIndexOf(in);
+		int columnIndex = batchQuery.lastIndexOf(' ', inIndex - 1) + 1;
+		String condition = (after != null) ? batchQuery.substring(columnIndex, inIndex) + " > " + after : "TRUE";
+		return batchQuery.substring(0, columnIndex) + condition + batchQuery.substring(inIndex + in.length());
+	}
+
+	/**
+	 * Builds the query for a page of the main level: the main query restricted to
+	 * the keys after the last one of the previous page, and limited to a page of
+	 * rows.
+	 * 
+	 * @param mainSelector
+	 *            Selector for the main level
+	 * @param conditions
+	 *            Conditions that the elements must follow (might be empty)
+	 * @param lastId
+	 *            Key of the last element of the previous page (null for the first
+	 *            page)
+	 * @return The SQL query.
+	 */
+	private String buildPageQuery(DataSelector mainSelector, List<String> conditions, Integer lastId) {
+		List<String> pageConditions = conditions;
+		if (lastId != null) {
+			pageConditions = new ArrayList<>(conditions);
+			pageConditions.add(mainSelector.getIdColumn() + " > " + lastId);
+		}
+		return buildMainQuery(mainSelector, pageConditions) + " LIMIT " + pageSize;
+	}
+
+	/**
+	 * Appends a WHERE clause with all the conditions to a query. Nothing is
+	 * appended if there are no conditions.
+	 * 
+	 * @param query
+	 *            Query being built
+	 * @param conditions
+	 *            Conditions to be appended
+	 */
+	private static void appendConditions(StringBuilder query, List<String> conditions) {
+		if (conditions.size() == 1) {
+			query.append(" WHERE ").append(conditions.get(0));
+		} else if (conditions.size() > 1) {
+			query.append(" WHERE (").append(String.join(") AND (", conditions)).append(")");
+		}
+	}
+
+	/**
+	 * Loads the elements of the main level selected by some conditions and all
+	 * its descendants, and stores them into a sink.
+	 * 
+	 * @param con
+	 *            The database manager connection
+	 * @param shopName
+	 *            Name of the shop to identify generated top-level documents
+	 * @param mainSelector
+	 *            Selector for the main level
+	 * @param selectors
+	 *            Selectors for the child elements
+	 * @param conditions
+	 *            Conditions that the elements must follow (might be empty)
+	 * @param target
+	 *            Where the elements are stored
+	 * @param pipeline
+	 *            Pipeline loading the children of the blocks and storing them, or
+	 *            null to do it on this thread
+	 * @return The number of elements loaded.
+	 */
+	private int loadRange(MariaDBConnectionManager con, String shopName, DataSelector mainSelector,
+			DataSelector[][] selectors, List<String> conditions, DocumentSink target, Pipeline pipeline) {
+
+		MyStatement stmt = null;
+		MariaDBConnectionManager childCon = con;
+		Integer elementId = null;
+		int nCols, nElements, nPageRows, index;
+		String keyColumn = mainSelector.getIdColumn();
+		String shopNameHash = "/" + shopName.hashCode() + "/";
+		boolean paginated = (pageSize > 0);
+		SelectorMetrics mainMetrics = metrics.get(mainSelector.getQuery());
+
+		// Build the query with or without conditions (first page)
+		String query = paginated ? buildPageQuery(mainSelector, conditions, null)
+				: buildMainQuery(mainSelector, conditions);
+
+		// Nothing loaded so far
+		nElements = 0;
+
+		// Elements waiting for their children when loading by blocks. Their writers
+		// are reused by the next blocks (unless the blocks go to the pipeline).
+		List<Integer> blockIds = new ArrayList<>();
+		List<JSONWriter> blockJsons = new ArrayList<>();
+		List<HashMap<String, Integer>> blockLinks = new ArrayList<>();
+
+		// Writer for the children joined into the main query
+		JSONWriter joinedJson = new JSONWriter(compactJSON);
+
+		try {
+			// Get a statement. A streaming cursor keeps its connection busy, so the
+			// children are queried on the sibling connection.
+			if (fetchSize > 0) {
+				stmt = con.acquireStreamingStatement(fetchSize);
+				childCon = con.getSiblingConnection();
+			} else {
+				stmt = con.acquireStatement();
+			}
+
+			// Main level is read page by page, or by a single query
+			do {
+				// Execute the query to retrieve top level elements
+				long start = System.nanoTime();
+				ResultSet rs = stmt.executeQuery(query);
+				mainMetrics.addQuery(System.nanoTime() - start);
+
+				// Retrieve metadata
+				ResultSetMetaData md = rs.getMetaData();
+				nCols = md.getColumnCount();
+
+				// From metadata retrieve column names and types
+				String[] colNames = new String[nCols + 1];
+				int[] colTypes = new int[nCols + 1];
+				for (index = 1; index <= nCols; index++) {
+					colNames[index] = md.getColumnLabel(index);
+					colTypes[index] = md.getColumnType(index);
+				}
+
+				// Joined selector of each column (-1 for the main level). The columns of
+				// each joined selector start with its parent id.
+				int[] colJoined = new int[nCols + 1];
+				int joined = -1;
+				for (index = 1; index <= nCols; index++) {
+					if (joined + 1 < joinedSelectors.length && colNames[index].equals(BATCH_PARENT_ID_COLUMN)) {
+						joined++;
+					}
+					colJoined[index] = joined;
+				}
+
+				// Main loop: Iterate over each row
+				nPageRows = 0;
+				while (rs.next() && (pipeline == null || !pipeline.hasFailed())) {
+
+					// Reuse a writer for this element
+					int blockIndex = (batchSize > 0) ? blockIds.size() : 0;
+					if (blockIndex == blockJsons.size()) {
+						blockJsons.add(new JSONWriter(compactJSON));
+					}
+					JSONWriter json = blockJsons.get(blockIndex);
+					json.reset();
+					json.beginObject();
+					HashMap<String, Integer> links = new HashMap<>();
+
+					// Added properties (top-level documents only)
+					json.appendString(DOCUMENT_TYPE_PROPERTY, mainSelector.getAttribute());
+					json.appendString(SHOP_NAME_PROPERTY, shopName);
+
+					// For each column (1..nCols)
+					joined = -1;
+					boolean joinedChild = false;
+					for (index = 1; index <= nCols; index++) {
+
+						// Columns of the joined selectors are rendered as their children. A null
+						// parent id means there is no child.
+						if (colJoined[index] >= 0) {
+							if (colJoined[index] != joined) {
+								if (joinedChild) {
+									appendJoinedChild(json, joinedSelectors[joined], joinedJson);
+								}
+								joined = colJoined[index];
+								rs.getInt(index);
+								joinedChild = !rs.wasNull();
+								if (joinedChild) {
+									joinedJson.reset();
+									joinedJson.beginObject();
+								}
+							} else if (joinedChild) {
+								data2JSON(rs, index, colNames[index], colTypes[index], joinedJson);
+							}
+							continue;
+						}
+
+						// If current column is key column, store the index value, so it can be used at
+						// the end of the loop as the key to the hash map.
+						// Also add an "_id" property to conform MongoDB standards. The _id is created
+						// using this element id plus the hash code of the shop name (enclosed into / /)
+						String colName = colNames[index];
+						if (colName.equals(keyColumn)) {
+							elementId = rs.getInt(index);
+							json.appendString(MONGODB_COLLECTION_UNIQUE_ID, elementId + shopNameHash);
+						}
+
+						// Link columns are kept apart (null values mean no link)
+						if (colName.startsWith(LINK_COLUMN_PREFIX)) {
+							int linkValue = rs.getInt(index);
+							links.put(colName.substring(LINK_COLUMN_PREFIX.length()), rs.wasNull() ? null : linkValue);
+							continue;
+						}
+
+						// Convert this column to JSON format
+						data2JSON(rs, index, colName, colTypes[index], json);
+					}
+					if (joinedChild) {
+						appendJoinedChild(json, joinedSelectors[joined], joinedJson);
+					}
+
+					if (batchSize > 0) {
+						// Sub-levels are loaded once the block is full
+						blockIds.add(elementId);
+						blockLinks.add(links);
+						if (blockIds.size() >= batchSize) {
+							if (pipeline != null) {
+								pipeline.submit(blockIds, blockJsons, blockLinks);
+								blockIds = new ArrayList<>();
+								blockJsons = new ArrayList<>();
+								blockLinks = new ArrayList<>();
+							} else {
+								loadBlock(childCon, blockIds, blockJsons, blockLinks, selectors, target);
+								blockIds.clear();
+								blockLinks.clear();
+							}
+						}
+					} else {
+						// Load sub-levels
+						if (selectors != null) {
+							Integer id = elementId;
+							MariaDBConnectionManager chainCon = childCon;
+							List<List<String>> children = loadChains(selectors.length, chain -> {
+								Integer parentId = parentId(selectors[chain][0], id, links);
+								if (parentId != null && childScans != null && childScans[chain] != null) {
+									return childScans[chain].load(chainCon, Collections.singletonList(parentId)).get(parentId);
+								}
+								return (parentId != null) ? loadChildElements(chainCon, parentId, selectors[chain]) : null;
+							});
+							for (index = 0; index < selectors.length; index++) {
+								appendChildElements(json, selectors[index][0], children.get(index));
+							}
+						}
+
+						// Store the final JSON
+						json.endObject();
+						target.write(elementId, json.toString());
+					}
+
+					// One more element loaded
+					nElements++;
+					nPageRows++;
+				}
+
+				mainMetrics.addRows(nPageRows, 0);
+
+				// Next page starts after the last element, once the pause is over
+				if (paginated && nPageRows == pageSize) {
+					query = buildPageQuery(mainSelector, conditions, elementId);
+					if (pagePause > 0) {
+						Thread.sleep(pagePause);
+					}
+				} else {
+					query = null;
+				}
+			} while (query != null);
+
+			// Last (incomplete) block
+			if (!blockIds.isEmpty() && pipeline != null) {
+				pipeline.submit(blockIds, blockJsons, blockLinks);
+			} else if (!blockIds.isEmpty()) {
+				loadBlock(childCon, blockIds, blockJsons, blockLinks, selectors, target);
+			}
+
+		} catch (SQLException | IOException | InterruptedException e) {
+			logError(e);
+		} finally {
+			try {
+				con.relaseStatement(stmt);
+			} catch (SQLException e) {
+				/* Ignore error */ }
+		}
+
+		// Number of elements loaded on this instance
+		return nElements;
+	}
+
+	/**
+	 * Counts the elements of the main level selected by some conditions, and finds
+	 * their range of ids.
 	 * 
 	 * @param con
 	 *            The database manager connection
-	 * @param shopName
-	 *            Name of the shop to identify generated top-level documents
-	 * @return The number of elements loaded.
+	 * @param mainSelector
+	 *            Selector for the main level
+	 * @param conditions
+	 *            Conditions that the elements must follow (might be empty)
+	 * @return Number of elements, lowest id and highest id (zeros if there are no
+	 *         elements).
+	 * @throws SQLException
+	 *             When the elements cannot be counted
 	 */
-	public abstract int load(com.indigoid.dbutils.MariaDBConnectionManager con, String shopName);
+	private long[] countMainLevel(MariaDBConnectionManager con, DataSelector mainSelector, List<String> conditions)
+			throws SQLException {
+
+		MyStatement stmt = null;
+		long[] range = new long[3];
+		String keyColumn = mainSelector.getIdColumn();
+		String mainQuery = mainSelector.getQuery();
+
+		// Same FROM and conditions as the main query
+		StringBuilder query = new StringBuilder();
+		query.append("SELECT COUNT(*), MIN(").append(keyColumn).append("), MAX(").append(keyColumn).append(") ");
+		query.append(mainQuery.substring(mainQuery.indexOf("FROM ")));
+		appendConditions(query, conditions);
+
+		try {
+			stmt = con.acquireStatement();
+			long start = System.nanoTime();
+			ResultSet rs = stmt.executeQuery(query.toString());
+			metrics.get(mainSelector.getQuery()).addQuery(System.nanoTime() - start);
+			if (rs.next()) {
+				range[0] = rs.getLong(1);
+				range[1] = rs.getLong(2);
+				range[2] = rs.getLong(3);
+			}
+		} finally {
+			try {
+				con.relaseStatement(stmt);
+			} catch (SQLException e) {
+				/* Ignore error */ }
+		}
+		return range;
+	}
 
 	/**
-	 * Load the elements on the main level of the hierarchy and for each element
-	 * loaded, load all its descendants.
+	 * Parallel version of loadRange(). The range of ids of the main level is split
+	 * into partitions of about batchSize elements. Each worker thread takes its
+	 * own connection from the pool of the manager and loads one partition after
+	 * another. Partitions are stored into the target in order, so the output does
+	 * not depend on the number of threads. Only a few partitions per thread are
+	 * kept in memory waiting for their turn.
 	 * 
 	 * @param con
 	 *            The database manager connection
 	 * @param shopName
 	 *            Name of the shop to identify generated top-level documents
 	 * @param mainSelector
-	 *            This is the selector for the main level. It must be a query
-	 *            without parameters.
+	 *            Selector for the main level
 	 * @param selectors
-	 *            These are the selectors for the child elements. These selectors
-	 *            use a query with one parameter that is the parent' key element
-	 *            value.
+	 *            Selectors for the child elements
+	 * @param conditions
+	 *            Conditions that the elements must follow (might be empty)
+	 * @param range
+	 *            Number of elements, lowest and highest id (see
+	 *            countMainLevel()), or null if they are not known
+	 * @param target
+	 *            Where the elements are stored
 	 * @return The number of elements loaded.
 	 */
-	protected int loadMainLevel(MariaDBConnectionManager con, String shopName, DataSelector mainSelector,
-			DataSelector[][] selectors) {
+	private int loadPartitions(MariaDBConnectionManager con, String shopName, DataSelector mainSelector,
+			DataSelector[][] selectors, List<String> conditions, long[] range, DocumentSink target) {
 
-		MyStatement stmt = null;
-		Integer elementId = null;
-		int nCols, nElements, index;
+		// Nothing to split without elements (or if they could not be counted)
+		if (range == null || range[0] == 0) {
+			return 0;
+		}
+		long nRows = range[0], minId = range[1], maxId = range[2];
 		String keyColumn = mainSelector.getIdColumn();
-		String shopNameHash = "/" + shopName.hashCode() + "/";
 
-		// Build the query with or without predicate
-		StringBuilder query = new StringBuilder();
-		query.append(mainSelector.getQuery());
-		if (!this.predicate.equals(PREDICATE_ALL_ELEMENTS)) {
-			query.append(" WHERE ").append(predicate);
+		// Split the range of ids into partitions of (about) the same size
+		long partitionSize = (batchSize > 0) ? batchSize : DEFAULT_BATCH_SIZE;
+		long nPartitions = Math.max(threads, (nRows + partitionSize - 1) / partitionSize);
+		long width = Math.max(1, (maxId - minId + nPartitions) / nPartitions);
+		List<String> ranges = new ArrayList<>();
+		for (long low = minId; low <= maxId; low += width) {
+			ranges.add(keyColumn + " BETWEEN " + low + " AND " + Math.min(low + width - 1, maxId));
 		}
 
-		// Nothing loaded so far
-		nElements = 0;
+		// One result per partition, filled in by the workers
+		List<CompletableFuture<PartitionBuffer>> results = new ArrayList<>();
+		for (int i = 0; i < ranges.size(); i++) {
+			results.add(new CompletableFuture<>());
+		}
 
-		try {
-			// Get a statement
-			stmt = con.acquireStatement();
+		// Workers take the partitions in order, as long as there are not too many
+		// of them waiting to be stored
+		Semaphore pending = new Semaphore(threads * 2);
+		AtomicInteger nextPartition = new AtomicInteger(0);
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			workers.execute(() -> {
+				try {
+					while (true) {
+						pending.acquire();
+						int partition = nextPartition.getAndIncrement();
+						if (partition >= ranges.size()) {
+							break;
+						}
 
-			// Execute the query to retrieve top level elements
-			ResultSet rs = stmt.executeQuery(query.toString());
+						List<String> partitionConditions = new ArrayList<>(conditions);
+						partitionConditions.add(ranges.get(partition));
 
-			// Retrieve metadata
-			ResultSetMetaData md = rs.getMetaData();
-			nCols = md.getColumnCount();
+						PartitionBuffer buffer = new PartitionBuffer();
+						loadRange(con, shopName, mainSelector, selectors, partitionConditions, buffer, null);
+						results.get(partition).complete(buffer);
+					}
+				} catch (Exception e) {
+					// Do not let the partitions of this worker be waited for ever
+					results.forEach(r -> r.completeExceptionally(e));
+				}
+			});
+		}
+		workers.shutdown();
 
-			// From metadata retrieve column names and types
-			String[] colNames = new String[nCols + 1];
-			int[] colTypes = new int[nCols + 1];
-			for (index = 1; index <= nCols; index++) {
-				colNames[index] = md.getColumnLabel(index);
-				colTypes[index] = md.getColumnType(index);
+		// Store the partitions in order
+		int nElements = 0;
+		try {
+			for (CompletableFuture<PartitionBuffer> result : results) {
+				nElements += result.get().writeTo(target);
+				pending.release();
 			}
+		} catch (InterruptedException | ExecutionException | IOException e) {
+			logError(e);
+			workers.shutdownNow();
+		}
 
-			// Main loop: Iterate over each row
-			while (rs.next()) {
-
-				// Create a JSON for this element
-				JSONBuilder json = new JSONBuilder(0);
-
-				// Added properties (top-level documents only)
-				json.appendString(DOCUMENT_TYPE_PROPERTY, mainSelector.getAttribute());
-				json.appendString(SHOP_NAME_PROPERTY, shopName);
-
-				// For each column (1..nCols)
-				for (index = 1; index <= nCols; index++) {
+		// Number of elements loaded on this instance
+		return nElements;
+	}
 
-					// If current column is key column, store the index value, so it can be used at
-					// the end of the loop as the key to the hash map.
-					// Also add an "_id" property to conform MongoDB standards. The _id is created
-					// using this element id plus the hash code of the shop name (enclosed into / /)
-					String colName = colNames[index];
-					if (colName.equals(keyColumn)) {
-						elementId = rs.getInt(index);
-						json.appendString(MONGODB_COLLECTION_UNIQUE_ID, elementId + shopNameHash);
-					}
+	/**
+	 * Loads the children of a block of top level elements and stores the final
+	 * JSON of each element.
+	 * 
+	 * @param con
+	 *            Database connection manager.
+	 * @param blockIds
+	 *            Ids of the elements on the block.
+	 * @param blockJsons
+	 *            JSON representation of the elements on the block (same order).
+	 *            There might be more writers than elements.
+	 * @param blockLinks
+	 *            Link columns of the elements on the block (same order).
+	 * @param selectors
+	 *            Selectors for the child elements (might be null).
+	 * @param target
+	 *            Where the elements are stored
+	 * @throws IOException
+	 *             When an element cannot be written (streaming mode)
+	 */
+	private void loadBlock(MariaDBConnectionManager con, List<Integer> blockIds, List<JSONWriter> blockJsons,
+			List<HashMap<String, Integer>> blockLinks, DataSelector[][] selectors, DocumentSink target)
+			throws IOException {
 
-					// Convert this column to JSON format
-					data2JSON(rs, index, colName, colTypes[index], json);
+		// Children are appended chain by chain, so each element gets them in the
+		// same order as when they are loaded one element at a time
+		if (selectors != null) {
+			List<HashMap<Integer, List<String>>> children = loadChains(selectors.length, chain -> {
+				LinkedHashSet<Integer> distinctIds = new LinkedHashSet<>();
+				for (int i = 0; i < blockIds.size(); i++) {
+					distinctIds.add(parentId(selectors[chain][0], blockIds.get(i), blockLinks.get(i)));
 				}
-
-				// Load sub-levels
-				if (selectors != null) {
-					for (index = 0; index < selectors.length; index++) {
-						loadChildElements(con, elementId, json, 1, selectors[index]);
+				distinctIds.remove(null);
+				return (childScans != null && childScans[chain] != null) ? childScans[chain].load(con, distinctIds)
+						: loadChildBlock(con, distinctIds, selectors[chain]);
+			});
+			for (int index = 0; index < selectors.length; index++) {
+				for (int i = 0; i < blockIds.size(); i++) {
+					Integer parentId = parentId(selectors[index][0], blockIds.get(i), blockLinks.get(i));
+					if (parentId != null) {
+						appendChildElements(blockJsons.get(i), selectors[index][0], children.get(index).get(parentId));
 					}
 				}
+			}
+		}
+
+		// Store the final JSON
+		for (int i = 0; i < blockIds.size(); i++) {
+			JSONWriter json = blockJsons.get(i);
+			json.endObject();
+			target.write(blockIds.get(i), json.toString());
+		}
+	}
+
+	/**
+	 * Appends to a top level element the child rendered from the columns of a
+	 * selector joined into the main query.
+	 * 
+	 * @param json
+	 *            JSON representation of the element (still open)
+	 * @param selector
+	 *            Joined selector
+	 * @param child
+	 *            JSON representation of the child (still open)
+	 */
+	private void appendJoinedChild(JSONWriter json, DataSelector selector, JSONWriter child) {
+		child.endObject();
+		appendChildElements(json, selector, Collections.singletonList(child.toString()));
+		metrics.get(selector.getQuery()).addRows(1, child.length());
+	}
 
-				// Store the final JSON on the hash map
-				elements.put(elementId, json.toString());
+	/**
+	 * Loads the child chains of an element (or a block of elements). In parallel
+	 * chains mode every chain but the first one runs on its own thread; the first
+	 * one runs on this thread, with the connection it already holds, and then it
+	 * waits for the others. Otherwise they run here one after the other.
+	 * 
+	 * @param nChains
+	 *            Number of chains
+	 * @param chain
+	 *            Loads the children of a chain, given its index
+	 * @return The children of each chain, in the same order as the chains (null
+	 *         for a chain that failed).
+	 */
+	private <T> List<T> loadChains(int nChains, IntFunction<T> chain) {
 
-				// One more element loaded
-				nElements++;
+		List<T> children = new ArrayList<>(nChains);
+		if (chainExecutor == null || nChains < 2) {
+			for (int index = 0; index < nChains; index++) {
+				children.add(chain.apply(index));
 			}
+			return children;
+		}
 
-		} catch (SQLException e) {
-			MessageLogger.logUnmanagedException(e);
-		} finally {
+		List<Future<T>> futures = new ArrayList<>(nChains);
+		for (int index = 1; index < nChains; index++) {
+			int chainIndex = index;
+			futures.add(chainExecutor.submit(() -> chain.apply(chainIndex)));
+		}
+		try {
+			children.add(chain.apply(0));
+		} catch (RuntimeException e) {
+			logError(e);
+			children.add(null);
+		}
+		for (Future<T> future : futures) {
 			try {
-				con.relaseStatement(stmt);
-			} catch (SQLException e) {
-				/* Ignore error */ }
+				children.add(future.get());
+			} catch (ExecutionException e) {
+				logError((e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+				children.add(null);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logError(e);
+				children.add(null);
+			}
 		}
+		return children;
+	}
 
-		// Number of elements loaded on this instance
-		return nElements;
+	/**
+	 * Creates the threads running the child chains: a virtual thread per chain
+	 * when the JVM has them (Java 21 or later, found by reflection so this still
+	 * runs on Java 8), or else a pool of daemon threads growing as needed.
+	 * 
+	 * @param name
+	 *            Name of the elements loaded (for the threads)
+	 * @return The executor of the child chains.
+	 */
+	private static ExecutorService newChainExecutor(String name) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			MessageLogger.logMessage(MessageType.INFO, "Child chains of " + name + " run on virtual threads");
+			return executor;
+		} catch (ReflectiveOperationException e) {
+			MessageLogger.logMessage(MessageType.INFO, "Child chains of " + name + " run on a thread pool");
+			AtomicInteger counter = new AtomicInteger(0);
+			return Executors.newCachedThreadPool(r -> {
+				Thread thread = new Thread(r, name + "-chain-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Finds the id used to retrieve the children of a top level element. It is
+	 * the value of the link column named as the id column of the selector, or the
+	 * element id if there is no such link column.
+	 * 
+	 * @param selector
+	 *            Selector of the children (first level)
+	 * @param elementId
+	 *            Id of the top level element
+	 * @param links
+	 *            Link columns of the top level element
+	 * @return The parent id for the selector, or null if the element is not linked
+	 *         to any child.
+	 */
+	private static Integer parentId(DataSelector selector, Integer elementId, HashMap<String, Integer> links) {
+		if (links.containsKey(selector.getIdColumn())) {
+			return links.get(selector.getIdColumn());
+		}
+		return elementId;
+	}
+
+	/**
+	 * Tells if the elements of a chain of selectors are kept on the fragment
+	 * cache.
+	 * 
+	 * @param selectors
+	 *            Levels to process in the hierarchy
+	 * @return true if the fragment cache must be used.
+	 */
+	private boolean isMemoized(DataSelector[] selectors) {
+		return fragmentCache != null && memoized.contains(selectors[0].getQuery());
+	}
+
+	/**
+	 * Appends to a parent object the JSON representation of its child elements,
+	 * as a single object or as an array of objects (depending on asAnArray() on
+	 * the selector). Nothing is appended if there are no children.
+	 * 
+	 * @param parentJson
+	 *            JSON representation of the parent object (still open).
+	 * @param selector
+	 *            Selector used to retrieve the children.
+	 * @param children
+	 *            JSON representation of each child (might be null).
+	 */
+	private static void appendChildElements(JSONWriter parentJson, DataSelector selector, List<String> children) {
+
+		if (children == null || children.isEmpty()) {
+			return;
+		}
+
+		// This is written as an array of objects with the label set on the selector
+		if (selector.asAnArray()) {
+			parentJson.beginArray(selector.getAttribute());
+		} else {
+			parentJson.name(selector.getAttribute());
+		}
+
+		for (String child : children) {
+			parentJson.appendObject(child);
+		}
+
+		// Close the array on the parent
+		if (selector.asAnArray()) {
+			parentJson.endArray();
+		}
 	}
 
 	/**
@@ -283,29 +2402,74 @@ public abstract class PrstshpLoader {
 	 *            Database connection manager.
 	 * @param id
 	 *            Id of the element to process in current level (parent's id).
-	 * @param parentJson
-	 *            JSON representation of the parent object.
 	 * @param selectors
 	 *            An array of selector representing the levels to process in the
 	 *            hierarchy. Each selector contains three elements: the name of the
 	 *            key field for this level, the title for the descendant elements on
 	 *            the JSON array, and the query to generate the array of children
 	 *            from current value of the key column (might be empty).
-	 * @return The number of child elements processed for current parent.
+	 * @return The JSON representation of each child element of current parent.
+	 *         Child elements are always written at level zero, and they are
+	 *         indented when appended to their parent.
 	 */
-	private static int loadChildElements(MariaDBConnectionManager con, Integer id, JSONBuilder parentJson, int level,
-			DataSelector[] selectors) {
+	private List<String> loadChildElements(MariaDBConnectionManager con, Integer id, DataSelector[] selectors) {
 
 		// If there are no selectors, nothing needs to be done
 		if (selectors.length == 0) {
-			return 0;
+			return new ArrayList<>();
+		}
+
+		// Dimensions are taken from memory (and queried if missing)
+		DimensionCache dimension = getDimension(selectors);
+		if (dimension != null) {
+			return dimension.get(id, key -> queryChildElements(con, key, selectors), this::isCacheable);
+		}
+
+		// Repeated fragments are rendered once and then copied
+		if (isMemoized(selectors)) {
+			String query = selectors[0].getQuery();
+			List<String> fragment = fragmentCache.get(query, id);
+			if (fragment == null) {
+				fragment = queryChildElements(con, id, selectors);
+				if (isCacheable()) {
+					fragmentCache.put(query, id, fragment);
+				}
+			}
+			return fragment;
+		}
+
+		return queryChildElements(con, id, selectors);
+	}
+
+	/**
+	 * Retrieves the child elements of a parent object from the database (see
+	 * loadChildElements()).
+	 * 
+	 * @param con
+	 *            Database connection manager.
+	 * @param id
+	 *            Id of the element to process in current level (parent's id).
+	 * @param selectors
+	 *            An array of selector representing the levels to process in the
+	 *            hierarchy.
+	 * @return The JSON representation of each child element of current parent.
+	 */
+	private List<String> queryChildElements(MariaDBConnectionManager con, Integer id, DataSelector[] selectors) {
+
+		List<String> children = new ArrayList<>();
+
+		// If there are no selectors, nothing needs to be done
+		if (selectors.length == 0) {
+			return children;
 		}
 
 		MyPreparedStatement stmt = null;
-		int nCols, nItems, index, childKeyValue;
-		String lastValue, childKeyColumn = null;
+		int nCols, index, childKeyValue;
+		long nChars = 0;
+		String childKeyColumn = null;
 		DataSelector currentSelector = selectors[0];
 		DataSelector[] restOfSelectors = null;
+		SelectorMetrics selectorMetrics = metrics.get(currentSelector.getQuery());
 
 		// If there are more than one selector then we need to process sub-children.
 		boolean withSubchildren = (selectors.length > 1);
@@ -320,9 +2484,6 @@ public abstract class PrstshpLoader {
 			}
 		}
 
-		// Nothing processed yet
-		nItems = 0;
-
 		try {
 			// Get a prepared statement
 			stmt = con.acquirePreparedStatement(currentSelector.getQuery());
@@ -331,7 +2492,9 @@ public abstract class PrstshpLoader {
 			stmt.setInt(1, id);
 
 			// Execute the query to retrieve children elements
+			long start = System.nanoTime();
 			ResultSet rs = stmt.executeQuery();
+			selectorMetrics.addQuery(System.nanoTime() - start);
 
 			// Retrieve metadata
 			ResultSetMetaData md = rs.getMetaData();
@@ -345,31 +2508,24 @@ public abstract class PrstshpLoader {
 				colTypes[index] = md.getColumnType(index);
 			}
 
-			// Main loop: Iterate over each row
+			// Main loop: Iterate over each row. All rows are written with the same writer.
+			JSONWriter json = new JSONWriter(compactJSON);
 			while (rs.next()) {
 
-				// This is written as an array of objects with the label set on the selector
-				if (nItems == 0) {
-					if (currentSelector.asAnArray()) {
-						parentJson.openArray(currentSelector.getAttribute());
-					} else {
-						parentJson.setProperty(currentSelector.getAttribute());
-					}
-				}
-
-				// Create a JSON for this object
-				JSONBuilder json = new JSONBuilder(level);
+				// Start the JSON of this object
+				json.reset();
+				json.beginObject();
 
 				// For each column (1..nCols)
 				for (childKeyValue = -1, index = 1; index <= nCols; index++) {
 					// Convert this column to JSON format
-					lastValue = data2JSON(rs, index, colNames[index], colTypes[index], json);
+					boolean notNull = data2JSON(rs, index, colNames[index], colTypes[index], json);
 
 					// If we need to process sub-children, check if this is the key column
 					// and save the value for the key of the next level
-					if (withSubchildren && childKeyValue < 0 && lastValue != null) {
+					if (withSubchildren && childKeyValue < 0 && notNull) {
 						if (colNames[index].equals(childKeyColumn)) {
-							childKeyValue = Integer.parseInt(lastValue);
+							childKeyValue = rs.getInt(index);
 						}
 					}
 				}
@@ -377,23 +2533,19 @@ public abstract class PrstshpLoader {
 				// If we need to process sub-children, and we found the key value, process the
 				// next level recursively
 				if (withSubchildren && childKeyValue > 0) {
-					loadChildElements(con, childKeyValue, json, level + 1, restOfSelectors);
+					appendChildElements(json, restOfSelectors[0],
+							loadChildElements(con, childKeyValue, restOfSelectors));
 				}
 
-				// Add address JSON to parent one
-				parentJson.appendUnnamedJSON(json.toString());
-
-				// One more address processed
-				nItems++;
-			}
-
-			// Close the array on the parent
-			if (nItems > 0 && currentSelector.asAnArray()) {
-				parentJson.closeArray();
+				// One more child processed
+				json.endObject();
+				children.add(json.toString());
+				nChars += json.length();
 			}
+			selectorMetrics.addRows(children.size(), nChars);
 
 		} catch (SQLException e) {
-			MessageLogger.logUnmanagedException(e);
+			logError(e);
 		} finally {
 			try {
 				con.relasePreparedStatement(stmt);
@@ -401,14 +2553,167 @@ public abstract class PrstshpLoader {
 				/* Ignore error */ }
 		}
 
-		// Number of description processed
-		return nItems;
+		return children;
+	}
+
+	/**
+	 * Block version of loadChildElements(). Retrieves the child elements of a set
+	 * of parents running the batch query of the selector once per batchSize
+	 * parents, and then stitches the rows back to their parents by the parent id.
+	 * Sub-children are loaded the same way for all the children of the block. If
+	 * the selector has no batch query, the children are loaded one parent at a
+	 * time.
+	 * 
+	 * @param con
+	 *            Database connection manager.
+	 * @param ids
+	 *            Ids of the parent elements.
+	 * @param selectors
+	 *            An array of selector representing the levels to process in the
+	 *            hierarchy (see loadChildElements()).
+	 * @return For each parent id, the JSON representation of its children. Parents
+	 *         without children are not included.
+	 */
+	private HashMap<Integer, List<String>> loadChildBlock(MariaDBConnectionManager con, Collection<Integer> ids,
+			DataSelector[] selectors) {
+
+		HashMap<Integer, List<String>> children = new HashMap<>();
+
+		// If there are no selectors, nothing needs to be done
+		if (selectors.length == 0 || ids.isEmpty()) {
+			return children;
+		}
+
+		// Dimensions are taken from memory one parent at a time
+		if (getDimension(selectors) != null) {
+			for (Integer id : ids) {
+				children.put(id, loadChildElements(con, id, selectors));
+			}
+			return children;
+		}
+
+		// Repeated fragments are taken from the cache and only the missing ones are
+		// queried
+		if (isMemoized(selectors)) {
+			String query = selectors[0].getQuery();
+			List<Integer> missing = new ArrayList<>();
+			for (Integer id : ids) {
+				List<String> fragment = fragmentCache.get(query, id);
+				if (fragment != null) {
+					children.put(id, fragment);
+				} else {
+					missing.add(id);
+				}
+			}
+
+			HashMap<Integer, List<String>> loaded = queryChildBlock(con, missing, selectors);
+			boolean cacheable = isCacheable();
+			for (Integer id : missing) {
+				List<String> fragment = loaded.getOrDefault(id, Collections.emptyList());
+				if (cacheable) {
+					fragmentCache.put(query, id, fragment);
+				}
+				children.put(id, fragment);
+			}
+			return children;
+		}
+
+		return queryChildBlock(con, ids, selectors);
+	}
+
+	/**
+	 * Retrieves the child elements of a set of parents from the database (see
+	 * loadChildBlock()).
+	 * 
+	 * @param con
+	 *            Database connection manager.
+	 * @param ids
+	 *            Ids of the parent elements.
+	 * @param selectors
+	 *            An array of selector representing the levels to process in the
+	 *            hierarchy (see loadChildElements()).
+	 * @return For each parent id, the JSON representation of its children. Parents
+	 *         without children are not included.
+	 */
+	private HashMap<Integer, List<String>> queryChildBlock(MariaDBConnectionManager con, Collection<Integer> ids,
+			DataSelector[] selectors) {
+
+		HashMap<Integer, List<String>> children = new HashMap<>();
+
+		// If there are no parents, nothing needs to be done
+		if (ids.isEmpty()) {
+			return children;
+		}
+
+		DataSelector currentSelector = selectors[0];
+
+		// Selectors without batch query are processed one parent at a time
+		if (currentSelector.getBatchQuery() == null) {
+			for (Integer id : ids) {
+				children.put(id, queryChildElements(con, id, selectors));
+			}
+			return children;
+		}
+
+		MyPreparedStatement stmt = null;
+		int index;
+		SelectorMetrics selectorMetrics = metrics.get(currentSelector.getQuery());
+
+		// Rows retrieved for the whole block
+		ChildRows rows = new ChildRows(selectors);
+
+		// All blocks use the same number of parameters, so the statement is reused
+		String query = currentSelector.getBatchQuery().replace(BATCH_IDS_PLACEHOLDER,
+				String.join(",", Collections.nCopies(batchSize, "?")));
+
+		int[] blockIds = new int[batchSize];
+		Iterator<Integer> idIterator = ids.iterator();
+		while (idIterator.hasNext()) {
+
+			// Parent ids of this block. An incomplete block repeats its last id.
+			for (index = 0; index < batchSize; index++) {
+				blockIds[index] = idIterator.hasNext() ? idIterator.next() : blockIds[index - 1];
+			}
+
+			try {
+				// Get a prepared statement
+				stmt = con.acquirePreparedStatement(query);
+
+				// Set the parameters
+				for (index = 0; index < batchSize; index++) {
+					stmt.setInt(index + 1, blockIds[index]);
+				}
+
+				// Execute the query to retrieve children elements
+				long start = System.nanoTime();
+				ResultSet rs = stmt.executeQuery();
+				selectorMetrics.addQuery(System.nanoTime() - start);
+
+				// Main loop: Iterate over each row
+				rows.setColumns(rs.getMetaData());
+				while (rs.next()) {
+					rows.add(rs);
+				}
+
+			} catch (SQLException e) {
+				logError(e);
+			} finally {
+				try {
+					con.relasePreparedStatement(stmt);
+				} catch (SQLException e) {
+					/* Ignore error */ }
+			}
+		}
+
+		return rows.stitch(con);
 	}
 
 	/**
 	 * Convert one element from current row on a result set to JSON, depending on
 	 * the column type. NULL values are not passed to the JSON object. Not all the
-	 * possible SQL types has being implemented here.
+	 * possible SQL types has being implemented here.<br/>
+	 * <br/>
+	 * This is package visible so it can be measured by the benchmarks.
 	 * 
 	 * @param rs
 	 *            Result set containing current row.
@@ -419,13 +2724,12 @@ public abstract class PrstshpLoader {
 	 * @param colType
 	 *            Type of the column
 	 * @param json
-	 *            JSON builder object to which the column is added.
-	 * @return null if the field value was NULL, or the value of the field (as a
-	 *         string) otherwise.
+	 *            JSON writer to which the column is added.
+	 * @return false if the field value was NULL, true otherwise.
 	 * @throws SQLException
 	 *             When an error occurss trying to retrieve a column.
 	 */
-	private static String data2JSON(ResultSet rs, int index, String colName, int colType, JSONBuilder json)
+	static boolean data2JSON(ResultSet rs, int index, String colName, int colType, JSONWriter json)
 			throws SQLException {
 
 		switch (colType) {
@@ -438,7 +2742,7 @@ public abstract class PrstshpLoader {
 			int intValue = rs.getInt(index);
 			if (!rs.wasNull()) {
 				json.appendInt(colName, intValue);
-				return new Integer(intValue).toString();
+				return true;
 			}
 			break;
 		//
@@ -449,7 +2753,7 @@ public abstract class PrstshpLoader {
 			String decValue = rs.getString(index);
 			if (!rs.wasNull()) {
 				json.appendDecimal(colName, decValue);
-				return decValue;
+				return true;
 			}
 			break;
 		//
@@ -460,7 +2764,7 @@ public abstract class PrstshpLoader {
 			String strValue = rs.getString(index);
 			if (!rs.wasNull()) {
 				json.appendString(colName, strValue);
-				return strValue;
+				return true;
 			}
 			break;
 		//
@@ -472,7 +2776,7 @@ public abstract class PrstshpLoader {
 				LocalDateTime localTS = LocalDateTime.ofInstant(tsValue.toInstant(), ZoneId.systemDefault());
 				String tsStrValue = localTS.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z";
 				json.appendDate(colName, tsStrValue);
-				return tsStrValue;
+				return true;
 			}
 			break;
 		//
@@ -483,7 +2787,7 @@ public abstract class PrstshpLoader {
 			if (!rs.wasNull()) {
 				String dateStrValue = dateValue.toString() + "T00:00:00Z";
 				json.appendDate(colName, dateStrValue);
-				return dateStrValue;
+				return true;
 			}
 			break;
 		//
@@ -494,24 +2798,49 @@ public abstract class PrstshpLoader {
 		}
 
 		// If this point is reached, the field has a NULL value
-		return null;
+		return false;
 	}
 
 	/**
 	 * Dumps the content of the memory collection of objects loaded into a file. All
-	 * JSON documents are written to the same file just one after the other.
+	 * JSON documents are written to the same file just one after the other. On
+	 * streaming mode the documents have already been written to the sink and
+	 * the memory collection is empty.
 	 * 
 	 * @param fileName
 	 *            Name of the output file
-	 * @throws FileNotFoundException
-	 *             If the given file object does not denote an existing, writable
-	 *             regular file and a new regular file of that name cannot be
-	 *             created, or if some other error occurs while opening or creating
-	 *             the file
-	 */
-	public void dumpData(String fileName) throws FileNotFoundException {
-		PrintStream ps = new PrintStream(fileName);
-		elements.keySet().forEach(k -> ps.println(elements.get(new Integer(k))));
-		ps.close();
+	 * @throws IOException
+	 *             If the file cannot be created or written
+	 */
+	public void dumpData(String fileName) throws IOException {
+		try (FileDocumentSink target = new FileDocumentSink(fileName)) {
+			dumpData(target);
+		}
+	}
+
+	/**
+	 * Dumps the content of the memory collection of objects loaded into a sink
+	 * (for instance, a compressed file). The sink is not closed. Spilled
+	 * documents are dumped in the order of their keys, and their files are
+	 * deleted afterwards.
+	 * 
+	 * @param target
+	 *            Where the documents are written
+	 * @throws IOException
+	 *             If the documents cannot be written
+	 */
+	public void dumpData(DocumentSink target) throws IOException {
+		if (store != null) {
+			try {
+				store.dumpTo(target);
+			} finally {
+				store.close();
+				store = null;
+			}
+			return;
+		}
+		for (Integer k : elements.keySet()) {
+			target.write(k, elements.get(k));
+		}
 	}
 }
\ No newline at end of file
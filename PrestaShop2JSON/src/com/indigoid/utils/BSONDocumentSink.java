@@ -0,0 +1,592 @@
+package com.indigoid.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Document sink that writes the documents as BSON, one after the other, which
+ * is the layout of the .bson files of mongorestore (the collection is named
+ * after the file), so mongorestore does not have to parse them again.<br/>
+ * <br/>
+ * This is a converter: documents are received as the JSON text built by the
+ * loaders, and that text is parsed once more to encode it. Types are taken
+ * from the text as MongoDB Extended JSON defines them, not guessed, so the
+ * documents should be written by a compact JSONWriter, where dates and
+ * decimals are explicit:
+ * <ul>
+ * <li>{"$date": ...} values (ISO strings or {"$numberLong": ...} milliseconds,
+ * and ISODate("...") ones) are written as UTC date times.</li>
+ * <li>{"$numberDecimal": "..."} values are written as Decimal128.</li>
+ * <li>Integers are written as 32 bit integers, or 64 bit ones if their value
+ * does not fit.</li>
+ * <li>Other numbers (with a fraction or an exponent, or integers out of the
+ * range of 64 bits) are written as doubles.</li>
+ * </ul>
+ * The text is encoded in a single pass, straight into a reusable BSONWriter:
+ * there is no intermediate tree. Encoded documents are gathered on a direct
+ * buffer and written to a file channel in large blocks.<br/>
+ * <br/>
+ * Like FileDocumentSink, the file may be compressed with an OutputCodec
+ * (mongorestore reads .bson.gz files with --gzip), and it can be checkpointed
+ * and resumed (see EncodedOutputFile).
+ *
+ * @author Charlie
+ *
+ */
+public class BSONDocumentSink implements DocumentSink {
+
+	/**
+	 * Size of the output buffer (bytes).
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * Names of the first array elements (the rest are built when needed).
+	 */
+	private static final String[] INDEXES = new String[64];
+	/**
+	 * Key of the Extended JSON dates.
+	 */
+	private static final String DATE_KEY = "\"$date\"";
+	/**
+	 * Key of the Extended JSON 64 bit integers (used by dates out of the years
+	 * 1970 to 9999).
+	 */
+	private static final String NUMBER_LONG_KEY = "\"$numberLong\"";
+	/**
+	 * Key of the Extended JSON decimals.
+	 */
+	private static final String DECIMAL_KEY = "\"$numberDecimal\"";
+
+	static {
+		for (int i = 0; i < INDEXES.length; i++) {
+			INDEXES[i] = Integer.toString(i);
+		}
+	}
+
+	/**
+	 * Output file.
+	 */
+	private EncodedOutputFile output;
+	/**
+	 * Channel where the documents are written: the channel of the file itself
+	 * for plain files, or a channel on the encoder otherwise.
+	 */
+	private WritableByteChannel channel;
+	/**
+	 * Encoded documents waiting to be written.
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Document being encoded.
+	 */
+	private BSONWriter bson = new BSONWriter();
+	/**
+	 * Text of the document being encoded.
+	 */
+	private String json;
+	/**
+	 * Position of the next character to be read from the text.
+	 */
+	private int pos;
+	/**
+	 * Last string read from the text (without quotes and escapes).
+	 */
+	private StringBuilder string = new StringBuilder();
+	/**
+	 * Number of documents written.
+	 */
+	private int nDocuments;
+	/**
+	 * Number of bytes of the documents (before the encoding of the file).
+	 */
+	private long bsonBytes;
+	/**
+	 * Time spent encoding and writing (nanoseconds).
+	 */
+	private long writeNanos;
+
+	/**
+	 * Creates (or truncates) an output file.
+	 *
+	 * @param fileName
+	 *            Name of the output file (as it is, see OutputCodec.fileName())
+	 * @param codec
+	 *            Encoding of the file
+	 * @throws IOException
+	 *             If the file cannot be created or opened for writing
+	 */
+	public BSONDocumentSink(String fileName, OutputCodec codec) throws IOException {
+		this(fileName, codec, 0);
+	}
+
+	/**
+	 * Opens an output file to go on writing after a checkpoint (see
+	 * EncodedOutputFile).
+	 *
+	 * @param fileName
+	 *            Name of the output file (as it is, see OutputCodec.fileName())
+	 * @param codec
+	 *            Encoding of the file
+	 * @param resumeOffset
+	 *            Size of the file on the checkpoint (zero to start a new file)
+	 * @throws IOException
+	 *             If the file cannot be opened for writing
+	 */
+	public BSONDocumentSink(String fileName, OutputCodec codec, long resumeOffset) throws IOException {
+		long start = System.nanoTime();
+		this.output = new EncodedOutputFile(fileName, codec, resumeOffset);
+		this.channel = newChannel();
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.nDocuments = 0;
+		this.bsonBytes = 0;
+		this.writeNanos = System.nanoTime() - start;
+	}
+
+	@Override
+	public void write(int id, String document) throws IOException {
+		long start = System.nanoTime();
+
+		json = document;
+		pos = 0;
+		bson.reset();
+		try {
+			skipSpaces();
+			expect('{');
+			bson.beginDocument();
+			readFields();
+			bson.endDocument();
+			skipSpaces();
+			if (pos < json.length()) {
+				throw syntaxError("end of document");
+			}
+		} catch (DateTimeParseException | NumberFormatException | ArithmeticException e) {
+			throw new IOException("Document " + id + " cannot be written as BSON (offset " + pos + ")", e);
+		} catch (IOException e) {
+			throw new IOException("Document " + id + " cannot be written as BSON", e);
+		} finally {
+			json = null;
+		}
+
+		put(bson.getBuffer(), bson.length());
+		bsonBytes += bson.length();
+		nDocuments++;
+		writeNanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return nDocuments;
+	}
+
+	@Override
+	public long checkpoint() throws IOException {
+		long start = System.nanoTime();
+		drain();
+		long offset = output.checkpoint();
+		channel = newChannel();
+		writeNanos += System.nanoTime() - start;
+		return offset;
+	}
+
+	/**
+	 * @return A channel on the current stream of the output file (on the file
+	 *         itself if it is plain).
+	 */
+	private WritableByteChannel newChannel() {
+		return (output.getCodec() == OutputCodec.PLAIN) ? output.getChannel() : Channels.newChannel(output.getStream());
+	}
+
+	/**
+	 * @return Size and throughput of the output, before and after the encoding
+	 *         of the file.
+	 */
+	@Override
+	public String getStats() {
+		return "BSON " + FileDocumentSink.formatStats(output.getCodec(), bsonBytes, output.getFileBytes(), writeNanos);
+	}
+
+	@Override
+	public void close() throws IOException {
+		long start = System.nanoTime();
+		try {
+			drain();
+		} finally {
+			output.close();
+			writeNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Adds an encoded document to the output buffer. The buffer is written to
+	 * the channel when the document does not fit; documents bigger than the
+	 * buffer are written straight away.
+	 *
+	 * @param data
+	 *            Encoded document
+	 * @param length
+	 *            Length of the document
+	 * @throws IOException
+	 *             When the channel cannot be written
+	 */
+	private void put(byte[] data, int length) throws IOException {
+		if (length > buffer.remaining()) {
+			drain();
+		}
+		if (length > buffer.capacity()) {
+			ByteBuffer big = ByteBuffer.wrap(data, 0, length);
+			while (big.hasRemaining()) {
+				channel.write(big);
+			}
+		} else {
+			buffer.put(data, 0, length);
+		}
+	}
+
+	/**
+	 * Writes the output buffer to the channel.
+	 *
+	 * @throws IOException
+	 *             When the channel cannot be written
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads the fields of an object, up to its closing brace (the opening one
+	 * has already been read), and writes them on current BSON document.
+	 *
+	 * @throws IOException
+	 *             When the text is not valid
+	 */
+	private void readFields() throws IOException {
+		skipSpaces();
+		if (peek() == '}') {
+			pos++;
+			return;
+		}
+		while (true) {
+			String name = readString().toString();
+			skipSpaces();
+			expect(':');
+			readValue(name);
+			skipSpaces();
+			if (peek() != ',') {
+				expect('}');
+				return;
+			}
+			pos++;
+			skipSpaces();
+		}
+	}
+
+	/**
+	 * Reads the elements of an array, up to its closing bracket (the opening one
+	 * has already been read), and writes them on current BSON array.
+	 *
+	 * @throws IOException
+	 *             When the text is not valid
+	 */
+	private void readElements() throws IOException {
+		skipSpaces();
+		if (peek() == ']') {
+			pos++;
+			return;
+		}
+		for (int index = 0;; index++) {
+			readValue(index < INDEXES.length ? INDEXES[index] : Integer.toString(index));
+			skipSpaces();
+			if (peek() != ',') {
+				expect(']');
+				return;
+			}
+			pos++;
+		}
+	}
+
+	/**
+	 * Reads a value and writes it as a field of current BSON document (or as an
+	 * element of current array).
+	 *
+	 * @param name
+	 *            Name of the field
+	 * @throws IOException
+	 *             When the text is not valid
+	 */
+	private void readValue(String name) throws IOException {
+		skipSpaces();
+		switch (peek()) {
+		case '{':
+			pos++;
+			skipSpaces();
+			if (json.startsWith(DATE_KEY, pos)) {
+				bson.appendDateTime(name, readDate());
+			} else if (json.startsWith(DECIMAL_KEY, pos)) {
+				bson.appendDecimal128(name, new BigDecimal(readWrappedValue(DECIMAL_KEY)));
+			} else {
+				bson.beginDocument(name);
+				readFields();
+				bson.endDocument();
+			}
+			break;
+		case '[':
+			pos++;
+			bson.beginArray(name);
+			readElements();
+			bson.endArray();
+			break;
+		case '"':
+			bson.appendString(name, readString());
+			break;
+		case 'I':
+			expectWord("ISODate(");
+			skipSpaces();
+			String date = readString().toString();
+			skipSpaces();
+			expect(')');
+			bson.appendDateTime(name, Instant.parse(date).toEpochMilli());
+			break;
+		case 't':
+			expectWord("true");
+			bson.appendBoolean(name, true);
+			break;
+		case 'f':
+			expectWord("false");
+			bson.appendBoolean(name, false);
+			break;
+		case 'n':
+			expectWord("null");
+			bson.appendNull(name);
+			break;
+		default:
+			readNumber(name);
+		}
+	}
+
+	/**
+	 * Reads the string value of an Extended JSON object, such as {"$date":
+	 * "..."}, up to its closing brace (the opening one has already been read).
+	 *
+	 * @param key
+	 *            Key of the object (quoted)
+	 * @return The value.
+	 * @throws IOException
+	 *             When the text is not valid
+	 */
+	private String readWrappedValue(String key) throws IOException {
+		expectWord(key);
+		skipSpaces();
+		expect(':');
+		skipSpaces();
+		String value = readString().toString();
+		skipSpaces();
+		expect('}');
+		return value;
+	}
+
+	/**
+	 * Reads the value of an Extended JSON date, up to its closing brace (the
+	 * opening one has already been read). The value is an ISO string, or a
+	 * {"$numberLong": "..."} object with the milliseconds since the epoch.
+	 *
+	 * @return Milliseconds since 1970-01-01T00:00:00Z
+	 * @throws IOException
+	 *             When the text is not valid
+	 */
+	private long readDate() throws IOException {
+		expectWord(DATE_KEY);
+		skipSpaces();
+		expect(':');
+		skipSpaces();
+		long millis;
+		if (peek() == '{') {
+			pos++;
+			skipSpaces();
+			millis = Long.parseLong(readWrappedValue(NUMBER_LONG_KEY));
+		} else {
+			millis = Instant.parse(readString()).toEpochMilli();
+		}
+		skipSpaces();
+		expect('}');
+		return millis;
+	}
+
+	/**
+	 * Reads a number and writes it as a field of current BSON document, with the
+	 * type given by Extended JSON (see the class description).
+	 *
+	 * @param name
+	 *            Name of the field
+	 * @throws IOException
+	 *             When the text is not a number
+	 */
+	private void readNumber(String name) throws IOException {
+		int start = pos;
+		boolean decimal = false;
+		for (char c; pos < json.length(); pos++) {
+			c = json.charAt(pos);
+			if (c == '.' || c == 'e' || c == 'E') {
+				decimal = true;
+			} else if ((c < '0' || c > '9') && c != '-' && c != '+') {
+				break;
+			}
+		}
+		if (pos == start) {
+			throw syntaxError("value");
+		}
+
+		String number = json.substring(start, pos);
+		if (!decimal) {
+			long value;
+			try {
+				value = Long.parseLong(number);
+			} catch (NumberFormatException e) {
+				// Out of the range of 64 bits
+				bson.appendDouble(name, Double.parseDouble(number));
+				return;
+			}
+			if (value == (int) value) {
+				bson.appendInt32(name, (int) value);
+			} else {
+				bson.appendInt64(name, value);
+			}
+		} else {
+			bson.appendDouble(name, Double.parseDouble(number));
+		}
+	}
+
+	/**
+	 * Reads a quoted string and undoes its escapes.
+	 *
+	 * @return The string (valid until the next string is read).
+	 * @throws IOException
+	 *             When the text is not a string
+	 */
+	private CharSequence readString() throws IOException {
+		expect('"');
+		string.setLength(0);
+		int length = json.length();
+		while (true) {
+
+			// Copy the run of characters up to the next quote or escape at once
+			int start = pos;
+			char c = 0;
+			while (pos < length && (c = json.charAt(pos)) != '"' && c != '\\') {
+				pos++;
+			}
+			string.append(json, start, pos);
+			if (pos >= length) {
+				throw syntaxError("closing quote");
+			}
+			pos++;
+			if (c == '"') {
+				return string;
+			}
+
+			// Escape sequence
+			if (pos >= length) {
+				throw syntaxError("escape sequence");
+			}
+			switch (c = json.charAt(pos++)) {
+			case 'b':
+				string.append('\b');
+				break;
+			case 'f':
+				string.append('\f');
+				break;
+			case 'n':
+				string.append('\n');
+				break;
+			case 'r':
+				string.append('\r');
+				break;
+			case 't':
+				string.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > length) {
+					throw syntaxError("unicode escape");
+				}
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(json.charAt(pos++), 16);
+					if (digit < 0) {
+						throw syntaxError("unicode escape");
+					}
+					code = (code << 4) | digit;
+				}
+				string.append((char) code);
+				break;
+			default:
+				string.append(c); /* \" \\ \/ */
+			}
+		}
+	}
+
+	/**
+	 * Skips blanks and line breaks.
+	 */
+	private void skipSpaces() {
+		for (char c; pos < json.length(); pos++) {
+			c = json.charAt(pos);
+			if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return The next character of the text (zero at the end).
+	 */
+	private char peek() {
+		return pos < json.length() ? json.charAt(pos) : 0;
+	}
+
+	/**
+	 * Reads a given character.
+	 *
+	 * @param c
+	 *            Expected character
+	 * @throws IOException
+	 *             If the next character is a different one
+	 */
+	private void expect(char c) throws IOException {
+		if (peek() != c) {
+			throw syntaxError("'" + c + "'");
+		}
+		pos++;
+	}
+
+	/**
+	 * Reads a given word.
+	 *
+	 * @param word
+	 *            Expected word
+	 * @throws IOException
+	 *             If the next characters are different
+	 */
+	private void expectWord(String word) throws IOException {
+		if (!json.startsWith(word, pos)) {
+			throw syntaxError(word);
+		}
+		pos += word.length();
+	}
+
+	/**
+	 * @param expected
+	 *            What was expected at current position
+	 * @return The exception for invalid text.
+	 */
+	private IOException syntaxError(String expected) {
+		return new IOException("Expected " + expected + " at offset " + pos);
+	}
+}
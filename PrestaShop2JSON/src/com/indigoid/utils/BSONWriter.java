@@ -0,0 +1,389 @@
+package com.indigoid.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * This class writes BSON documents into a single byte buffer, as a stream:
+ * documents and arrays are opened and closed by begin/end methods and their
+ * lengths are filled in when they are closed. The buffer can be reused for the
+ * next document after calling reset().<br/>
+ * <br/>
+ * Array elements are written as fields named "0", "1", ... (the caller gives
+ * the names). All numbers are little endian, as BSON requires.
+ *
+ * @author Charlie
+ *
+ */
+public class BSONWriter {
+
+	/**
+	 * Initial size of the buffer (bytes).
+	 */
+	private static final int INITIAL_CAPACITY = 4096;
+	/**
+	 * Initial number of nested documents.
+	 */
+	private static final int INITIAL_DEPTH = 8;
+	/**
+	 * Exponent bias of Decimal128 numbers.
+	 */
+	private static final int DECIMAL128_EXPONENT_BIAS = 6176;
+	/**
+	 * Lowest exponent of a Decimal128 number.
+	 */
+	private static final int DECIMAL128_MIN_EXPONENT = -6176;
+	/**
+	 * Highest exponent of a Decimal128 number.
+	 */
+	private static final int DECIMAL128_MAX_EXPONENT = 6111;
+	//
+	// Element types
+	//
+	private static final byte TYPE_DOUBLE = 0x01;
+	private static final byte TYPE_STRING = 0x02;
+	private static final byte TYPE_DOCUMENT = 0x03;
+	private static final byte TYPE_ARRAY = 0x04;
+	private static final byte TYPE_BOOLEAN = 0x08;
+	private static final byte TYPE_DATETIME = 0x09;
+	private static final byte TYPE_NULL = 0x0A;
+	private static final byte TYPE_INT32 = 0x10;
+	private static final byte TYPE_INT64 = 0x12;
+	private static final byte TYPE_DECIMAL128 = 0x13;
+
+	/**
+	 * The BSON is written on this buffer.
+	 */
+	private byte[] buffer;
+	/**
+	 * Number of bytes written.
+	 */
+	private int length;
+	/**
+	 * Position of the length of each document (or array) currently opened, from
+	 * outer to inner.
+	 */
+	private int[] starts = new int[INITIAL_DEPTH];
+	/**
+	 * Index of the inner document currently opened (-1 if there is none).
+	 */
+	private int depth;
+
+	/**
+	 * Creates a new writer with an empty buffer.
+	 */
+	public BSONWriter() {
+		this.buffer = new byte[INITIAL_CAPACITY];
+		this.length = 0;
+		this.depth = -1;
+	}
+
+	/**
+	 * Empties the buffer, so the writer can be used to write a new document. The
+	 * memory of the buffer is kept.
+	 */
+	public void reset() {
+		this.length = 0;
+		this.depth = -1;
+	}
+
+	/**
+	 * @return The buffer. Only the first length() bytes are written.
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return Number of bytes written.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Opens the outer document. Call endDocument() when done with its fields.
+	 */
+	public void beginDocument() {
+		openLength();
+	}
+
+	/**
+	 * Closes current document (or array).
+	 */
+	public void endDocument() {
+		ensureCapacity(1);
+		buffer[length++] = 0;
+		int start = starts[depth--];
+		writeInt(start, length - start);
+	}
+
+	/**
+	 * Opens a document as a field of current document. Call endDocument() when
+	 * done with its fields.
+	 *
+	 * @param name
+	 *            Field name
+	 */
+	public void beginDocument(String name) {
+		appendHeader(TYPE_DOCUMENT, name);
+		openLength();
+	}
+
+	/**
+	 * Opens an array as a field of current document. Call endArray() when done
+	 * with its elements.
+	 *
+	 * @param name
+	 *            Field name
+	 */
+	public void beginArray(String name) {
+		appendHeader(TYPE_ARRAY, name);
+		openLength();
+	}
+
+	/**
+	 * Closes current array.
+	 */
+	public void endArray() {
+		endDocument();
+	}
+
+	/**
+	 * Appends a 32 bit integer.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendInt32(String name, int value) {
+		appendHeader(TYPE_INT32, name);
+		ensureCapacity(4);
+		writeInt(length, value);
+		length += 4;
+	}
+
+	/**
+	 * Appends a 64 bit integer.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendInt64(String name, long value) {
+		appendHeader(TYPE_INT64, name);
+		appendLong(value);
+	}
+
+	/**
+	 * Appends a double.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendDouble(String name, double value) {
+		appendHeader(TYPE_DOUBLE, name);
+		appendLong(Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * Appends a boolean.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendBoolean(String name, boolean value) {
+		appendHeader(TYPE_BOOLEAN, name);
+		ensureCapacity(1);
+		buffer[length++] = (byte) (value ? 1 : 0);
+	}
+
+	/**
+	 * Appends a null.
+	 *
+	 * @param name
+	 *            Field name
+	 */
+	public void appendNull(String name) {
+		appendHeader(TYPE_NULL, name);
+	}
+
+	/**
+	 * Appends a UTC date time.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param epochMillis
+	 *            Milliseconds since 1970-01-01T00:00:00Z
+	 */
+	public void appendDateTime(String name, long epochMillis) {
+		appendHeader(TYPE_DATETIME, name);
+		appendLong(epochMillis);
+	}
+
+	/**
+	 * Appends a String (UTF-8).
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendString(String name, CharSequence value) {
+		appendHeader(TYPE_STRING, name);
+		ensureCapacity(4);
+		int start = length;
+		length += 4;
+		appendUTF8(value);
+		ensureCapacity(1);
+		buffer[length++] = 0;
+		writeInt(start, length - start - 4);
+	}
+
+	/**
+	 * Appends a Decimal128 number (IEEE 754-2008, binary integer decimal
+	 * encoding). Values with more than 34 significant digits are rounded.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 * @throws ArithmeticException
+	 *             If the exponent of the value is out of the range of Decimal128
+	 */
+	public void appendDecimal128(String name, BigDecimal value) {
+		BigDecimal decimal = value.round(MathContext.DECIMAL128);
+		int exponent = -decimal.scale();
+		if (exponent < DECIMAL128_MIN_EXPONENT || exponent > DECIMAL128_MAX_EXPONENT) {
+			throw new ArithmeticException("Decimal out of the range of Decimal128: " + value);
+		}
+
+		// Coefficient takes up to 113 bits (34 digits): 64 on low, 49 on high
+		BigInteger coefficient = decimal.unscaledValue().abs();
+		long high = ((long) (exponent + DECIMAL128_EXPONENT_BIAS) << 49) | coefficient.shiftRight(64).longValue();
+		if (decimal.signum() < 0) {
+			high |= Long.MIN_VALUE;
+		}
+
+		appendHeader(TYPE_DECIMAL128, name);
+		appendLong(coefficient.longValue());
+		appendLong(high);
+	}
+
+	/**
+	 * Writes the type and the name of a field.
+	 *
+	 * @param type
+	 *            Element type
+	 * @param name
+	 *            Field name
+	 */
+	private void appendHeader(byte type, String name) {
+		ensureCapacity(1);
+		buffer[length++] = type;
+		appendUTF8(name);
+		ensureCapacity(1);
+		buffer[length++] = 0;
+	}
+
+	/**
+	 * Leaves room for the length of a document, to be filled in when it is
+	 * closed.
+	 */
+	private void openLength() {
+		depth++;
+		if (depth == starts.length) {
+			starts = Arrays.copyOf(starts, depth * 2);
+		}
+		starts[depth] = length;
+		ensureCapacity(4);
+		length += 4;
+	}
+
+	/**
+	 * Appends a 64 bit number.
+	 *
+	 * @param value
+	 *            The number
+	 */
+	private void appendLong(long value) {
+		ensureCapacity(8);
+		writeInt(length, (int) value);
+		writeInt(length + 4, (int) (value >>> 32));
+		length += 8;
+	}
+
+	/**
+	 * Writes a 32 bit number at a given position.
+	 *
+	 * @param position
+	 *            Position of the first byte
+	 * @param value
+	 *            The number
+	 */
+	private void writeInt(int position, int value) {
+		buffer[position] = (byte) value;
+		buffer[position + 1] = (byte) (value >>> 8);
+		buffer[position + 2] = (byte) (value >>> 16);
+		buffer[position + 3] = (byte) (value >>> 24);
+	}
+
+	/**
+	 * Appends the UTF-8 encoding of some characters (without terminator).
+	 * Unpaired surrogates are written as U+FFFD.
+	 *
+	 * @param chars
+	 *            Characters to be encoded
+	 */
+	private void appendUTF8(CharSequence chars) {
+		int n = chars.length();
+		ensureCapacity(n);
+		for (int i = 0; i < n; i++) {
+			char c = chars.charAt(i);
+			if (c < 0x80) {
+				buffer[length++] = (byte) c;
+				continue;
+			}
+
+			// Rest of characters take up to 4 bytes
+			ensureCapacity(4 + n - i);
+			if (c < 0x800) {
+				buffer[length++] = (byte) (0xC0 | (c >> 6));
+				buffer[length++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(chars.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, chars.charAt(++i));
+				buffer[length++] = (byte) (0xF0 | (cp >> 18));
+				buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				if (Character.isSurrogate(c)) {
+					c = '\uFFFD';
+				}
+				buffer[length++] = (byte) (0xE0 | (c >> 12));
+				buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Grows the buffer if there is no room for some more bytes.
+	 *
+	 * @param extra
+	 *            Number of bytes about to be written
+	 */
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+		}
+	}
+}
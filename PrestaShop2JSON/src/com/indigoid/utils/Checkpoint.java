@@ -0,0 +1,142 @@
+package com.indigoid.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Progress of the export of an entity, kept on a StateFile so that an
+ * interrupted export can be resumed by the next run. Documents are exported in
+ * the order of their ids, so the progress is the id of the last document fully
+ * written, together with the size of the output file at that point (the file
+ * is truncated to that size when the export is resumed).<br/>
+ * <br/>
+ * All the values of a checkpoint are saved at once (see StateFile.set()), and
+ * several entities can keep their checkpoints on the same file.
+ * 
+ * @author Charlie
+ *
+ */
+public class Checkpoint {
+
+	//
+	// Names of the values (after the name of the entity)
+	//
+	private static final String OUTPUT_SUFFIX = ".output";
+	private static final String EXPORT_START_SUFFIX = ".export_start";
+	private static final String LAST_ID_SUFFIX = ".last_id";
+	private static final String OFFSET_SUFFIX = ".offset";
+	private static final String DOCUMENTS_SUFFIX = ".documents";
+	private static final String COMPLETE_SUFFIX = ".complete";
+
+	/**
+	 * File where the checkpoints are kept.
+	 */
+	private StateFile file;
+	/**
+	 * Name of the entity.
+	 */
+	private String name;
+
+	/**
+	 * @param file
+	 *            File where the checkpoints are kept
+	 * @param name
+	 *            Name of the entity
+	 */
+	public Checkpoint(StateFile file, String name) {
+		this.file = file;
+		this.name = name;
+	}
+
+	/**
+	 * @return Name of the output file of the export, or null if there is no
+	 *         checkpoint.
+	 */
+	public String getOutput() {
+		return file.get(name + OUTPUT_SUFFIX);
+	}
+
+	/**
+	 * @return Database time when the export started (incremental loads), or null
+	 *         if there is none.
+	 */
+	public String getExportStart() {
+		return file.get(name + EXPORT_START_SUFFIX);
+	}
+
+	/**
+	 * @return Id of the last document fully written, or null if none was.
+	 */
+	public Integer getLastId() {
+		String lastId = file.get(name + LAST_ID_SUFFIX);
+		return (lastId == null) ? null : Integer.valueOf(lastId);
+	}
+
+	/**
+	 * @return Size of the output file after the last document fully written.
+	 */
+	public long getOffset() {
+		String offset = file.get(name + OFFSET_SUFFIX);
+		return (offset == null) ? 0 : Long.parseLong(offset);
+	}
+
+	/**
+	 * @return Number of documents fully written.
+	 */
+	public int getDocuments() {
+		String documents = file.get(name + DOCUMENTS_SUFFIX);
+		return (documents == null) ? 0 : Integer.parseInt(documents);
+	}
+
+	/**
+	 * @return true if the export was completed.
+	 */
+	public boolean isComplete() {
+		return Boolean.parseBoolean(file.get(name + COMPLETE_SUFFIX));
+	}
+
+	/**
+	 * Starts a new export, forgetting the previous one.
+	 * 
+	 * @param output
+	 *            Name of the output file
+	 * @param exportStart
+	 *            Database time when the export started (null if not needed)
+	 * @throws IOException
+	 *             When the checkpoint file cannot be written
+	 */
+	public void start(String output, String exportStart) throws IOException {
+		Map<String, String> values = new HashMap<>();
+		values.put(name + OUTPUT_SUFFIX, output);
+		values.put(name + EXPORT_START_SUFFIX, exportStart);
+		values.put(name + LAST_ID_SUFFIX, null);
+		values.put(name + OFFSET_SUFFIX, "0");
+		values.put(name + DOCUMENTS_SUFFIX, "0");
+		values.put(name + COMPLETE_SUFFIX, "false");
+		file.set(values);
+	}
+
+	/**
+	 * Saves the progress of the export.
+	 * 
+	 * @param lastId
+	 *            Id of the last document fully written
+	 * @param offset
+	 *            Size of the output file after that document
+	 * @param documents
+	 *            Number of documents fully written
+	 * @param complete
+	 *            true if the export has been completed
+	 * @throws IOException
+	 *             When the checkpoint file cannot be written
+	 */
+	public void save(Integer lastId, long offset, int documents, boolean complete) throws IOException {
+		Map<String, String> values = new HashMap<>();
+		values.put(name + LAST_ID_SUFFIX, (lastId == null) ? null : lastId.toString());
+		values.put(name + OFFSET_SUFFIX, Long.toString(offset));
+		values.put(name + DOCUMENTS_SUFFIX, Integer.toString(documents));
+		values.put(name + COMPLETE_SUFFIX, Boolean.toString(complete));
+		file.set(values);
+	}
+}
@@ -0,0 +1,130 @@
+package com.indigoid.utils;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Document sink that saves a checkpoint every so many documents written to
+ * another sink (which must support checkpoint()). Documents must be written in
+ * the order of their ids, so every document up to the last id saved is
+ * complete on the output.<br/>
+ * <br/>
+ * Once the loader finds an error, documents might be incomplete, so no more
+ * checkpoints are saved: an export resumed later goes on from the last
+ * checkpoint saved before the error.
+ * 
+ * @author Charlie
+ *
+ */
+public class CheckpointingSink implements DocumentSink {
+
+	/**
+	 * Sink where the documents are written.
+	 */
+	private DocumentSink out;
+	/**
+	 * Progress of the export.
+	 */
+	private Checkpoint checkpoint;
+	/**
+	 * Number of documents between checkpoints.
+	 */
+	private int interval;
+	/**
+	 * Tells if the loader has found errors.
+	 */
+	private BooleanSupplier failed;
+	/**
+	 * Number of documents written (including those written before resuming).
+	 */
+	private int nDocuments;
+	/**
+	 * Id of the last document written (null if there is none).
+	 */
+	private Integer lastId;
+
+	/**
+	 * Creates a sink going on from the last checkpoint saved (if any).
+	 * 
+	 * @param out
+	 *            Sink where the documents are written (opened on the output
+	 *            file truncated to the checkpoint)
+	 * @param checkpoint
+	 *            Progress of the export
+	 * @param interval
+	 *            Number of documents between checkpoints
+	 * @param failed
+	 *            Tells if the loader has found errors (no more checkpoints are
+	 *            saved)
+	 */
+	public CheckpointingSink(DocumentSink out, Checkpoint checkpoint, int interval, BooleanSupplier failed) {
+		this.out = out;
+		this.checkpoint = checkpoint;
+		this.interval = Math.max(interval, 1);
+		this.failed = failed;
+		this.nDocuments = checkpoint.getDocuments();
+		this.lastId = checkpoint.getLastId();
+	}
+
+	@Override
+	public void write(int id, String document) throws IOException {
+		out.write(id, document);
+		lastId = id;
+		nDocuments++;
+
+		// Checkpoints are taken at the same documents when an export is resumed
+		if (nDocuments % interval == 0) {
+			save(false);
+		}
+	}
+
+	/**
+	 * Saves the last checkpoint, marking the export as completed. Nothing is saved
+	 * if the loader has found errors.
+	 * 
+	 * @throws IOException
+	 *             When the output or the checkpoint cannot be written
+	 */
+	public void complete() throws IOException {
+		save(true);
+	}
+
+	/**
+	 * Writes out the documents received so far and saves their progress, unless
+	 * the loader has found errors.
+	 * 
+	 * @param complete
+	 *            true if the export has been completed
+	 * @throws IOException
+	 *             When the output or the checkpoint cannot be written
+	 */
+	private void save(boolean complete) throws IOException {
+		if (failed.getAsBoolean()) {
+			return;
+		}
+		long offset = out.checkpoint();
+		if (offset >= 0) {
+			checkpoint.save(lastId, offset, nDocuments, complete);
+		}
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return nDocuments;
+	}
+
+	@Override
+	public String getStats() {
+		return out.getStats();
+	}
+
+	@Override
+	public long checkpoint() throws IOException {
+		return out.checkpoint();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
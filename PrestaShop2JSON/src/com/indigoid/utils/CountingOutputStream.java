@@ -0,0 +1,46 @@
+package com.indigoid.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that counts the bytes written through it.
+ *
+ * @author Charlie
+ *
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	/**
+	 * Number of bytes written.
+	 */
+	private long count = 0;
+
+	/**
+	 * @param out
+	 *            Stream receiving the data
+	 */
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * @return Number of bytes written.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+}
@@ -0,0 +1,61 @@
+package com.indigoid.utils;
+
+import java.io.IOException;
+
+/**
+ * Destination of the documents built by a loader. Documents are handed over one
+ * by one as soon as they are complete, so an implementation can write them out
+ * without keeping the whole collection in memory.
+ * 
+ * @author Charlie
+ *
+ */
+public interface DocumentSink extends AutoCloseable {
+
+	/**
+	 * Writes one complete document.
+	 * 
+	 * @param id
+	 *            Id of the document (the value of its key column)
+	 * @param document
+	 *            JSON representation of the document
+	 * @throws IOException
+	 *             When the document cannot be written
+	 */
+	public void write(int id, String document) throws IOException;
+
+	/**
+	 * @return Number of documents written so far.
+	 */
+	public int getDocumentCount();
+
+	/**
+	 * @return Size and throughput of the output written so far, or null if the
+	 *         sink does not measure them.
+	 */
+	public default String getStats() {
+		return null;
+	}
+
+	/**
+	 * Writes out all the documents received so far, so that the output can be
+	 * resumed from this point by a later run.
+	 * 
+	 * @return Size of the output (bytes) at this point, or -1 if the sink
+	 *         cannot be resumed.
+	 * @throws IOException
+	 *             When the documents cannot be written
+	 */
+	public default long checkpoint() throws IOException {
+		return -1;
+	}
+
+	/**
+	 * Writes any buffered document and frees the resources held by the sink.
+	 * 
+	 * @throws IOException
+	 *             When the buffered documents cannot be written
+	 */
+	@Override
+	public void close() throws IOException;
+}
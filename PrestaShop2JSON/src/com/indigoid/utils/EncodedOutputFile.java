@@ -0,0 +1,247 @@
+package com.indigoid.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output file encoded with an OutputCodec, as used by the document sinks. The
+ * file can be checkpointed: checkpoint() writes out everything written so far,
+ * as a complete piece of the encoding (a finished gzip member), and returns the
+ * size of the file at that point. A later run can reopen the file truncated to
+ * that size and go on writing, and the result is still a valid file (gzip
+ * files may be made of several members).
+ *
+ * @author Charlie
+ *
+ */
+public class EncodedOutputFile implements Closeable {
+
+	/**
+	 * Stream that is flushed, but not closed, when the streams over it are
+	 * closed. It keeps the file open until its final size has been read, and the
+	 * buffer of the file open when an encoder is closed on a checkpoint.
+	 */
+	private static class UnclosableStream extends FilterOutputStream {
+
+		/**
+		 * @param out
+		 *            Stream to be kept open
+		 */
+		public UnclosableStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/**
+	 * Size of the buffer of the file (bytes).
+	 */
+	private static final int FILE_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The file.
+	 */
+	private FileOutputStream file;
+	/**
+	 * Buffer of the file, under the encoder.
+	 */
+	private BufferedOutputStream fileBuffer;
+	/**
+	 * Encoding of the file.
+	 */
+	private OutputCodec codec;
+	/**
+	 * Encoder writing on the buffer of the file.
+	 */
+	private OutputStream encoder;
+	/**
+	 * Counter of the bytes written to the encoder.
+	 */
+	private CountingOutputStream plain;
+	/**
+	 * Bytes written to previous encoders (gzip encoders are replaced on every
+	 * checkpoint).
+	 */
+	private long plainBytes = 0;
+	/**
+	 * Size of the file when it was opened.
+	 */
+	private long startOffset;
+	/**
+	 * Size of the file when it was closed (-1 while it is open).
+	 */
+	private long finalOffset = -1;
+
+	/**
+	 * Creates (or truncates) an output file.
+	 *
+	 * @param fileName
+	 *            Name of the file (as it is, see OutputCodec.fileName())
+	 * @param codec
+	 *            Encoding of the file
+	 * @throws IOException
+	 *             If the file cannot be created or opened for writing
+	 */
+	public EncodedOutputFile(String fileName, OutputCodec codec) throws IOException {
+		this(fileName, codec, 0);
+	}
+
+	/**
+	 * Opens an output file to go on writing after a checkpoint. The file is
+	 * truncated to the size it had on the checkpoint; with a zero size, it is
+	 * created (or truncated) as a new file.
+	 *
+	 * @param fileName
+	 *            Name of the file (as it is, see OutputCodec.fileName())
+	 * @param codec
+	 *            Encoding of the file (the same one it had)
+	 * @param resumeOffset
+	 *            Size of the file on the checkpoint (see checkpoint())
+	 * @throws IOException
+	 *             If the file cannot be opened for writing, or it is shorter
+	 *             than the checkpoint
+	 */
+	public EncodedOutputFile(String fileName, OutputCodec codec, long resumeOffset) throws IOException {
+		if (resumeOffset > 0) {
+			try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE)) {
+				if (channel.size() < resumeOffset) {
+					throw new IOException(fileName + " is shorter than its checkpoint (" + channel.size() + " < "
+							+ resumeOffset + " bytes)");
+				}
+				channel.truncate(resumeOffset);
+			}
+			this.file = new FileOutputStream(fileName, true);
+		} else {
+			this.file = new FileOutputStream(fileName);
+		}
+		this.startOffset = Math.max(resumeOffset, 0);
+		this.fileBuffer = new BufferedOutputStream(new UnclosableStream(file), FILE_BUFFER_SIZE);
+		this.codec = codec;
+		try {
+			openEncoder();
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts a new encoder on the buffer of the file. Closing the encoder does
+	 * not close the buffer.
+	 *
+	 * @throws IOException
+	 *             When the encoding header cannot be written
+	 */
+	private void openEncoder() throws IOException {
+		encoder = codec.wrap(new UnclosableStream(fileBuffer));
+		plain = new CountingOutputStream(encoder);
+	}
+
+	/**
+	 * @return Stream where the data to be encoded is written. It is replaced by a
+	 *         new one on every checkpoint.
+	 */
+	public OutputStream getStream() {
+		return plain;
+	}
+
+	/**
+	 * @return Channel of the file. Only plain files may be written through it
+	 *         (the stream must be flushed before), bypassing the buffer.
+	 */
+	public FileChannel getChannel() {
+		return file.getChannel();
+	}
+
+	/**
+	 * @return Encoding of the file.
+	 */
+	public OutputCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Writes out everything written so far, as a complete piece of the encoding,
+	 * and forces it to the disk. Afterwards, data must be written to the new
+	 * stream (see getStream()).
+	 *
+	 * @return Size of the file.
+	 * @throws IOException
+	 *             When the file cannot be written
+	 */
+	public long checkpoint() throws IOException {
+
+		// Parallel gzip ends its member on flush, gzip ends it on close (which
+		// also frees its deflater)
+		boolean finished = (encoder instanceof GZIPOutputStream);
+		if (finished) {
+			plain.close();
+		} else {
+			plain.flush();
+		}
+		fileBuffer.flush();
+		file.getFD().sync();
+		long offset = file.getChannel().position();
+
+		// The header of the next member is not part of the checkpoint
+		if (finished) {
+			plainBytes += plain.getCount();
+			openEncoder();
+		}
+		return offset;
+	}
+
+	/**
+	 * @return Number of bytes written to the stream (before the encoding) since
+	 *         the file was opened.
+	 */
+	public long getPlainBytes() {
+		return plainBytes + plain.getCount();
+	}
+
+	/**
+	 * @return Number of bytes written to the file since it was opened (zero if
+	 *         the size of the file cannot be read). Complete once the file is
+	 *         closed.
+	 */
+	public long getFileBytes() {
+		try {
+			return ((finalOffset >= 0) ? finalOffset : file.getChannel().position()) - startOffset;
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (finalOffset >= 0) {
+			return;
+		}
+		try {
+			plain.close();
+			finalOffset = file.getChannel().position();
+		} finally {
+			if (finalOffset < 0) {
+				finalOffset = startOffset;
+			}
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.indigoid.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Document sink that writes each document to a file as soon as it is received,
+ * one document per line (same layout as PrstshpLoader.dumpData()). Output is
+ * buffered, so documents reach the disk in large blocks.<br/>
+ * <br/>
+ * The file may be encoded (compressed) with an OutputCodec. Bytes before and
+ * after the encoding are counted, together with the time spent writing, to
+ * report the throughput of the output (see getStats()). The file can be
+ * checkpointed and resumed (see EncodedOutputFile).
+ *
+ * @author Charlie
+ *
+ */
+public class FileDocumentSink implements DocumentSink {
+
+	/**
+	 * Size of the output buffer (characters).
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * Bytes on a megabyte (for the stats).
+	 */
+	private static final double MB = 1024.0 * 1024.0;
+
+	/**
+	 * Output file.
+	 */
+	private EncodedOutputFile output;
+	/**
+	 * Output file writer.
+	 */
+	private BufferedWriter writer;
+	/**
+	 * Number of documents written.
+	 */
+	private int nDocuments;
+	/**
+	 * Time spent writing and encoding (nanoseconds).
+	 */
+	private long writeNanos;
+
+	/**
+	 * Creates (or truncates) a plain output file.
+	 *
+	 * @param fileName
+	 *            Name of the output file
+	 * @throws IOException
+	 *             If the file cannot be created or opened for writing
+	 */
+	public FileDocumentSink(String fileName) throws IOException {
+		this(fileName, OutputCodec.PLAIN);
+	}
+
+	/**
+	 * Creates (or truncates) an output file.
+	 *
+	 * @param fileName
+	 *            Name of the output file (as it is, see OutputCodec.fileName())
+	 * @param codec
+	 *            Encoding of the file
+	 * @throws IOException
+	 *             If the file cannot be created or opened for writing
+	 */
+	public FileDocumentSink(String fileName, OutputCodec codec) throws IOException {
+		this(fileName, codec, 0);
+	}
+
+	/**
+	 * Opens an output file to go on writing after a checkpoint (see
+	 * EncodedOutputFile).
+	 *
+	 * @param fileName
+	 *            Name of the output file (as it is, see OutputCodec.fileName())
+	 * @param codec
+	 *            Encoding of the file
+	 * @param resumeOffset
+	 *            Size of the file on the checkpoint (zero to start a new file)
+	 * @throws IOException
+	 *             If the file cannot be opened for writing
+	 */
+	public FileDocumentSink(String fileName, OutputCodec codec, long resumeOffset) throws IOException {
+		long start = System.nanoTime();
+		this.output = new EncodedOutputFile(fileName, codec, resumeOffset);
+		this.writer = newWriter();
+		this.nDocuments = 0;
+		this.writeNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * @return A writer on the current stream of the output file.
+	 */
+	private BufferedWriter newWriter() {
+		return new BufferedWriter(new OutputStreamWriter(output.getStream(), Charset.defaultCharset()), BUFFER_SIZE);
+	}
+
+	@Override
+	public void write(int id, String document) throws IOException {
+		long start = System.nanoTime();
+		writer.write(document);
+		writer.newLine();
+		nDocuments++;
+		writeNanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return nDocuments;
+	}
+
+	@Override
+	public long checkpoint() throws IOException {
+		long start = System.nanoTime();
+		writer.flush();
+		long offset = output.checkpoint();
+		writer = newWriter();
+		writeNanos += System.nanoTime() - start;
+		return offset;
+	}
+
+	/**
+	 * @return Number of bytes of the documents (before the encoding). Complete
+	 *         once the sink is closed.
+	 */
+	public long getUncompressedBytes() {
+		return output.getPlainBytes();
+	}
+
+	/**
+	 * @return Number of bytes written to the file. Complete once the sink is
+	 *         closed.
+	 */
+	public long getCompressedBytes() {
+		return output.getFileBytes();
+	}
+
+	/**
+	 * @return Size and throughput of the output, before and after the encoding.
+	 *         Throughput is measured over the time spent writing (and encoding)
+	 *         documents, not over the time spent loading them.
+	 */
+	@Override
+	public String getStats() {
+		return formatStats(output.getCodec(), getUncompressedBytes(), getCompressedBytes(), writeNanos);
+	}
+
+	/**
+	 * Formats the size and throughput of an output file.
+	 *
+	 * @param codec
+	 *            Encoding of the file
+	 * @param in
+	 *            Number of bytes before the encoding
+	 * @param out
+	 *            Number of bytes written to the file
+	 * @param nanos
+	 *            Time spent writing (nanoseconds)
+	 * @return Size and throughput, before and after the encoding.
+	 */
+	static String formatStats(OutputCodec codec, long in, long out, long nanos) {
+		double seconds = Math.max(nanos, 1) / 1e9;
+		if (codec == OutputCodec.PLAIN) {
+			return String.format("%s: %.1f MB written at %.1f MB/s", codec, out / MB, out / MB / seconds);
+		}
+		return String.format("%s: %.1f MB uncompressed at %.1f MB/s, %.1f MB compressed at %.1f MB/s (ratio %.2f)",
+				codec, in / MB, in / MB / seconds, out / MB, out / MB / seconds, out == 0 ? 0.0 : (double) in / out);
+	}
+
+	@Override
+	public void close() throws IOException {
+		long start = System.nanoTime();
+		try {
+			writer.close();
+		} finally {
+			output.close();
+			writeNanos += System.nanoTime() - start;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.indigoid.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map of int keys to long values (not negative), without boxing: keys
+ * and values are kept on two arrays indexed by the same slot, and collisions
+ * are solved by open addressing (linear probing). Millions of entries take
+ * 12 bytes each (16 at most before the arrays grow), instead of the ~80
+ * bytes of a HashMap&lt;Integer, Long&gt; entry.<br/>
+ * <br/>
+ * It is not thread safe.
+ *
+ * @author Charlie
+ *
+ */
+public class IntLongHashMap {
+
+	/**
+	 * Value of the free slots (and returned for missing keys).
+	 */
+	public static final long NO_VALUE = -1L;
+	/**
+	 * Initial number of slots.
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+	/**
+	 * Highest number of slots (a power of two).
+	 */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * Key of each slot.
+	 */
+	private int[] keys;
+	/**
+	 * Value of each slot (NO_VALUE if the slot is free).
+	 */
+	private long[] values;
+	/**
+	 * Number of slots minus one (the number of slots is a power of two).
+	 */
+	private int mask;
+	/**
+	 * Bits dropped from the hash of a key to find its first slot.
+	 */
+	private int shift;
+	/**
+	 * Number of entries.
+	 */
+	private int size = 0;
+	/**
+	 * Number of entries at which the arrays grow (3/4 of the slots).
+	 */
+	private int threshold;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public IntLongHashMap() {
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Associates a value with a key, replacing the previous one.
+	 *
+	 * @param key
+	 *            The key
+	 * @param value
+	 *            The value (not negative)
+	 * @return The previous value of the key, or NO_VALUE if it had none.
+	 */
+	public long put(int key, long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value " + value + " for key " + key);
+		}
+		int slot = slotOf(key);
+		long previous = values[slot];
+		if (previous == NO_VALUE) {
+			if (size >= threshold) {
+				grow();
+				slot = slotOf(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+		return previous;
+	}
+
+	/**
+	 * @param key
+	 *            The key
+	 * @return The value of the key, or NO_VALUE if it has none.
+	 */
+	public long get(int key) {
+		return values[slotOf(key)];
+	}
+
+	/**
+	 * @return Number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return All the keys, sorted.
+	 */
+	public int[] sortedKeys() {
+		int[] sorted = new int[size];
+		int n = 0;
+		for (int slot = 0; slot < values.length; slot++) {
+			if (values[slot] != NO_VALUE) {
+				sorted[n++] = keys[slot];
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Finds the slot of a key: the one holding it, or the free slot where it
+	 * would be added.
+	 *
+	 * @param key
+	 *            The key
+	 * @return Index of the slot.
+	 */
+	private int slotOf(int key) {
+		// Fibonacci hashing: the high bits of the product mix all the bits of the key
+		int slot = (key * 0x9E3779B9) >>> shift;
+		while (values[slot] != NO_VALUE && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Allocates empty arrays.
+	 *
+	 * @param capacity
+	 *            Number of slots (a power of two)
+	 */
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new long[capacity];
+		Arrays.fill(values, NO_VALUE);
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+		threshold = (capacity == MAX_CAPACITY) ? capacity - 1 : capacity / 4 * 3;
+	}
+
+	/**
+	 * Doubles the number of slots, placing again every entry.
+	 */
+	private void grow() {
+		if (keys.length == MAX_CAPACITY) {
+			throw new IllegalStateException("Map is full (" + size + " entries)");
+		}
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+		allocate(keys.length * 2);
+		for (int slot = 0; slot < oldValues.length; slot++) {
+			if (oldValues[slot] != NO_VALUE) {
+				int newSlot = slotOf(oldKeys[slot]);
+				keys[newSlot] = oldKeys[slot];
+				values[newSlot] = oldValues[slot];
+			}
+		}
+	}
+}
@@ -14,9 +14,35 @@ package com.indigoid.utils;
 public class JSONBuilder {
 
 	/**
-	 * Unicode code point of the character " (double quotes)
+	 * Hexadecimal digits used on \\uXXXX escapes.
 	 */
-	private static final int DOUBLE_QUOTE_CODEPOINT = 0x0022;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	/**
+	 * Escape sequence of each ASCII character, or null if the character is
+	 * written as is. Only the quotation mark, the reverse solidus and the control
+	 * characters are escaped.
+	 */
+	private static final String[] ASCII_ESCAPES = new String[128];
+
+	static {
+		StringBuilder escape = new StringBuilder(6);
+		for (char c = 0; c < 0x20; c++) {
+			escape.setLength(0);
+			appendUnicodeEscape(escape, c);
+			ASCII_ESCAPES[c] = escape.toString();
+		}
+		escape.setLength(0);
+		appendUnicodeEscape(escape, (char) 0x7F);
+		ASCII_ESCAPES[0x7F] = escape.toString();
+
+		ASCII_ESCAPES['"'] = "\\\"";
+		ASCII_ESCAPES['\\'] = "\\\\";
+		ASCII_ESCAPES['\b'] = "\\b";
+		ASCII_ESCAPES['\f'] = "\\f";
+		ASCII_ESCAPES['\n'] = "\\n";
+		ASCII_ESCAPES['\r'] = "\\r";
+		ASCII_ESCAPES['\t'] = "\\t";
+	}
 	/**
 	 * The JSON object is built upon this string builder.
 	 */
@@ -131,50 +157,75 @@ public class JSONBuilder {
 		doContinuation();
 		appendFieldName(name);
 		json.append("\"");
-		json.append(escapeCharacters(value));
+		escapeCharacters(json, value);
 		json.append("\"");
 	}
 
 	/**
-	 * Escape it according to the RFC. JSON is pretty liberal: The only characters
-	 * you must escape are \, ", and control codes (anything less than U+0020).
-	 *
-	 * This structure of escaping is specific to JSON. All of the escapes can be
-	 * written as \\uXXXX where XXXX is the UTF-16 code unit for that character.
+	 * Escapes the characters of a string value as required by JSON: the
+	 * quotation mark, the reverse solidus and the control characters. Any other
+	 * character is copied as is, so runs of characters that need no escaping are
+	 * copied in bulk. Unpaired surrogates are also escaped, as they cannot be
+	 * encoded on the output file.<br/>
+	 * <br/>
+	 * The escaped string is appended to a buffer, so no intermediate string is
+	 * created. This is shared with JSONWriter.
 	 * 
+	 * @param newString
+	 *            Buffer where the escaped string is appended.
 	 * @param myString
 	 *            String with possibly control characters.
-	 * @return The new string with control characters escaped.
 	 *
-	 * @see http://www.ietf.org/rfc/rfc4627.txt
+	 * @see https://www.rfc-editor.org/rfc/rfc8259.txt
 	 */
-	private String escapeCharacters(String myString) {
+	static void escapeCharacters(StringBuilder newString, String myString) {
 
 		int len = myString.length();
-		StringBuilder newString = new StringBuilder(len);
-		for (int offset = 0; offset < len;) {
-			int codePoint = myString.codePointAt(offset);
-			offset += Character.charCount(codePoint);
+		int runStart = 0;
+		for (int offset = 0; offset < len; offset++) {
+			char c = myString.charAt(offset);
 
-			// Replace invisible control characters and unused code points
-			switch (Character.getType(codePoint)) {
-			case Character.CONTROL: // \p{Cc}
-			case Character.FORMAT: // \p{Cf}
-			case Character.PRIVATE_USE: // \p{Co}
-			case Character.SURROGATE: // \p{Cs}
-			case Character.UNASSIGNED: // \p{Cn}
-				newString.append("\\u");
-				newString.append(String.format("%04d", codePoint));
-				break;
-			default:
-				if (codePoint == DOUBLE_QUOTE_CODEPOINT) 
-					newString.append("\\"); // Escape the quotation mark " --> \" 
-				newString.append(Character.toChars(codePoint));
-				break;
+			if (c < ASCII_ESCAPES.length) {
+				String escape = ASCII_ESCAPES[c];
+				if (escape == null) {
+					continue;
+				}
+				newString.append(myString, runStart, offset);
+				newString.append(escape);
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && offset + 1 < len
+						&& Character.isLowSurrogate(myString.charAt(offset + 1))) {
+					offset++;
+					continue;
+				}
+				newString.append(myString, runStart, offset);
+				appendUnicodeEscape(newString, c);
+			} else {
+				continue;
 			}
+
+			runStart = offset + 1;
 		}
 
-		return newString.toString();
+		// Last run of characters without escaping
+		newString.append(myString, runStart, len);
+	}
+
+	/**
+	 * Appends a character as a \\uXXXX escape, where XXXX is the UTF-16 code unit
+	 * in hexadecimal.
+	 * 
+	 * @param buffer
+	 *            Buffer where the escape is appended.
+	 * @param c
+	 *            Character to be escaped.
+	 */
+	private static void appendUnicodeEscape(StringBuilder buffer, char c) {
+		buffer.append('\\').append('u');
+		buffer.append(HEX_DIGITS[(c >> 12) & 0xF]);
+		buffer.append(HEX_DIGITS[(c >> 8) & 0xF]);
+		buffer.append(HEX_DIGITS[(c >> 4) & 0xF]);
+		buffer.append(HEX_DIGITS[c & 0xF]);
 	}
 
 	/**
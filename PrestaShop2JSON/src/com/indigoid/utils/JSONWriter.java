@@ -0,0 +1,366 @@
+package com.indigoid.utils;
+
+import java.time.Instant;
+
+/**
+ * This class writes JSON objects into a single buffer, one element after the
+ * other, as a stream: objects and arrays are opened and closed by begin/end
+ * methods and nested levels are written straight into the same buffer. The
+ * buffer can be reused for the next object after calling reset(), so writing
+ * many objects does not create a builder per object and level.<br/>
+ * <br/>
+ * Objects already written by another JSONWriter can be embedded with
+ * appendObject(). They are always written at level zero and they are indented
+ * while being copied, so the same object can be embedded at any level.<br/>
+ * <br/>
+ * By default the output is formatted exactly as JSONBuilder does (one field
+ * per line, indented with tabs, dates as ISODate() objects of the mongo shell).
+ * A compact writer writes each object on a single line, without blanks, as
+ * MongoDB Extended JSON (relaxed mode): dates are written as {"$date": ...} and
+ * decimals as {"$numberDecimal": ...}, so the output is valid JSON that streaming
+ * tools can split by lines and parse.
+ *
+ * @author Charlie
+ *
+ */
+public class JSONWriter {
+
+	/**
+	 * Padding of the first levels (longer paddings are written in chunks).
+	 */
+	private static final String TABS = "\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t";
+	/**
+	 * Initial size of the buffer (characters).
+	 */
+	private static final int INITIAL_CAPACITY = 4096;
+	/**
+	 * Initial number of nested objects.
+	 */
+	private static final int INITIAL_DEPTH = 8;
+	/**
+	 * First year of the dates written as ISO strings on compact writers (relaxed
+	 * Extended JSON only allows them from 1970 to 9999).
+	 */
+	private static final String FIRST_RELAXED_YEAR = "1970";
+
+	/**
+	 * Set when objects are written on a single line, as Extended JSON.
+	 */
+	private final boolean compact;
+	/**
+	 * The JSON is written on this buffer.
+	 */
+	private StringBuilder json;
+	/**
+	 * For each object currently opened (from outer to inner), tells if something
+	 * has already been written into it.
+	 */
+	private boolean[] hasContent = new boolean[INITIAL_DEPTH];
+	/**
+	 * Index of the inner object currently opened (-1 if there is none). This is
+	 * also the indentation level of the object.
+	 */
+	private int depth;
+	/**
+	 * Flag used to prevent that after a property name or an array opening a comma
+	 * is inserted before the value.
+	 */
+	private boolean doNotAppendComma;
+
+	/**
+	 * Creates a new writer (indented, mongo shell dates) with an empty buffer.
+	 */
+	public JSONWriter() {
+		this(false);
+	}
+
+	/**
+	 * Creates a new writer with an empty buffer.
+	 *
+	 * @param compact
+	 *            true to write objects on a single line, as Extended JSON
+	 */
+	public JSONWriter(boolean compact) {
+		this.compact = compact;
+		this.json = new StringBuilder(INITIAL_CAPACITY);
+		this.depth = -1;
+		this.doNotAppendComma = false;
+	}
+
+	/**
+	 * Empties the buffer, so the writer can be used to write a new object. The
+	 * memory of the buffer is kept.
+	 */
+	public void reset() {
+		this.json.setLength(0);
+		this.depth = -1;
+		this.doNotAppendComma = false;
+	}
+
+	/**
+	 * @return true if objects are written on a single line, as Extended JSON.
+	 */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * @return Number of characters written.
+	 */
+	public int length() {
+		return json.length();
+	}
+
+	@Override
+	public String toString() {
+		return json.toString();
+	}
+
+	/**
+	 * Opens a new object. At the outer level this starts the JSON; otherwise the
+	 * object is the value of an array element or of a property (see name()). Call
+	 * endObject() when done with the object fields.
+	 */
+	public void beginObject() {
+		if (depth >= 0) {
+			doContinuation();
+		}
+
+		depth++;
+		if (depth == hasContent.length) {
+			boolean[] deeper = new boolean[depth * 2];
+			System.arraycopy(hasContent, 0, deeper, 0, depth);
+			hasContent = deeper;
+		}
+		hasContent[depth] = false;
+
+		if (compact) {
+			json.append('{');
+		} else {
+			appendPadding(depth);
+			json.append("{\n");
+		}
+	}
+
+	/**
+	 * Closes current object.
+	 */
+	public void endObject() {
+		if (!compact) {
+			json.append('\n');
+			appendPadding(depth);
+		}
+		json.append('}');
+		depth--;
+	}
+
+	/**
+	 * Opens an array as a field of current object. Call endArray() when done
+	 * with inserting array elements.
+	 *
+	 * @param name
+	 *            Name of the field for current array.
+	 */
+	public void beginArray(String name) {
+		doContinuation();
+		appendFieldName(name);
+		json.append(compact ? "[" : "[ ");
+		doNotAppendComma = true;
+	}
+
+	/**
+	 * Closes current array.
+	 */
+	public void endArray() {
+		json.append(compact ? "]" : " ]");
+		doNotAppendComma = false;
+	}
+
+	/**
+	 * Writes the name of a field whose value is an object. The object is written
+	 * next with beginObject() or appendObject().
+	 *
+	 * @param name
+	 *            Name of the field.
+	 */
+	public void name(String name) {
+		doContinuation();
+		appendFieldName(name);
+		doNotAppendComma = true;
+	}
+
+	/**
+	 * Appends a new integer element to current object.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendInt(String name, int value) {
+		doContinuation();
+		appendFieldName(name);
+		json.append(value);
+	}
+
+	/**
+	 * Appends a new long integer element to current object.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendLong(String name, long value) {
+		doContinuation();
+		appendFieldName(name);
+		json.append(value);
+	}
+
+	/**
+	 * Appends a new String element to current object. The value is escaped.
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendString(String name, String value) {
+		doContinuation();
+		appendFieldName(name);
+		json.append('"');
+		JSONBuilder.escapeCharacters(json, value);
+		json.append('"');
+	}
+
+	/**
+	 * Appends a new Decimal element to current object (as a $numberDecimal
+	 * object on compact writers).
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value
+	 */
+	public void appendDecimal(String name, String value) {
+		doContinuation();
+		appendFieldName(name);
+		if (compact) {
+			json.append("{\"$numberDecimal\":\"");
+			json.append(value);
+			json.append("\"}");
+		} else {
+			json.append(value);
+		}
+	}
+
+	/**
+	 * Appends a new Date/timestamp element to current object as an ISODate()
+	 * object (as a $date object on compact writers: an ISO string from 1970 to
+	 * 9999, a $numberLong of milliseconds since the epoch otherwise).
+	 *
+	 * @param name
+	 *            Field name
+	 * @param value
+	 *            Field value (ISO 8601 UTC date time, such as
+	 *            "2017-05-02T10:20:30Z")
+	 */
+	public void appendDate(String name, String value) {
+		doContinuation();
+		appendFieldName(name);
+		if (compact) {
+			if (value.length() > 4 && value.charAt(4) == '-' && value.compareTo(FIRST_RELAXED_YEAR) >= 0) {
+				json.append("{\"$date\":\"");
+				json.append(value);
+				json.append("\"}");
+			} else {
+				json.append("{\"$date\":{\"$numberLong\":\"");
+				json.append(Instant.parse(value).toEpochMilli());
+				json.append("\"}}");
+			}
+		} else {
+			json.append("ISODate(\"");
+			json.append(value);
+			json.append("\")");
+		}
+	}
+
+	/**
+	 * Appends an object written by another JSONWriter (at level zero) as an array
+	 * element or as the value of a property (see name()). The object is indented
+	 * to the level it takes on this writer (compact objects are copied as they
+	 * are). Both writers must be of the same kind.
+	 *
+	 * @param jsonText
+	 *            JSON representation of the object.
+	 */
+	public void appendObject(String jsonText) {
+		doContinuation();
+		if (compact) {
+			json.append(jsonText);
+			return;
+		}
+
+		int level = depth + 1;
+		appendPadding(level);
+
+		// Line breaks are always structural (they are escaped inside of values)
+		int start = 0, end;
+		while ((end = jsonText.indexOf('\n', start)) >= 0) {
+			json.append(jsonText, start, end + 1);
+			appendPadding(level);
+			start = end + 1;
+		}
+		json.append(jsonText, start, jsonText.length());
+	}
+
+	/**
+	 * Manages element to element separators as well as line breaks.
+	 */
+	private void doContinuation() {
+		if (hasContent[depth]) {
+			if (!doNotAppendComma) {
+				json.append(',');
+			} else {
+				doNotAppendComma = false;
+			}
+			if (!compact) {
+				json.append('\n');
+			}
+		}
+		hasContent[depth] = true;
+	}
+
+	/**
+	 * Appends the field name part of the JSON. Field names are always enclosed in
+	 * double quotes.
+	 *
+	 * @param name
+	 *            Name of the field to be added
+	 */
+	private void appendFieldName(String name) {
+		if (compact) {
+			json.append('"');
+			json.append(name);
+			json.append("\":");
+			return;
+		}
+		appendPadding(depth + 1);
+		json.append('"');
+		json.append(name);
+		json.append("\": ");
+	}
+
+	/**
+	 * Appends the padding of an indentation level.
+	 *
+	 * @param level
+	 *            Indentation level (number of tabs)
+	 */
+	private void appendPadding(int level) {
+		for (; level > TABS.length(); level -= TABS.length()) {
+			json.append(TABS);
+		}
+		json.append(TABS, 0, level);
+	}
+}
@@ -0,0 +1,150 @@
+package com.indigoid.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with a fixed relative precision, as HdrHistogram
+ * does: each power of two is split into the same number of buckets, so
+ * percentiles are within about 1.6% of the real value whatever their
+ * magnitude, from nanoseconds to hours, with a fixed amount of memory.<br/>
+ * <br/>
+ * Values are recorded without locks, so the same histogram can be shared by
+ * several threads.
+ *
+ * @author Charlie
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Bits of the value kept on each bucket (after the highest one).
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+	/**
+	 * Number of buckets of each power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Number of buckets, enough for any positive long.
+	 */
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+	/**
+	 * Number of values recorded on each bucket.
+	 */
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/**
+	 * Number of values recorded.
+	 */
+	private LongAdder count = new LongAdder();
+	/**
+	 * Sum of the values recorded.
+	 */
+	private LongAdder sum = new LongAdder();
+	/**
+	 * Highest value recorded.
+	 */
+	private AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *            The value (negative values are recorded as zero)
+	 */
+	public void record(long value) {
+		value = Math.max(value, 0);
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * @return Number of values recorded.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Sum of the values recorded.
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return Highest value recorded (zero if there are none).
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return Mean of the values recorded (zero if there are none).
+	 */
+	public double getMean() {
+		long n = getCount();
+		return (n == 0) ? 0.0 : (double) getSum() / n;
+	}
+
+	/**
+	 * Finds the value under which a given percentage of the values fall. The value
+	 * is the highest one of its bucket (never above the highest value recorded).
+	 *
+	 * @param percentile
+	 *            Percentage of the values (0..100)
+	 * @return The value at the percentile (zero if there are none).
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = getCount();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * n));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts.get(bucket);
+			if (seen >= rank) {
+				return Math.min(highestValueOf(bucket), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Finds the bucket of a value. Values below SUB_BUCKETS have their own
+	 * bucket; above, each power of two is split into SUB_BUCKETS buckets.
+	 *
+	 * @param value
+	 *            The value (not negative)
+	 * @return Index of the bucket.
+	 */
+	private static int bucketOf(long value) {
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		if (magnitude < SUB_BUCKET_BITS) {
+			return (int) value;
+		}
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Finds the highest value of a bucket.
+	 *
+	 * @param bucket
+	 *            Index of the bucket
+	 * @return The highest value recorded on the bucket.
+	 */
+	private static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+		long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
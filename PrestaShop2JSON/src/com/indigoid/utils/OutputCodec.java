@@ -0,0 +1,89 @@
+package com.indigoid.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodings of the output files.
+ * <ul>
+ * <li>PLAIN: text as it is, that mongoimport reads directly.</li>
+ * <li>GZIP: gzip compressed on the writing thread.</li>
+ * <li>PARALLEL_GZIP: gzip compressed by blocks on the spare cores (see
+ * ParallelGZIPOutputStream).</li>
+ * </ul>
+ * Compressed files are imported with <i>gunzip -c file.json.gz |
+ * mongoimport</i>.
+ *
+ * @author Charlie
+ *
+ */
+public enum OutputCodec {
+
+	PLAIN(""), GZIP(".gz"), PARALLEL_GZIP(".gz");
+
+	/**
+	 * Size of the buffer of the gzip compressor (bytes).
+	 */
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Extension of the files with this encoding (empty if there is none).
+	 */
+	private String extension;
+
+	/**
+	 * @param extension
+	 *            Extension of the files with this encoding
+	 */
+	private OutputCodec(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Adds the extension of this encoding to a file name, unless it already has
+	 * it.
+	 *
+	 * @param fileName
+	 *            Name of the output file
+	 * @return The name of the encoded file.
+	 */
+	public String fileName(String fileName) {
+		return fileName.endsWith(extension) ? fileName : fileName + extension;
+	}
+
+	/**
+	 * Encodes a stream.
+	 *
+	 * @param out
+	 *            Stream receiving the encoded data
+	 * @return The stream where the data to be encoded is written. Closing it
+	 *         closes the given stream.
+	 * @throws IOException
+	 *             When the encoding header cannot be written
+	 */
+	public OutputStream wrap(OutputStream out) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+		case PARALLEL_GZIP:
+			return new ParallelGZIPOutputStream(out);
+		default:
+			return out;
+		}
+	}
+
+	/**
+	 * Finds an encoding by its name, as written on the properties file (plain,
+	 * gzip or parallel_gzip). Case is ignored.
+	 *
+	 * @param name
+	 *            Name of the encoding
+	 * @return The encoding.
+	 * @throws IllegalArgumentException
+	 *             If there is no encoding with that name
+	 */
+	public static OutputCodec fromName(String name) {
+		return OutputCodec.valueOf(name.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,210 @@
+package com.indigoid.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream that compresses blocks of data on several threads. The
+ * data is split into blocks of the same size and each block is compressed as
+ * an independent gzip member; members are written in order, one after the
+ * other. A file made of several members is a valid gzip file (gunzip and
+ * GZIPInputStream read them all as one stream), a little bit bigger than if
+ * it were compressed as a whole.<br/>
+ * <br/>
+ * Only a few blocks per thread are kept in memory waiting to be written, so a
+ * slow disk makes the writer wait instead of filling the memory.
+ *
+ * @author Charlie
+ *
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+	/**
+	 * Default size of the blocks compressed at once (bytes).
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	/**
+	 * Number of blocks per thread that can be waiting to be written.
+	 */
+	private static final int PENDING_BLOCKS_PER_THREAD = 2;
+
+	/**
+	 * Where the compressed blocks are written.
+	 */
+	private OutputStream out;
+	/**
+	 * Size of the blocks (bytes).
+	 */
+	private int blockSize;
+	/**
+	 * Block being filled.
+	 */
+	private byte[] block;
+	/**
+	 * Bytes on the block being filled.
+	 */
+	private int blockLength = 0;
+	/**
+	 * Threads compressing the blocks.
+	 */
+	private ExecutorService compressors;
+	/**
+	 * Blocks being compressed, in the order they have to be written.
+	 */
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	/**
+	 * Maximum number of blocks waiting to be written.
+	 */
+	private int maxPending;
+	/**
+	 * Set once the stream has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Creates a stream that compresses blocks of the default size with one
+	 * thread per spare core (all of them but one, at least one).
+	 *
+	 * @param out
+	 *            Where the compressed data is written
+	 */
+	public ParallelGZIPOutputStream(OutputStream out) {
+		this(out, DEFAULT_BLOCK_SIZE, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * Creates a stream.
+	 *
+	 * @param out
+	 *            Where the compressed data is written
+	 * @param blockSize
+	 *            Size of the blocks compressed at once (bytes)
+	 * @param threads
+	 *            Number of threads compressing blocks
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int blockSize, int threads) {
+		this.out = out;
+		this.blockSize = blockSize;
+		this.block = new byte[blockSize];
+		this.maxPending = threads * PENDING_BLOCKS_PER_THREAD;
+		this.compressors = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "gzip-compressor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		block[blockLength++] = (byte) b;
+		if (blockLength == blockSize) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, n);
+			blockLength += n;
+			off += n;
+			len -= n;
+			if (blockLength == blockSize) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Compresses the data written so far and writes it out. The data written
+	 * after this starts a new gzip member.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (blockLength > 0) {
+			submitBlock();
+		}
+		while (!pending.isEmpty()) {
+			writeNextBlock();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+		} finally {
+			compressors.shutdownNow();
+			out.close();
+		}
+	}
+
+	/**
+	 * Hands the current block over to the compressors and starts a new one. If
+	 * there are too many blocks waiting, the oldest ones are written first.
+	 *
+	 * @throws IOException
+	 *             When a block cannot be compressed or written
+	 */
+	private void submitBlock() throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		pending.addLast(compressors.submit(() -> compress(data, length)));
+
+		block = new byte[blockSize];
+		blockLength = 0;
+
+		while (pending.size() > maxPending) {
+			writeNextBlock();
+		}
+	}
+
+	/**
+	 * Waits for the oldest block to be compressed and writes it.
+	 *
+	 * @throws IOException
+	 *             When the block cannot be compressed or written
+	 */
+	private void writeNextBlock() throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (ExecutionException e) {
+			throw new IOException("Block cannot be compressed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		}
+	}
+
+	/**
+	 * Compresses a block as a complete gzip member.
+	 *
+	 * @param data
+	 *            Block data
+	 * @param length
+	 *            Bytes on the block
+	 * @return The gzip member.
+	 * @throws IOException
+	 *             Never (data is compressed in memory)
+	 */
+	private static byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(member, 1 << 16)) {
+			gzip.write(data, 0, length);
+		}
+		return member.toByteArray();
+	}
+}
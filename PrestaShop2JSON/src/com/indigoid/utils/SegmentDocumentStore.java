@@ -0,0 +1,240 @@
+package com.indigoid.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the documents on disk instead of the heap, for loads too large to be
+ * held in memory whose output must still come out in key order.<br/>
+ * <br/>
+ * Documents are appended to segment files (id, length and UTF-8 text of each
+ * one) on a temporary directory, and only their offsets stay on the heap, on
+ * a primitive int to long map: about 12 bytes per document, so 50 million
+ * documents need about 1 GB. A document written again replaces the
+ * previous one. Segments are read through memory mappings, so reading them
+ * back leaves the documents on the page cache instead of the heap. Segments
+ * are smaller than 2 GB, the limit of a mapping.<br/>
+ * <br/>
+ * Files are deleted when the store is closed.
+ *
+ * @author Charlie
+ *
+ */
+public class SegmentDocumentStore implements DocumentSink {
+
+	/**
+	 * Bits of the offset of a document within its segment. The segment number
+	 * goes on the bits above.
+	 */
+	private static final int SEGMENT_BITS = 30;
+	/**
+	 * Size limit of a segment (bytes).
+	 */
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	/**
+	 * Bytes before the text of each document (id and length).
+	 */
+	private static final int HEADER_SIZE = 8;
+	/**
+	 * Size of the write buffer (bytes).
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Prefix of the temporary directory.
+	 */
+	private static final String DIRECTORY_PREFIX = "documents-";
+	/**
+	 * Prefix of the segment files.
+	 */
+	private static final String SEGMENT_PREFIX = "segment-";
+
+	/**
+	 * Directory holding the segments.
+	 */
+	private File directory;
+	/**
+	 * Segment files, in order.
+	 */
+	private List<File> segments = new ArrayList<>();
+	/**
+	 * Read only mapping of each segment (null until a document is read from it).
+	 */
+	private List<MappedByteBuffer> mappings = new ArrayList<>();
+	/**
+	 * Output of the last segment.
+	 */
+	private DataOutputStream out = null;
+	/**
+	 * Size of the last segment (bytes).
+	 */
+	private long segmentSize = 0;
+	/**
+	 * Offset of each document: segment number and position within it.
+	 */
+	private IntLongHashMap offsets = new IntLongHashMap();
+
+	/**
+	 * Creates an empty store.
+	 *
+	 * @param parent
+	 *            Directory where the temporary directory of the store is
+	 *            created, or null for the default temporary directory
+	 * @throws IOException
+	 *             When the directory cannot be created
+	 */
+	public SegmentDocumentStore(File parent) throws IOException {
+		this.directory = (parent == null) ? Files.createTempDirectory(DIRECTORY_PREFIX).toFile()
+				: Files.createTempDirectory(parent.toPath(), DIRECTORY_PREFIX).toFile();
+	}
+
+	/**
+	 * Appends a document to the last segment, or to a new one if it does not fit.
+	 */
+	@Override
+	public synchronized void write(int id, String document) throws IOException {
+		byte[] text = document.getBytes(StandardCharsets.UTF_8);
+		long recordSize = HEADER_SIZE + (long) text.length;
+		if (recordSize > SEGMENT_SIZE) {
+			throw new IOException("Document " + id + " is too large to be stored (" + text.length + " bytes)");
+		}
+		if (out == null || segmentSize + recordSize > SEGMENT_SIZE) {
+			newSegment();
+		}
+		offsets.put(id, ((long) (segments.size() - 1) << SEGMENT_BITS) | segmentSize);
+		out.writeInt(id);
+		out.writeInt(text.length);
+		out.write(text);
+		segmentSize += recordSize;
+	}
+
+	/**
+	 * Reads a document.
+	 *
+	 * @param id
+	 *            Id of the document
+	 * @return The document, or null if it is not on the store.
+	 * @throws IOException
+	 *             When the segment cannot be read
+	 */
+	public synchronized String read(int id) throws IOException {
+		long offset = offsets.get(id);
+		if (offset == IntLongHashMap.NO_VALUE) {
+			return null;
+		}
+		ByteBuffer record = mappingOf((int) (offset >>> SEGMENT_BITS)).duplicate();
+		record.position((int) (offset & (SEGMENT_SIZE - 1)));
+		record.getInt(); // Id
+		byte[] text = new byte[record.getInt()];
+		record.get(text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes all the documents to a sink, in the order of their ids. The sink is
+	 * not closed.
+	 *
+	 * @param target
+	 *            Where the documents are written
+	 * @throws IOException
+	 *             When the documents cannot be read or written
+	 */
+	public synchronized void dumpTo(DocumentSink target) throws IOException {
+		for (int id : offsets.sortedKeys()) {
+			target.write(id, read(id));
+		}
+	}
+
+	/**
+	 * @return Number of documents on the store.
+	 */
+	@Override
+	public synchronized int getDocumentCount() {
+		return offsets.size();
+	}
+
+	/**
+	 * @return Size of the segments (bytes), documents replaced included.
+	 */
+	public synchronized long getSize() {
+		return (segments.isEmpty()) ? 0 : ((segments.size() - 1) * SEGMENT_SIZE) + segmentSize;
+	}
+
+	/**
+	 * Deletes the segments and their directory.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+		mappings.clear();
+		for (File segment : segments) {
+			if (!segment.delete()) {
+				// Mapped files cannot be deleted on some systems until unmapped
+				segment.deleteOnExit();
+			}
+		}
+		segments.clear();
+		if (!directory.delete()) {
+			directory.deleteOnExit();
+		}
+		offsets = new IntLongHashMap();
+	}
+
+	/**
+	 * Closes the last segment and starts a new one.
+	 *
+	 * @throws IOException
+	 *             When the segment cannot be created
+	 */
+	private void newSegment() throws IOException {
+		if (out != null) {
+			out.close();
+			// Mapped while it was still growing
+			mappings.set(segments.size() - 1, null);
+		}
+		File segment = new File(directory, SEGMENT_PREFIX + segments.size());
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment), BUFFER_SIZE));
+		segments.add(segment);
+		mappings.add(null);
+		segmentSize = 0;
+	}
+
+	/**
+	 * Maps a segment to memory. The last segment is mapped again when it has
+	 * grown since it was mapped.
+	 *
+	 * @param index
+	 *            Number of the segment
+	 * @return Read only mapping of the segment.
+	 * @throws IOException
+	 *             When the segment cannot be mapped
+	 */
+	private MappedByteBuffer mappingOf(int index) throws IOException {
+		MappedByteBuffer mapping = mappings.get(index);
+		boolean last = index == segments.size() - 1;
+		if (mapping == null || (last && mapping.capacity() < segmentSize)) {
+			if (last) {
+				out.flush();
+			}
+			try (RandomAccessFile file = new RandomAccessFile(segments.get(index), "r");
+					FileChannel channel = file.getChannel()) {
+				mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			mappings.set(index, mapping);
+		}
+		return mapping;
+	}
+}
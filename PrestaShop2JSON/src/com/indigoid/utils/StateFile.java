@@ -0,0 +1,118 @@
+package com.indigoid.utils;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Small key/value file used to keep information from one run of the program to
+ * the next one. Values are kept in memory and written to disk on every set(). The
+ * file is replaced atomically, so a crash while saving never leaves it half
+ * written. Instances can be shared by several threads.
+ * 
+ * @author Charlie
+ *
+ */
+public class StateFile {
+
+	/**
+	 * Extension of the temporary file written before replacing the state file.
+	 */
+	private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+	/**
+	 * Name of the state file.
+	 */
+	private String fileName;
+	/**
+	 * Current state values.
+	 */
+	private Properties state = new Properties();
+
+	/**
+	 * Loads the state from a file. If the file does not exist, the state is
+	 * empty.
+	 * 
+	 * @param fileName
+	 *            Name of the state file
+	 * @throws IOException
+	 *             When the file exists but cannot be read
+	 */
+	public StateFile(String fileName) throws IOException {
+		this.fileName = fileName;
+		try (FileInputStream fis = new FileInputStream(fileName)) {
+			state.load(fis);
+		} catch (FileNotFoundException e) {
+			// First run: nothing saved yet
+		}
+	}
+
+	/**
+	 * @param key
+	 *            Name of the value
+	 * @return The value saved for the key, or null if there is none.
+	 */
+	public String get(String key) {
+		return state.getProperty(key);
+	}
+
+	/**
+	 * Sets a value and saves the whole state to disk.
+	 * 
+	 * @param key
+	 *            Name of the value
+	 * @param value
+	 *            New value
+	 * @throws IOException
+	 *             When the state file cannot be written
+	 */
+	public synchronized void set(String key, String value) throws IOException {
+		state.setProperty(key, value);
+		save();
+	}
+
+	/**
+	 * Sets several values at once and saves the whole state to disk, so either
+	 * all of them or none are saved.
+	 * 
+	 * @param values
+	 *            New values by name (a null value removes the name)
+	 * @throws IOException
+	 *             When the state file cannot be written
+	 */
+	public synchronized void set(Map<String, String> values) throws IOException {
+		values.forEach((key, value) -> {
+			if (value == null) {
+				state.remove(key);
+			} else {
+				state.setProperty(key, value);
+			}
+		});
+		save();
+	}
+
+	/**
+	 * Writes the state to a temporary file and then moves it over the state file.
+	 * 
+	 * @throws IOException
+	 *             When the state file cannot be written
+	 */
+	private void save() throws IOException {
+		Path target = Paths.get(fileName);
+		Path temp = Paths.get(fileName + TEMP_FILE_EXTENSION);
+
+		try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+			state.store(fos, MessageLogger.getInstance().getProgramName() + " state");
+			fos.getFD().sync();
+		}
+
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}